@@ -0,0 +1,177 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.media;
+
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * This class encodes 16 bit PCM samples to AAC-LC with MediaCodec and writes them
+ * to an MPEG-4 (.m4a) file with MediaMuxer. Requires API level 18.
+ */
+public class AacEncoder implements RecordingEncoder {
+
+    private static final String MIME_TYPE = "audio/mp4a-latm";
+    private static final long TIMEOUT_US = 10000;
+    private static final int MAX_EOS_RETRIES = 100;
+
+    private final int bitRate;
+    private final MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+    private MediaCodec codec;
+    private MediaMuxer muxer;
+    private ByteBuffer[] inputBuffers;
+    private ByteBuffer[] outputBuffers;
+    private int track = -1;
+    private int sampleRate;
+    private int channels;
+    private long samplesQueued;
+
+    /**
+     * Constructor.
+     *
+     * @param bitRate           The target bit rate in bits per second
+     */
+    public AacEncoder(int bitRate) {
+        this.bitRate = bitRate;
+    }
+
+    @SuppressWarnings("deprecation")
+    public void start(String path, int sampleRate, int channels) throws IOException {
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        this.samplesQueued = 0;
+        this.track = -1;
+
+        MediaFormat format = MediaFormat.createAudioFormat(MIME_TYPE, sampleRate, channels);
+        format.setInteger(MediaFormat.KEY_AAC_PROFILE, MediaCodecInfo.CodecProfileLevel.AACObjectLC);
+        format.setInteger(MediaFormat.KEY_BIT_RATE, this.bitRate);
+        this.codec = MediaCodec.createEncoderByType(MIME_TYPE);
+        try {
+            this.codec.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+            this.codec.start();
+            this.inputBuffers = this.codec.getInputBuffers();
+            this.outputBuffers = this.codec.getOutputBuffers();
+            this.muxer = new MediaMuxer(path, MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+        } catch (IOException e) {
+            this.releaseCodec();
+            throw e;
+        } catch (RuntimeException e) {
+            this.releaseCodec();
+            throw new IOException("Can not encode " + sampleRate + " Hz, " + channels + " channels", e);
+        }
+    }
+
+    /**
+     * Release the codec of a start() that failed, so stop() has nothing left to do.
+     */
+    private void releaseCodec() {
+        this.codec.release();
+        this.codec = null;
+    }
+
+    public void encode(short[] samples, int offset, int length) throws IOException {
+        while (length > 0) {
+            int index = this.codec.dequeueInputBuffer(TIMEOUT_US);
+            if (index < 0) {
+                this.drain(false);
+                continue;
+            }
+            ByteBuffer input = this.inputBuffers[index];
+            input.clear();
+            int count = Math.min(length, input.remaining() / 2);
+            input.order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().put(samples, offset, count);
+            this.codec.queueInputBuffer(index, 0, count * 2, this.presentationTimeUs(), 0);
+            this.samplesQueued += count;
+            offset += count;
+            length -= count;
+            this.drain(false);
+        }
+    }
+
+    public void stop() throws IOException {
+        if (this.codec == null) {
+            return;
+        }
+        try {
+            int index;
+            while ((index = this.codec.dequeueInputBuffer(TIMEOUT_US)) < 0) {
+                this.drain(false);
+            }
+            this.codec.queueInputBuffer(index, 0, 0, this.presentationTimeUs(), MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+            this.drain(true);
+        } finally {
+            this.codec.stop();
+            this.codec.release();
+            this.codec = null;
+            if (this.track >= 0) {
+                this.muxer.stop();
+            }
+            this.muxer.release();
+            this.muxer = null;
+        }
+    }
+
+    private long presentationTimeUs() {
+        return this.samplesQueued / this.channels * 1000000L / this.sampleRate;
+    }
+
+    /**
+     * Move the encoded frames to the muxer.
+     *
+     * @param endOfStream       true to wait until the encoder has flushed every frame
+     */
+    @SuppressWarnings("deprecation")
+    private void drain(boolean endOfStream) {
+        int retries = 0;
+        while (true) {
+            int index = this.codec.dequeueOutputBuffer(this.info, endOfStream ? TIMEOUT_US : 0);
+            if (index == MediaCodec.INFO_TRY_AGAIN_LATER) {
+                if (!endOfStream || ++retries > MAX_EOS_RETRIES) {
+                    return;
+                }
+            } else if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                this.track = this.muxer.addTrack(this.codec.getOutputFormat());
+                this.muxer.start();
+            } else if (index == MediaCodec.INFO_OUTPUT_BUFFERS_CHANGED) {
+                this.outputBuffers = this.codec.getOutputBuffers();
+            } else if (index >= 0) {
+                ByteBuffer output = this.outputBuffers[index];
+                if ((this.info.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0) {
+                    // the muxer got the codec config with the output format
+                    this.info.size = 0;
+                }
+                if (this.info.size > 0 && this.track >= 0) {
+                    output.position(this.info.offset);
+                    output.limit(this.info.offset + this.info.size);
+                    this.muxer.writeSampleData(this.track, output, this.info);
+                }
+                this.codec.releaseOutputBuffer(index, false);
+                if ((this.info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                    return;
+                }
+            }
+        }
+    }
+}
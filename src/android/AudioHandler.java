@@ -30,7 +30,15 @@ import android.media.AudioManager;
 import android.media.AudioManager.OnAudioFocusChangeListener;
 import android.net.Uri;
 import android.os.Build;
-
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Process;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.security.Permission;
 import java.util.ArrayList;
 
@@ -41,6 +49,17 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This class called by CordovaActivity to play and record audio.
@@ -56,11 +75,35 @@ import java.util.HashMap;
 public class AudioHandler extends CordovaPlugin {
 
     public static String TAG = "AudioHandler";
-    HashMap<String, AudioPlayer> players;  // Audio player object
-    ArrayList<AudioPlayer> pausedForPhone; // Audio players that were paused when phone call came in
-    ArrayList<AudioPlayer> pausedForFocus; // Audio players that were paused when focus was lost
+    private static final long COMMAND_THREAD_KEEP_ALIVE = 30000;    // Time in msec an idle command thread is kept
+    private static final long JOB_THREAD_KEEP_ALIVE = 30000;        // Time in msec an idle job thread is kept
+    PlayerRegistry<AudioPlayer> players;                   // Audio player object
+    CopyOnWriteArrayList<AudioPlayer> pausedForPhone;      // Audio players that were paused when phone call came in
+    CopyOnWriteArrayList<AudioPlayer> pausedForFocus;      // Audio players that were paused when focus was lost
     private int origVolumeStream = -1;
     private CallbackContext messageChannel;
+    private HandlerThread mediaThread;      // Worker thread that prepares media and receives player callbacks
+    private Handler mediaHandler;
+    private boolean destroyed = false;      // Set by onDestroy, so late callbacks don't start the worker again
+    private MediaPlayerPool playerPool;     // Idle MediaPlayer instances ready for first play
+    private EffectPool effectPool;          // SoundPool shared by the effect players
+    private Mixer mixer;                    // Single AudioTrack shared by the mixed players
+    private ExecutorService commandExecutor; // Threads shared by the command queues of the players
+    private ExecutorService jobExecutor;    // Threads running long decoding jobs, e.g. waveform peaks
+    private final ConcurrentHashMap<String, Future<?>> jobs = new ConcurrentHashMap<String, Future<?>>(); // Last job of each player
+    private PrefetchQueue prefetchQueue;    // Players waiting to be preloaded
+    private StreamCache streamCache;        // Streamed sources kept on disk, null if disabled
+    private boolean streamCacheChecked = false;
+    private ClipCache clipCache;            // Decoded asset clips kept in memory, null if disabled
+    private boolean clipCacheChecked = false;
+
+    private int eventBatchWindow = 16;      // Time in msec event messages are collected, 0 to send each at once
+    private final ArrayList<JSONObject> pendingEvents = new ArrayList<JSONObject>(); // Event messages waiting to be sent
+    private final Runnable eventFlusher = new Runnable() {
+        public void run() {
+            flushEventMessages();
+        }
+    };
 
 
     public static String [] permissions = { Manifest.permission.RECORD_AUDIO, Manifest.permission.WRITE_EXTERNAL_STORAGE};
@@ -71,14 +114,31 @@ public class AudioHandler extends CordovaPlugin {
 
     private String recordId;
     private String fileUriStr;
+    private JSONObject recordOptions;
 
     /**
      * Constructor.
      */
     public AudioHandler() {
-        this.players = new HashMap<String, AudioPlayer>();
-        this.pausedForPhone = new ArrayList<AudioPlayer>();
-        this.pausedForFocus = new ArrayList<AudioPlayer>();
+        this.players = new PlayerRegistry<AudioPlayer>(new PlayerRegistry.Listener() {
+            public void onFirstAdded() {
+                onFirstPlayerCreated();
+            }
+
+            public void onLastRemoved() {
+                onLastPlayerReleased();
+            }
+        });
+        this.pausedForPhone = new CopyOnWriteArrayList<AudioPlayer>();
+        this.pausedForFocus = new CopyOnWriteArrayList<AudioPlayer>();
+    }
+
+    /**
+     * Read the preferences that are used for every message.
+     */
+    @Override
+    protected void pluginInitialize() {
+        this.eventBatchWindow = preferences.getInteger("MediaEventBatchWindow", 16);
     }
 
 
@@ -94,6 +154,64 @@ public class AudioHandler extends CordovaPlugin {
     }
 
 
+    /**
+     * Actions understood by execute(), with the minimum number of arguments each one needs.
+     * Looking the action up once replaces comparing it against every action name on each call.
+     */
+    private enum Action {
+        START_RECORDING_AUDIO("startRecordingAudio", 2),
+        STOP_RECORDING_AUDIO("stopRecordingAudio", 1),
+        PAUSE_RECORDING_AUDIO("pauseRecordingAudio", 1),
+        RESUME_RECORDING_AUDIO("resumeRecordingAudio", 1),
+        START_PLAYING_AUDIO("startPlayingAudio", 2),
+        SEEK_TO_AUDIO("seekToAudio", 2),
+        PAUSE_PLAYING_AUDIO("pausePlayingAudio", 1),
+        STOP_PLAYING_AUDIO("stopPlayingAudio", 1),
+        SET_VOLUME("setVolume", 2),
+        GET_CURRENT_POSITION_AUDIO("getCurrentPositionAudio", 1),
+        GET_DURATION_AUDIO("getDurationAudio", 2),
+        CREATE("create", 2),
+        RELEASE("release", 1),
+        MESSAGE_CHANNEL("messageChannel", 0),
+        GET_CURRENT_AMPLITUDE_AUDIO("getCurrentAmplitudeAudio", 1),
+        START_POSITION_UPDATES("startPositionUpdates", 2),
+        STOP_POSITION_UPDATES("stopPositionUpdates", 1),
+        PRELOAD("preload", 2),
+        SET_NEXT_AUDIO("setNextAudio", 2),
+        SET_RATE("setRate", 2),
+        GET_PEAKS("getPeaks", 3),
+        START_LEVEL_UPDATES("startLevelUpdates", 2),
+        STOP_LEVEL_UPDATES("stopLevelUpdates", 1),
+        SET_PAN("setPan", 2),
+        MIXDOWN("mixdown", 3),
+        TRANSCODE("transcode", 3),
+        CANCEL_JOB("cancelJob", 1),
+        FADE_TO("fadeTo", 3);
+
+        private static final HashMap<String, Action> BY_NAME = new HashMap<String, Action>();
+        static {
+            for (Action action : values()) {
+                BY_NAME.put(action.actionName, action);
+            }
+        }
+
+        final String actionName;
+        final int arity;
+
+        Action(String actionName, int arity) {
+            this.actionName = actionName;
+            this.arity = arity;
+        }
+
+        /**
+         * @param name          The action name passed to execute()
+         * @return              The action, or null if it is not recognized
+         */
+        static Action forName(String name) {
+            return BY_NAME.get(name);
+        }
+    }
+
     /**
      * Executes the request and returns PluginResult.
      * @param action 		The action to execute.
@@ -102,103 +220,201 @@ public class AudioHandler extends CordovaPlugin {
      * @return 				A PluginResult object with a status and message.
      */
     public boolean execute(String action, JSONArray args, CallbackContext callbackContext) throws JSONException {
-        CordovaResourceApi resourceApi = webView.getResourceApi();
-        PluginResult.Status status = PluginResult.Status.OK;
-        String result = "";
+        Action act = Action.forName(action);
+        if (act == null) { // Unrecognized action.
+            return false;
+        }
+        if (args.length() < act.arity) {
+            throw new JSONException(action + " expects " + act.arity + " arguments, got " + args.length());
+        }
 
-        if (action.equals("startRecordingAudio")) {
+        switch (act) {
+        case START_RECORDING_AUDIO:
             recordId = args.getString(0);
-            String target = args.getString(1);
-            try {
-                Uri targetUri = resourceApi.remapUri(Uri.parse(target));
-                fileUriStr = targetUri.toString();
-            } catch (IllegalArgumentException e) {
-                fileUriStr = target;
-            }
+            fileUriStr = remapUri(args.getString(1));
+            recordOptions = args.optJSONObject(2);
             promptForRecord();
-        }
-        else if (action.equals("stopRecordingAudio")) {
-            this.stopRecordingAudio(args.getString(0), true);
-        }
-        else if (action.equals("pauseRecordingAudio")) {
-            this.stopRecordingAudio(args.getString(0), false);
-        }
-        else if (action.equals("resumeRecordingAudio")) {
-            this.resumeRecordingAudio(args.getString(0));
-        }
-        else if (action.equals("startPlayingAudio")) {
-            String target = args.getString(1);
-            String fileUriStr;
-            try {
-                Uri targetUri = resourceApi.remapUri(Uri.parse(target));
-                fileUriStr = targetUri.toString();
-            } catch (IllegalArgumentException e) {
-                fileUriStr = target;
-            }
-            this.startPlayingAudio(args.getString(0), FileHelper.stripFileProtocol(fileUriStr));
-        }
-        else if (action.equals("seekToAudio")) {
-            this.seekToAudio(args.getString(0), args.getInt(1));
-        }
-        else if (action.equals("pausePlayingAudio")) {
-            this.pausePlayingAudio(args.getString(0));
-        }
-        else if (action.equals("stopPlayingAudio")) {
-            this.stopPlayingAudio(args.getString(0));
-        } else if (action.equals("setVolume")) {
-           try {
-               this.setVolume(args.getString(0), Float.parseFloat(args.getString(1)));
-           } catch (NumberFormatException nfe) {
-               //no-op
-           }
-        } else if (action.equals("getCurrentPositionAudio")) {
-            float f = this.getCurrentPositionAudio(args.getString(0));
-            callbackContext.sendPluginResult(new PluginResult(status, f));
-            return true;
-        }
-        else if (action.equals("getDurationAudio")) {
-            float f = this.getDurationAudio(args.getString(0), args.getString(1));
-            callbackContext.sendPluginResult(new PluginResult(status, f));
-            return true;
-        }
-        else if (action.equals("create")) {
+            break;
+        case CREATE:
             String id = args.getString(0);
             String src = FileHelper.stripFileProtocol(args.getString(1));
-            getOrCreatePlayer(id, src);
-        }
-        else if (action.equals("release")) {
+            getOrCreatePlayer(id, src, args.optJSONObject(2));
+            break;
+        case RELEASE:
             boolean b = this.release(args.getString(0));
-            callbackContext.sendPluginResult(new PluginResult(status, b));
+            callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, b));
             return true;
-        }
-        else if (action.equals("messageChannel")) {
+        case MESSAGE_CHANNEL:
             messageChannel = callbackContext;
             return true;
-        } else if (action.equals("getCurrentAmplitudeAudio")) {
-            float f = this.getCurrentAmplitudeAudio(args.getString(0));
-            callbackContext.sendPluginResult(new PluginResult(status, f));
+        case GET_PEAKS:
+            this.getPeaks(args.getString(0), FileHelper.stripFileProtocol(remapUri(args.getString(1))),
+                    args.getInt(2), callbackContext);
+            return true;
+        case MIXDOWN:
+            this.mixdown(args.getString(0), FileHelper.stripFileProtocol(remapUri(args.getString(1))),
+                    args.getJSONArray(2), args.optJSONObject(3), callbackContext);
+            return true;
+        case TRANSCODE:
+            this.transcode(args.getString(0), FileHelper.stripFileProtocol(remapUri(args.getString(1))),
+                    FileHelper.stripFileProtocol(remapUri(args.getString(2))), args.optJSONObject(3), callbackContext);
+            return true;
+        case CANCEL_JOB:
+            this.cancelJob(args.getString(0));
+            callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK));
+            return true;
+        case PRELOAD:
+            String preloadFile = FileHelper.stripFileProtocol(remapUri(args.getString(1)));
+            AudioPlayer preloaded = getOrCreatePlayer(args.getString(0), preloadFile);
+            JSONObject preloadOptions = args.optJSONObject(2);
+            getPrefetchQueue().add(preloaded, preloadFile, preloadOptions != null ? preloadOptions.optInt("priority", 0) : 0);
+            break;
+        default:
+            AudioPlayer audio;
+            if (act == Action.START_PLAYING_AUDIO) {
+                audio = getOrCreatePlayer(args.getString(0), FileHelper.stripFileProtocol(remapUri(args.getString(1))));
+            } else if (act == Action.GET_DURATION_AUDIO) {
+                audio = getOrCreatePlayer(args.getString(0), args.getString(1));
+            } else {
+                audio = this.players.get(args.getString(0));
+            }
+            if (audio == null) {
+                // nothing to wait for, the command only reports the unknown player
+                callbackContext.sendPluginResult(executeCommand(act, args));
+            } else {
+                queueCommand(audio, act, args, callbackContext);
+            }
             return true;
-        }
-        else { // Unrecognized action.
-            return false;
         }
 
-        callbackContext.sendPluginResult(new PluginResult(status, result));
+        callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, ""));
 
         return true;
     }
 
+    /**
+     * Run a command on the command queue of its player and send the result when it has run.
+     * Commands for the same player run in order; commands for different players run in parallel.
+     */
+    private void queueCommand(AudioPlayer audio, final Action act, final JSONArray args, final CallbackContext callbackContext) {
+        audio.commandQueue.execute(new Runnable() {
+            public void run() {
+                PluginResult result;
+                try {
+                    result = executeCommand(act, args);
+                } catch (JSONException e) {
+                    result = new PluginResult(PluginResult.Status.JSON_EXCEPTION, e.getMessage());
+                }
+                callbackContext.sendPluginResult(result);
+            }
+        });
+    }
+
+    /**
+     * Execute a command for a single player.
+     * @param act 			The action to execute.
+     * @param args 			JSONArry of arguments for the plugin.
+     * @return 				The result to send to JavaScript.
+     */
+    private PluginResult executeCommand(Action act, JSONArray args) throws JSONException {
+        PluginResult.Status status = PluginResult.Status.OK;
+        String result = "";
+        float f;
+
+        switch (act) {
+        case STOP_RECORDING_AUDIO:
+            this.stopRecordingAudio(args.getString(0), true);
+            break;
+        case PAUSE_RECORDING_AUDIO:
+            this.stopRecordingAudio(args.getString(0), false);
+            break;
+        case RESUME_RECORDING_AUDIO:
+            this.resumeRecordingAudio(args.getString(0));
+            break;
+        case START_PLAYING_AUDIO:
+            String target = FileHelper.stripFileProtocol(remapUri(args.getString(1)));
+            this.startPlayingAudio(args.getString(0), target, args.optJSONObject(2));
+            break;
+        case SEEK_TO_AUDIO:
+            this.seekToAudio(args.getString(0), args.getInt(1));
+            break;
+        case PAUSE_PLAYING_AUDIO:
+            this.pausePlayingAudio(args.getString(0));
+            break;
+        case STOP_PLAYING_AUDIO:
+            this.stopPlayingAudio(args.getString(0));
+            break;
+        case SET_VOLUME:
+            try {
+                this.setVolume(args.getString(0), Float.parseFloat(args.getString(1)));
+            } catch (NumberFormatException nfe) {
+                //no-op
+            }
+            break;
+        case GET_CURRENT_POSITION_AUDIO:
+            f = this.getCurrentPositionAudio(args.getString(0));
+            return new PluginResult(status, f);
+        case GET_DURATION_AUDIO:
+            f = this.getDurationAudio(args.getString(0), args.getString(1));
+            return new PluginResult(status, f);
+        case GET_CURRENT_AMPLITUDE_AUDIO:
+            f = this.getCurrentAmplitudeAudio(args.getString(0));
+            return new PluginResult(status, f);
+        case START_POSITION_UPDATES:
+            this.setPositionUpdateInterval(args.getString(0), args.getInt(1));
+            break;
+        case STOP_POSITION_UPDATES:
+            this.setPositionUpdateInterval(args.getString(0), 0);
+            break;
+        case START_LEVEL_UPDATES:
+            this.setLevelUpdateInterval(args.getString(0), args.getInt(1), args.optLong(2, 0));
+            break;
+        case STOP_LEVEL_UPDATES:
+            this.setLevelUpdateInterval(args.getString(0), 0, 0);
+            break;
+        case SET_RATE:
+            this.setRate(args.getString(0), (float) args.getDouble(1), (float) args.optDouble(2, 1.0));
+            break;
+        case SET_PAN:
+            this.setPan(args.getString(0), (float) args.getDouble(1));
+            break;
+        case FADE_TO:
+            this.fadeTo(args.getString(0), (float) args.getDouble(1), args.getLong(2),
+                    VolumeRamp.Curve.forName(args.optString(3)));
+            break;
+        case SET_NEXT_AUDIO:
+            this.setNextAudio(args.getString(0), args.isNull(1) ? null : args.getString(1));
+            break;
+        default:
+            break;
+        }
+
+        return new PluginResult(status, result);
+    }
+
+    /**
+     * Remap a target through the CordovaResourceApi, e.g. to resolve cdvfile:// URLs.
+     * @param target			The target passed from JavaScript
+     * @return					The remapped URI, or the target if it is not a valid URI
+     */
+    private String remapUri(String target) {
+        CordovaResourceApi resourceApi = webView.getResourceApi();
+        try {
+            Uri targetUri = resourceApi.remapUri(Uri.parse(target));
+            return targetUri.toString();
+        } catch (IllegalArgumentException e) {
+            return target;
+        }
+    }
+
     /**
      * Stop all audio players and recorders.
      */
     public void onDestroy() {
-        if (!players.isEmpty()) {
-            onLastPlayerReleased();
-        }
-        for (AudioPlayer audio : this.players.values()) {
-            audio.destroy();
+        synchronized (this) {
+            this.destroyed = true;
         }
-        this.players.clear();
+        this.releaseAll();
     }
 
     /**
@@ -206,7 +422,49 @@ public class AudioHandler extends CordovaPlugin {
      */
     @Override
     public void onReset() {
-        onDestroy();
+        this.releaseAll();
+    }
+
+    /**
+     * Release all players, pools and threads. Work still queued afterwards starts them
+     * again, unless the plugin was destroyed.
+     */
+    private void releaseAll() {
+        for (AudioPlayer audio : this.players.removeAll()) {
+            audio.commandQueue.clear();
+            audio.destroy();
+        }
+        synchronized (this) {
+            if (this.prefetchQueue != null) {
+                this.prefetchQueue.clear();
+                this.prefetchQueue = null;
+            }
+        }
+        this.shutdownCommandExecutor();
+        this.shutdownJobExecutor();
+        this.pausedForPhone.clear();
+        this.pausedForFocus.clear();
+        if (this.playerPool != null) {
+            this.playerPool.clear();
+            this.playerPool = null;
+        }
+        if (this.effectPool != null) {
+            this.effectPool.release();
+            this.effectPool = null;
+        }
+        synchronized (this) {
+            if (this.mixer != null) {
+                this.mixer.release();
+                this.mixer = null;
+            }
+        }
+        synchronized (this) {
+            if (this.clipCache != null) {
+                this.clipCache.clear();
+            }
+        }
+        this.flushEventMessages();
+        this.quitMediaThread();
     }
 
     /**
@@ -225,21 +483,13 @@ public class AudioHandler extends CordovaPlugin {
             if ("ringing".equals(data) || "offhook".equals(data)) {
 
                 // Get all audio players and pause them
-                for (AudioPlayer audio : this.players.values()) {
-                    if (audio.getState() == AudioPlayer.STATE.MEDIA_RUNNING.ordinal()) {
-                        this.pausedForPhone.add(audio);
-                        audio.pausePlaying();
-                    }
-                }
+                pauseRunning(this.pausedForPhone);
 
             }
 
             // If phone idle, then resume playing those players we paused
             else if ("idle".equals(data)) {
-                for (AudioPlayer audio : this.pausedForPhone) {
-                    audio.startPlaying(null);
-                }
-                this.pausedForPhone.clear();
+                resumePaused(this.pausedForPhone);
             }
         }
         return null;
@@ -249,16 +499,269 @@ public class AudioHandler extends CordovaPlugin {
     // LOCAL METHODS
     //--------------------------------------------------------------------------
 
-    private AudioPlayer getOrCreatePlayer(String id, String file) {
-        AudioPlayer ret = players.get(id);
-        if (ret == null) {
-            if (players.isEmpty()) {
-                onFirstPlayerCreated();
+    /**
+     * Get the handler of the media worker thread, starting the thread if needed.
+     * MediaPlayer instances created on this thread deliver their callbacks to it.
+     * Once the plugin is destroyed, a handler that drops everything posted to it is
+     * returned instead, so callbacks of jobs, mixer threads and players still being torn
+     * down don't start a thread that nothing would quit.
+     */
+    synchronized Handler getMediaHandler() {
+        if (this.destroyed) {
+            if (this.mediaHandler == null) {
+                this.mediaHandler = new DroppingHandler();
+            }
+            return this.mediaHandler;
+        }
+        if (this.mediaHandler == null) {
+            this.mediaThread = new HandlerThread("CordovaMediaWorker");
+            this.mediaThread.start();
+            this.mediaHandler = new Handler(this.mediaThread.getLooper());
+        }
+        return this.mediaHandler;
+    }
+
+    /**
+     * Get the pool of idle MediaPlayer instances, creating it if needed.
+     * The pool is sized by the MediaPlayerPoolMinSize, MediaPlayerPoolMaxSize and
+     * MediaPlayerPoolIdleTimeout (msec) preferences.
+     */
+    synchronized MediaPlayerPool getPlayerPool() {
+        if (this.playerPool == null) {
+            this.playerPool = new MediaPlayerPool(getMediaHandler(),
+                    preferences.getInteger("MediaPlayerPoolMinSize", 1),
+                    preferences.getInteger("MediaPlayerPoolMaxSize", 4),
+                    preferences.getInteger("MediaPlayerPoolIdleTimeout", 30000));
+        }
+        return this.playerPool;
+    }
+
+    /**
+     * Get the mixer shared by the mixed players, creating it if needed.
+     */
+    synchronized Mixer getMixer() {
+        if (this.mixer == null) {
+            this.mixer = new Mixer();
+        }
+        return this.mixer;
+    }
+
+    /**
+     * Get the SoundPool wrapper shared by the effect players, creating it if needed.
+     * The number of simultaneous effect streams is set by the MediaEffectMaxStreams preference.
+     */
+    synchronized EffectPool getEffectPool() {
+        if (this.effectPool == null) {
+            this.effectPool = new EffectPool(preferences.getInteger("MediaEffectMaxStreams", 8));
+        }
+        return this.effectPool;
+    }
+
+    /**
+     * Get the queue of players waiting to be preloaded, creating it if needed.
+     * The number of players loaded at the same time is set by the MediaPrefetchConcurrency preference.
+     */
+    synchronized PrefetchQueue getPrefetchQueue() {
+        if (this.prefetchQueue == null) {
+            this.prefetchQueue = new PrefetchQueue(preferences.getInteger("MediaPrefetchConcurrency", 2));
+        }
+        return this.prefetchQueue;
+    }
+
+    /**
+     * Get the on-disk cache of streamed sources, creating it if needed.
+     * The cache is enabled by setting the MediaStreamCacheSize preference to its size in MB.
+     *
+     * @return                  The cache, or null if it is disabled
+     */
+    synchronized StreamCache getStreamCache() {
+        if (!this.streamCacheChecked) {
+            this.streamCacheChecked = true;
+            long size = preferences.getInteger("MediaStreamCacheSize", 0) * 1024L * 1024L;
+            if (size > 0) {
+                File dir = new File(cordova.getActivity().getCacheDir(), "cordova-media-stream");
+                this.streamCache = new StreamCache(dir, size, cordova.getThreadPool());
             }
-            ret = new AudioPlayer(this, id, file);
-            players.put(id, ret);
         }
-        return ret;
+        return this.streamCache;
+    }
+
+    /**
+     * Get the in-memory cache of decoded asset clips, creating it if needed.
+     * The cache is enabled by setting the MediaClipCacheSize preference to its size in MB.
+     * Assets of at most MediaClipMaxSize KB (default 100) that decode to at most 1 MB are played
+     * from the cache; a clip that turns out longer is played with a MediaPlayer instead.
+     * Decoding requires API level 16.
+     *
+     * @return                  The cache, or null if it is disabled
+     */
+    synchronized ClipCache getClipCache() {
+        if (!this.clipCacheChecked) {
+            this.clipCacheChecked = true;
+            long size = preferences.getInteger("MediaClipCacheSize", 0) * 1024L * 1024L;
+            if (size > 0 && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+                this.clipCache = new ClipCache(cordova.getActivity(), size,
+                        preferences.getInteger("MediaClipMaxSize", 100) * 1024L);
+            }
+        }
+        return this.clipCache;
+    }
+
+    /**
+     * Get the executor the command queues of the players run on, creating it if needed.
+     * Its size is set by the MediaCommandThreads preference, by default the number of
+     * cores between 2 and 4. Idle threads end after a while.
+     */
+    synchronized ExecutorService getCommandExecutor() {
+        if (this.commandExecutor == null) {
+            int cores = Runtime.getRuntime().availableProcessors();
+            int size = Math.max(1, preferences.getInteger("MediaCommandThreads", Math.max(2, Math.min(4, cores))));
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(size, size, COMMAND_THREAD_KEEP_ALIVE, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                        private final AtomicInteger count = new AtomicInteger(0);
+
+                        public Thread newThread(Runnable r) {
+                            return new Thread(r, "CordovaMediaCommand-" + count.incrementAndGet());
+                        }
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            this.commandExecutor = executor;
+        }
+        return this.commandExecutor;
+    }
+
+    /**
+     * Get the executor running long decoding jobs, creating it if needed.
+     * It has one low priority thread per core, so jobs never compete with playback
+     * for more than the spare cores. Idle threads end after a while.
+     */
+    synchronized ExecutorService getJobExecutor() {
+        if (this.jobExecutor == null) {
+            int size = Math.max(1, Runtime.getRuntime().availableProcessors());
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(size, size, JOB_THREAD_KEEP_ALIVE, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                        private final AtomicInteger count = new AtomicInteger(0);
+
+                        public Thread newThread(final Runnable r) {
+                            return new Thread(new Runnable() {
+                                public void run() {
+                                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                                    r.run();
+                                }
+                            }, "CordovaMediaJob-" + count.incrementAndGet());
+                        }
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            this.jobExecutor = executor;
+        }
+        return this.jobExecutor;
+    }
+
+    /**
+     * Run a job on the job executor, so that it can be cancelled by the id of its player.
+     * A job cancelled before it started sends a MEDIA_ERR_ABORTED error to the callback.
+     */
+    private void runJob(final String id, final CallbackContext callbackContext, Runnable job) {
+        FutureTask<Void> task = new FutureTask<Void>(job, null) {
+            @Override
+            protected void done() {
+                jobs.remove(id, this);
+                if (this.isCancelled()) {
+                    // ignored by the callback if the job already reported the error
+                    callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR,
+                            errorResult(AudioPlayer.MEDIA_ERR_ABORTED, "Cancelled")));
+                    return;
+                }
+                try {
+                    this.get();
+                } catch (ExecutionException e) {
+                    // the task keeps what the job threw, so report it instead of dropping it
+                    LOG.e(TAG, "Job of " + id + " failed", e.getCause());
+                    callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR,
+                            errorResult(AudioPlayer.MEDIA_ERR_DECODE, String.valueOf(e.getCause().getMessage()))));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        this.jobs.put(id, task);
+        getJobExecutor().execute(task);
+    }
+
+    /**
+     * The error code of a failed job.
+     */
+    private static int jobErrorCode(IOException e) {
+        return e instanceof InterruptedIOException ? AudioPlayer.MEDIA_ERR_ABORTED : AudioPlayer.MEDIA_ERR_DECODE;
+    }
+
+    private synchronized void shutdownJobExecutor() {
+        if (this.jobExecutor != null) {
+            // interrupting the jobs cancels them
+            this.jobExecutor.shutdownNow();
+            this.jobExecutor = null;
+        }
+        this.jobs.clear();
+    }
+
+    private synchronized void shutdownCommandExecutor() {
+        if (this.commandExecutor != null) {
+            // the players are destroyed, so their queued commands are dropped instead of run on them
+            this.commandExecutor.shutdownNow();
+            this.commandExecutor = null;
+        }
+    }
+
+    private synchronized void quitMediaThread() {
+        if (this.mediaThread != null) {
+            this.mediaThread.quit();
+            this.mediaThread = null;
+            this.mediaHandler = null;
+        }
+    }
+
+    /**
+     * The media handler after onDestroy. Posts are dropped; removing callbacks does nothing.
+     */
+    private static class DroppingHandler extends Handler {
+        DroppingHandler() {
+            super(Looper.getMainLooper());
+        }
+
+        @Override
+        public boolean sendMessageAtTime(Message msg, long uptimeMillis) {
+            return false;
+        }
+    }
+
+    private AudioPlayer getOrCreatePlayer(String id, String file) {
+        return getOrCreatePlayer(id, file, null);
+    }
+
+    /**
+     * Get the audio player with the given id, creating it if needed.
+     * @param id				The id of the audio player
+     * @param file				The name of the audio file
+     * @param options			The options passed to the Media constructor, may be null.
+     * 							type "effect" creates a low latency SoundPool based player,
+     * 							type "mixed" a voice of the shared software mixer.
+     * 							Short assets are played from the clip cache, if it is enabled.
+     */
+    private AudioPlayer getOrCreatePlayer(String id, final String file, final JSONObject options) {
+        return this.players.getOrCreate(id, new PlayerRegistry.Factory<AudioPlayer>() {
+            public AudioPlayer create(String id) {
+                String type = options != null ? options.optString("type") : "";
+                ClipCache clips = getClipCache();
+                if ("effect".equals(type)) {
+                    return new EffectPlayer(AudioHandler.this, id, file);
+                } else if ("mixed".equals(type) && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+                    return new MixerPlayer(AudioHandler.this, id, file);
+                } else if (clips != null && clips.isCacheable(file)) {
+                    return new ClipPlayer(AudioHandler.this, id, file);
+                }
+                return new AudioPlayer(AudioHandler.this, id, file);
+            }
+        });
     }
 
     /**
@@ -266,14 +769,24 @@ public class AudioHandler extends CordovaPlugin {
      * @param id				The id of the audio player
      */
     private boolean release(String id) {
-        AudioPlayer audio = players.remove(id);
+        AudioPlayer audio = this.players.remove(id);
         if (audio == null) {
             return false;
         }
-        if (players.isEmpty()) {
-            onLastPlayerReleased();
+        this.pausedForPhone.remove(audio);
+        this.pausedForFocus.remove(audio);
+        synchronized (this) {
+            if (this.prefetchQueue != null) {
+                this.prefetchQueue.remove(audio);
+            }
         }
-        audio.destroy();
+        // destroy after the commands already queued for the player
+        final AudioPlayer released = audio;
+        audio.commandQueue.execute(new Runnable() {
+            public void run() {
+                released.destroy();
+            }
+        });
         return true;
     }
 
@@ -283,8 +796,22 @@ public class AudioHandler extends CordovaPlugin {
      * @param file				The name of the file
      */
     public void startRecordingAudio(String id, String file) {
-        AudioPlayer audio = getOrCreatePlayer(id, file);
-        audio.startRecording(file);
+        startRecordingAudio(id, file, null);
+    }
+
+    /**
+     * Start recording and save the specified file.
+     * @param id				The id of the audio player
+     * @param file				The name of the file
+     * @param options			The options passed to media.startRecord(), may be null
+     */
+    public void startRecordingAudio(String id, final String file, final JSONObject options) {
+        final AudioPlayer audio = getOrCreatePlayer(id, file);
+        audio.commandQueue.execute(new Runnable() {
+            public void run() {
+                audio.startRecording(file, options);
+            }
+        });
     }
 
     /**
@@ -316,8 +843,18 @@ public class AudioHandler extends CordovaPlugin {
      * @param file				The name of the audio file.
      */
     public void startPlayingAudio(String id, String file) {
+        startPlayingAudio(id, file, null);
+    }
+
+    /**
+     * Start or resume playing audio file.
+     * @param id				The id of the audio player
+     * @param file				The name of the audio file.
+     * @param options			The options passed to media.play(), may be null
+     */
+    public void startPlayingAudio(String id, String file, JSONObject options) {
         AudioPlayer audio = getOrCreatePlayer(id, file);
-        audio.startPlaying(file);
+        audio.startPlaying(file, options);
         getAudioFocus();
     }
 
@@ -368,6 +905,227 @@ public class AudioHandler extends CordovaPlugin {
         return -1;
     }
 
+    /**
+     * Push playback position updates to JavaScript while playing.
+     * @param id				The id of the audio player
+     * @param interval			Interval in msec, 0 to stop the updates
+     */
+    public void setPositionUpdateInterval(String id, int interval) {
+        AudioPlayer audio = this.players.get(id);
+        if (audio != null) {
+            audio.setPositionUpdateInterval(interval);
+        }
+    }
+
+    /**
+     * Push the level of the recording to JavaScript while recording.
+     * @param id				The id of the audio player
+     * @param interval			Interval in msec, 0 to stop the updates
+     * @param decay				Time in msec for the levels to fall to 1/e, 0 for no smoothing
+     */
+    public void setLevelUpdateInterval(String id, int interval, long decay) {
+        AudioPlayer audio = this.players.get(id);
+        if (audio != null) {
+            audio.setLevelUpdateInterval(interval, decay);
+        }
+    }
+
+    /**
+     * Set the playback speed and pitch.
+     * @param id				The id of the audio player
+     * @param rate				Playback speed, 1.0 is normal speed
+     * @param pitch				Pitch, 1.0 keeps the original pitch
+     */
+    public void setRate(String id, float rate, float pitch) {
+        AudioPlayer audio = this.players.get(id);
+        if (audio != null) {
+            audio.setRate(rate, pitch);
+        }
+    }
+
+    /**
+     * Set the position between the left and right speakers.
+     * @param id				The id of the audio player
+     * @param pan				-1.0 (left) - 1.0 (right)
+     */
+    public void setPan(String id, float pan) {
+        AudioPlayer audio = this.players.get(id);
+        if (audio != null) {
+            audio.setPan(pan);
+        }
+    }
+
+    /**
+     * Fade the volume of an audio player.
+     * @param id				The id of the audio player
+     * @param volume			The target volume, 0.0f - 1.0f
+     * @param duration			The duration of the fade in msec
+     * @param curve				The shape of the fade
+     */
+    public void fadeTo(String id, float volume, long duration, VolumeRamp.Curve curve) {
+        AudioPlayer audio = this.players.get(id);
+        if (audio != null) {
+            audio.fadeTo(volume, duration, curve);
+        }
+    }
+
+    /**
+     * Play another player without a gap when this one completes.
+     * @param id				The id of the audio player
+     * @param nextId			The id of the next audio player, null to stop chaining
+     */
+    public void setNextAudio(String id, String nextId) {
+        AudioPlayer audio = this.players.get(id);
+        if (audio != null) {
+            audio.setNextPlayer(nextId != null ? this.players.get(nextId) : null);
+        }
+    }
+
+    /**
+     * Compute the waveform of an audio file on a background thread and send it to the callback.
+     * The progress is sent over the message channel as MEDIA_PROGRESS status messages of the player.
+     * @param id				The id of the audio player reporting the progress
+     * @param file				The name of the audio file
+     * @param buckets			The number of min/max pairs
+     * @param callbackContext	Receives the peaks, or a MediaError
+     */
+    public void getPeaks(final String id, final String file, final int buckets, final CallbackContext callbackContext) {
+        if (buckets < 1 || buckets > PeakExtractor.MAX_BUCKETS) {
+            callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR,
+                    errorResult(AudioPlayer.MEDIA_ERR_ABORTED, "buckets must be between 1 and " + PeakExtractor.MAX_BUCKETS)));
+            return;
+        }
+        runJob(id, callbackContext, new Runnable() {
+            public void run() {
+                try {
+                    JSONObject peaks = new PeakExtractor(cordova.getActivity(), file, buckets).extract(new PeakExtractor.Listener() {
+                        public void onProgress(float fraction) {
+                            sendProgress(id, fraction);
+                        }
+                    });
+                    callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, peaks));
+                } catch (IOException e) {
+                    LOG.e(TAG, "Failed to compute the peaks of " + file, e);
+                    callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR,
+                            errorResult(jobErrorCode(e), e.getMessage())));
+                }
+            }
+        });
+    }
+
+    /**
+     * Mix audio files into a file on a background thread and send its duration to the callback.
+     * The progress is sent over the message channel as MEDIA_PROGRESS status messages of the player.
+     * @param id				The id of the audio player reporting the progress
+     * @param output			The name of the output file, resolved like a recording
+     * @param sources			The inputs: src, offset in msec and gain
+     * @param options			format ("wav" or "aac"), sampleRate, channels and bitRate (aac only)
+     * @param callbackContext	Receives the duration in seconds, or a MediaError
+     */
+    public void mixdown(final String id, String output, JSONArray sources, JSONObject options,
+            final CallbackContext callbackContext) throws JSONException {
+        if (options == null) {
+            options = new JSONObject();
+        }
+        String format = options.optString("format", output.toLowerCase().endsWith(".wav") ? "wav" : "aac");
+        if (!PcmRecorder.isSupportedFormat(format) || sources.length() == 0) {
+            callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR,
+                    errorResult(AudioPlayer.MEDIA_ERR_ABORTED, sources.length() == 0
+                            ? "No sources to mix" : "Unsupported format: " + format)));
+            return;
+        }
+        final int sampleRate = options.optInt("sampleRate", 44100);
+        final int channels = options.optInt("channels", 2);
+        if (!Mixdown.isSupportedFormat(sampleRate, channels)) {
+            callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR,
+                    errorResult(AudioPlayer.MEDIA_ERR_ABORTED, "Unsupported format: " + sampleRate + " Hz, "
+                            + channels + " channels")));
+            return;
+        }
+        final ArrayList<Mixdown.Source> inputs = new ArrayList<Mixdown.Source>();
+        for (int i = 0; i < sources.length(); i++) {
+            JSONObject source = sources.getJSONObject(i);
+            inputs.add(new Mixdown.Source(FileHelper.stripFileProtocol(remapUri(source.getString("src"))),
+                    source.optLong("offset", 0), (float) source.optDouble("gain", 1.0)));
+        }
+        final String path = AudioPlayer.resolveRecordingPath(cordova.getActivity(), output);
+        final RecordingEncoder encoder = "aac".equals(format)
+                ? new AacEncoder(options.optInt("bitRate", 128000)) : new WavEncoder();
+        final Mixdown mixdown = new Mixdown(cordova.getActivity(), inputs, sampleRate, channels);
+        runJob(id, callbackContext, new Runnable() {
+            public void run() {
+                try {
+                    double duration = mixdown.render(path, encoder, new Mixdown.Listener() {
+                        public void onProgress(float fraction) {
+                            sendProgress(id, fraction);
+                        }
+                    });
+                    callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, (float) duration));
+                } catch (IOException e) {
+                    LOG.e(TAG, "Failed to mix " + path, e);
+                    callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR,
+                            errorResult(jobErrorCode(e), e.getMessage())));
+                }
+            }
+        });
+    }
+
+    /**
+     * Convert an audio file, e.g. an AMR recording, to AAC in an MPEG-4 file on a background thread,
+     * and send the path and duration of the output to the callback.
+     * The progress is sent over the message channel as MEDIA_PROGRESS status messages of the player.
+     * @param id				The id of the audio player reporting the progress
+     * @param file				The name of the audio file
+     * @param output			The name of the output file, resolved like a recording
+     * @param options			bitRate
+     * @param callbackContext	Receives { path, duration }, or a MediaError
+     */
+    public void transcode(final String id, final String file, String output, JSONObject options,
+            final CallbackContext callbackContext) {
+        if (!PcmRecorder.isSupportedFormat("aac")) {
+            callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR,
+                    errorResult(AudioPlayer.MEDIA_ERR_ABORTED, "Transcoding requires Android 4.3")));
+            return;
+        }
+        final String path = AudioPlayer.resolveRecordingPath(cordova.getActivity(), output);
+        final AacEncoder encoder = new AacEncoder(options != null ? options.optInt("bitRate", 64000) : 64000);
+        final Transcoder transcoder = new Transcoder(cordova.getActivity(), file);
+        runJob(id, callbackContext, new Runnable() {
+            public void run() {
+                try {
+                    double duration = transcoder.transcode(path, encoder, new Transcoder.Listener() {
+                        public void onProgress(float fraction) {
+                            sendProgress(id, fraction);
+                        }
+                    });
+                    JSONObject result = new JSONObject();
+                    result.put("path", path);
+                    result.put("duration", duration);
+                    callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, result));
+                } catch (IOException e) {
+                    LOG.e(TAG, "Failed to transcode " + file, e);
+                    callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR,
+                            errorResult(jobErrorCode(e), e.getMessage())));
+                } catch (JSONException e) {
+                    LOG.e(TAG, "Failed to create the result", e);
+                    callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.JSON_EXCEPTION));
+                }
+            }
+        });
+    }
+
+    /**
+     * Cancel the last getPeaks, mixdown or transcode job of a player. Its output is deleted
+     * and its error callback is passed MEDIA_ERR_ABORTED.
+     * @param id				The id of the audio player
+     */
+    public void cancelJob(String id) {
+        Future<?> job = this.jobs.get(id);
+        if (job != null) {
+            job.cancel(true);
+        }
+    }
+
     /**
      * Get the duration of the audio file.
      * @param id				The id of the audio player
@@ -401,19 +1159,43 @@ public class AudioHandler extends CordovaPlugin {
     }
 
     public void pauseAllLostFocus() {
-        for (AudioPlayer audio : this.players.values()) {
+        pauseRunning(this.pausedForFocus);
+    }
+
+    /**
+     * Pause the running players on their command queues and add them to the list.
+     */
+    private void pauseRunning(CopyOnWriteArrayList<AudioPlayer> paused) {
+        for (final AudioPlayer audio : this.players.values()) {
             if (audio.getState() == AudioPlayer.STATE.MEDIA_RUNNING.ordinal()) {
-                this.pausedForFocus.add(audio);
-                audio.pausePlaying();
+                paused.addIfAbsent(audio);
+                audio.commandQueue.execute(new Runnable() {
+                    public void run() {
+                        audio.pausePlaying();
+                    }
+                });
             }
         }
     }
 
     public void resumeAllGainedFocus() {
-        for (AudioPlayer audio : this.pausedForFocus) {
-            audio.startPlaying(null);
+        resumePaused(this.pausedForFocus);
+    }
+
+    /**
+     * Resume the players in the list, removing each one as it is resumed so that
+     * a player paused again meanwhile is kept for the next resume.
+     */
+    private void resumePaused(CopyOnWriteArrayList<AudioPlayer> paused) {
+        for (final AudioPlayer audio : paused) {
+            if (paused.remove(audio)) {
+                audio.commandQueue.execute(new Runnable() {
+                    public void run() {
+                        audio.startPlaying(null);
+                    }
+                });
+            }
         }
-        this.pausedForFocus.clear();
     }
 
     /**
@@ -481,6 +1263,8 @@ public class AudioHandler extends CordovaPlugin {
 
         AudioPlayer audio = this.players.get(id);
         if (audio != null) {
+            // the volume set last wins over a fade in progress
+            audio.cancelFade();
             audio.setVolume(volume);
         } else {
           LOG.e(TAG3,"Unknown Audio Player " + id);
@@ -490,6 +1274,7 @@ public class AudioHandler extends CordovaPlugin {
     private void onFirstPlayerCreated() {
         origVolumeStream = cordova.getActivity().getVolumeControlStream();
         cordova.getActivity().setVolumeControlStream(AudioManager.STREAM_MUSIC);
+        getPlayerPool().prewarm();
     }
 
     private void onLastPlayerReleased() {
@@ -499,6 +1284,14 @@ public class AudioHandler extends CordovaPlugin {
         }
     }
 
+    /**
+     * Queue an event message for JavaScript.
+     * Messages are collected for the MediaEventBatchWindow preference (msec, default 16)
+     * and sent over the message channel as a single JSON array. A duration, position,
+     * progress or level status for a player replaces the queued one in place, so the
+     * order of the statuses is kept.
+     * A window of 0 sends every message on its own.
+     */
     void sendEventMessage(String action, JSONObject actionData) {
         JSONObject message = new JSONObject();
         try {
@@ -510,13 +1303,107 @@ public class AudioHandler extends CordovaPlugin {
             LOG.e(TAG, "Failed to create event message", e);
         }
 
-        PluginResult pluginResult = new PluginResult(PluginResult.Status.OK, message);
+        int window = this.eventBatchWindow;
+        if (window <= 0) {
+            PluginResult pluginResult = new PluginResult(PluginResult.Status.OK, message);
+            pluginResult.setKeepCallback(true);
+            if (messageChannel != null) {
+                messageChannel.sendPluginResult(pluginResult);
+            }
+            return;
+        }
+
+        synchronized (this.pendingEvents) {
+            if (isCoalescable(action, actionData)) {
+                for (int i = this.pendingEvents.size() - 1; i >= 0; i--) {
+                    if (supersedes(actionData, this.pendingEvents.get(i).optJSONObject(action))) {
+                        this.pendingEvents.set(i, message);
+                        return;
+                    }
+                }
+            }
+            this.pendingEvents.add(message);
+            if (this.pendingEvents.size() == 1) {
+                getMediaHandler().postDelayed(this.eventFlusher, window);
+            }
+        }
+    }
+
+    /**
+     * Send the queued event messages as a single JSON array.
+     */
+    private void flushEventMessages() {
+        JSONArray batch = new JSONArray();
+        synchronized (this.pendingEvents) {
+            if (this.pendingEvents.isEmpty()) {
+                return;
+            }
+            for (JSONObject message : this.pendingEvents) {
+                batch.put(message);
+            }
+            this.pendingEvents.clear();
+            if (this.mediaHandler != null) {
+                this.mediaHandler.removeCallbacks(this.eventFlusher);
+            }
+        }
+
+        PluginResult pluginResult = new PluginResult(PluginResult.Status.OK, batch);
         pluginResult.setKeepCallback(true);
         if (messageChannel != null) {
             messageChannel.sendPluginResult(pluginResult);
         }
     }
 
+    /**
+     * Queue a MEDIA_PROGRESS status message for the player.
+     * @param id				The id of the audio player
+     * @param fraction			The progress, 0.0f - 1.0f
+     */
+    void sendProgress(String id, float fraction) {
+        JSONObject status = new JSONObject();
+        try {
+            status.put("id", id);
+            status.put("msgType", AudioPlayer.MEDIA_PROGRESS);
+            status.put("value", fraction);
+        } catch (JSONException e) {
+            LOG.e(TAG, "Failed to create status details", e);
+        }
+        sendEventMessage("status", status);
+    }
+
+    /**
+     * Create the error passed to the error callback of a job, shaped like a MediaError.
+     */
+    static JSONObject errorResult(int code, String message) {
+        JSONObject error = new JSONObject();
+        try {
+            error.put("code", code);
+            error.put("message", message);
+        } catch (JSONException e) {
+            LOG.e(TAG, "Failed to create error details", e);
+        }
+        return error;
+    }
+
+    /**
+     * Only the latest duration, position, progress and level of a player matter, so older ones can be dropped.
+     * State changes and errors are always delivered.
+     */
+    private static boolean isCoalescable(String action, JSONObject actionData) {
+        if (!"status".equals(action) || actionData == null) {
+            return false;
+        }
+        int msgType = actionData.optInt("msgType", -1);
+        return msgType == AudioPlayer.MEDIA_DURATION || msgType == AudioPlayer.MEDIA_POSITION
+                || msgType == AudioPlayer.MEDIA_PROGRESS || msgType == AudioPlayer.MEDIA_LEVEL;
+    }
+
+    private static boolean supersedes(JSONObject status, JSONObject pending) {
+        return pending != null
+                && pending.optInt("msgType", -1) == status.optInt("msgType", -1)
+                && pending.optString("id").equals(status.optString("id"));
+    }
+
     public void onRequestPermissionResult(int requestCode, String[] permissions,
                                           int[] grantResults) throws JSONException
     {
@@ -540,7 +1427,7 @@ public class AudioHandler extends CordovaPlugin {
     {
         if(PermissionHelper.hasPermission(this, permissions[WRITE_EXTERNAL_STORAGE])  &&
                 PermissionHelper.hasPermission(this, permissions[RECORD_AUDIO])) {
-            this.startRecordingAudio(recordId, FileHelper.stripFileProtocol(fileUriStr));
+            this.startRecordingAudio(recordId, FileHelper.stripFileProtocol(fileUriStr), recordOptions);
         }
         else if(PermissionHelper.hasPermission(this, permissions[RECORD_AUDIO]))
         {
@@ -18,13 +18,18 @@
 */
 package org.apache.cordova.media;
 
+import android.content.Context;
 import android.media.AudioManager;
 import android.media.MediaPlayer;
 import android.media.MediaPlayer.OnCompletionListener;
 import android.media.MediaPlayer.OnErrorListener;
 import android.media.MediaPlayer.OnPreparedListener;
 import android.media.MediaRecorder;
+import android.media.PlaybackParams;
+import android.os.Build;
 import android.os.Environment;
+import android.os.Handler;
+import android.os.SystemClock;
 
 import org.apache.cordova.LOG;
 
@@ -34,9 +39,8 @@ import org.json.JSONObject;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.util.LinkedList;
 
 /**
@@ -64,34 +68,87 @@ public class AudioPlayer implements OnCompletionListener, OnPreparedListener, On
 
     private static final String LOG_TAG = "AudioPlayer";
 
+    private static final int AMR_HEADER_LENGTH = 6;     // "#!AMR\n", repeated at the start of every segment
+
+    private static final int MIN_POSITION_INTERVAL = 50; // Shortest interval of pushed position updates in msec
+    private static final int MIN_LEVEL_INTERVAL = 16;   // Shortest interval of pushed recording levels in msec
+
+    private static final float MIN_RATE = 0.25f;        // Playback rate and pitch limits of PlaybackParams
+    private static final float MAX_RATE = 4.0f;
+
     // AudioPlayer message ids
-    private static int MEDIA_STATE = 1;
-    private static int MEDIA_DURATION = 2;
-    private static int MEDIA_POSITION = 3;
-    private static int MEDIA_ERROR = 9;
+    static int MEDIA_STATE = 1;
+    static int MEDIA_DURATION = 2;
+    static int MEDIA_POSITION = 3;
+    static int MEDIA_TRACK_CHANGE = 4;
+    static int MEDIA_PROGRESS = 5;
+    static int MEDIA_LEVEL = 6;
+    static int MEDIA_SPEECH = 7;
+    static int MEDIA_CHUNK = 8;
+    static int MEDIA_ERROR = 9;
+    static int MEDIA_FADE = 10;
 
     // Media error codes
-    private static int MEDIA_ERR_NONE_ACTIVE    = 0;
-    private static int MEDIA_ERR_ABORTED        = 1;
+    static int MEDIA_ERR_NONE_ACTIVE    = 0;
+    static int MEDIA_ERR_ABORTED        = 1;
 //    private static int MEDIA_ERR_NETWORK        = 2;
-//    private static int MEDIA_ERR_DECODE         = 3;
+    static int MEDIA_ERR_DECODE         = 3;
 //    private static int MEDIA_ERR_NONE_SUPPORTED = 4;
 
-    private AudioHandler handler;           // The AudioHandler object
-    private String id;                      // The id of this player (used to identify Media object in JavaScript)
+    AudioHandler handler;                   // The AudioHandler object
+    String id;                              // The id of this player (used to identify Media object in JavaScript)
     private MODE mode = MODE.NONE;          // Playback or Recording mode
-    private STATE state = STATE.MEDIA_NONE; // State of recording or playback
+    STATE state = STATE.MEDIA_NONE;         // State of recording or playback
 
-    private String audioFile = null;        // File name to play or record to
+    String audioFile = null;                // File name to play or record to
     private float duration = -1;            // Duration of audio
 
     private MediaRecorder recorder = null;  // Audio recording object
+    private PcmRecorder pcmRecorder = null; // PCM recording object, used instead of recorder for wav and aac
     private LinkedList<String> tempFiles = null; // Temporary recording file name
     private String tempFile = null;
 
     private MediaPlayer player = null;      // Audio player object
-    private boolean prepareOnly = true;     // playback after file prepare flag
-    private int seekOnPrepared = 0;     // seek to this location once media is prepared
+    private float volume = 1.0f;            // Volume set by JavaScript, 0.0f - 1.0f
+    private float pan = 0.0f;               // Position between the speakers, -1.0f (left) - 1.0f (right)
+    private float rate = 1.0f;              // Playback speed, applied while running
+    private float pitch = 1.0f;             // Playback pitch, 1 keeps the pitch at any speed
+    private boolean rateApplied = false;    // The MediaPlayer has playback params other than the defaults
+    private LinkedList<Runnable> pendingCommands = new LinkedList<Runnable>(); // Commands received while MEDIA_LOADING
+    private LinkedList<Runnable> loadListeners = new LinkedList<Runnable>(); // Run when loading ends, see preload()
+    private AudioPlayer next = null;        // Played without a gap when this player completes
+    private AudioPlayer previous = null;    // Player that plays this one when it completes
+    private MediaPlayer linkedNext = null;  // MediaPlayer passed to setNextMediaPlayer
+    private final Runnable nextLinker = new Runnable() {
+        public void run() {
+            linkNext();
+        }
+    };
+    final SerialExecutor commandQueue;      // Runs the commands from JavaScript in order, off the bridge thread
+
+    private int positionInterval = 0;       // Interval in msec of pushed position updates, 0 if not subscribed
+    private long lastTickPosition = -1;     // Last position pushed to JavaScript
+    private final Runnable positionTicker = new Runnable() {
+        public void run() {
+            tickPosition();
+        }
+    };
+
+    private static final int FADE_INTERVAL = 10;           // Interval in msec of the volume steps of a fade
+    private VolumeRamp fade = null;         // Fade in progress, null if none
+    private final Runnable fadeTicker = new Runnable() {
+        public void run() {
+            tickFade();
+        }
+    };
+
+    private int levelInterval = 0;          // Interval in msec of pushed recording levels, 0 if not subscribed
+    private final LevelMeter levelMeter = new LevelMeter();
+    private final Runnable levelTicker = new Runnable() {
+        public void run() {
+            tickLevel();
+        }
+    };
 
     /**
      * Constructor.
@@ -104,6 +161,7 @@ public class AudioPlayer implements OnCompletionListener, OnPreparedListener, On
         this.id = id;
         this.audioFile = file;
         this.tempFiles = new LinkedList<String>();
+        this.commandQueue = new SerialExecutor(handler.getCommandExecutor());
     }
 
     private String generateTempFile() {
@@ -119,14 +177,27 @@ public class AudioPlayer implements OnCompletionListener, OnPreparedListener, On
     /**
      * Destroy player and stop audio playing or recording.
      */
-    public void destroy() {
+    public synchronized void destroy() {
+        this.positionInterval = 0;
+        this.handler.getMediaHandler().removeCallbacks(this.positionTicker);
+        this.levelInterval = 0;
+        this.handler.getMediaHandler().removeCallbacks(this.levelTicker);
+        this.cancelFade();
+        // Drop commands waiting for a prepare that will never be applied
+        this.pendingCommands.clear();
+        if (this.state == STATE.MEDIA_LOADING) {
+            this.state = STATE.MEDIA_NONE;
+        }
+        this.notifyLoadListeners();
+        this.linkedNext = null;
+        this.unchain();
         // Stop any play or record
         if (this.player != null) {
             if ((this.state == STATE.MEDIA_RUNNING) || (this.state == STATE.MEDIA_PAUSED)) {
                 this.player.stop();
                 this.setState(STATE.MEDIA_STOPPED);
             }
-            this.player.release();
+            this.handler.getPlayerPool().release(this.player);
             this.player = null;
         }
         if (this.recorder != null) {
@@ -134,6 +205,9 @@ public class AudioPlayer implements OnCompletionListener, OnPreparedListener, On
             this.recorder.release();
             this.recorder = null;
         }
+        if (this.pcmRecorder != null) {
+            this.stopRecording(true);
+        }
     }
 
     /**
@@ -142,14 +216,37 @@ public class AudioPlayer implements OnCompletionListener, OnPreparedListener, On
      * @param file              The name of the file
      */
     public void startRecording(String file) {
+        this.startRecording(file, null);
+    }
+
+    /**
+     * Start recording the specified file.
+     * The format option selects the recording engine: "wav" and "aac" record PCM
+     * with AudioRecord, anything else records AMR with MediaRecorder.
+     *
+     * @param file              The name of the file
+     * @param options           The options passed to media.startRecord(), may be null
+     */
+    public synchronized void startRecording(String file, JSONObject options) {
         switch (this.mode) {
         case PLAY:
             LOG.d(LOG_TAG, "AudioPlayer Error: Can't record in play mode.");
             sendErrorStatus(MEDIA_ERR_ABORTED);
             break;
         case NONE:
+            if (this.pcmRecorder != null) {
+                LOG.d(LOG_TAG, "AudioPlayer Error: Already recording.");
+                sendErrorStatus(MEDIA_ERR_ABORTED);
+                break;
+            }
+            if (options != null && PcmRecorder.isSupportedFormat(options.optString("format"))) {
+                this.startPcmRecording(file, options);
+                break;
+            }
             this.audioFile = file;
-            this.recorder = new MediaRecorder();
+            if (this.recorder == null) {
+                this.recorder = new MediaRecorder();
+            }
             this.recorder.setAudioSource(MediaRecorder.AudioSource.MIC);
             this.recorder.setOutputFormat(MediaRecorder.OutputFormat.RAW_AMR); // THREE_GPP);
             this.recorder.setAudioEncoder(MediaRecorder.AudioEncoder.AMR_NB); //AMR_NB);
@@ -175,80 +272,170 @@ public class AudioPlayer implements OnCompletionListener, OnPreparedListener, On
     }
 
     /**
-     * Save temporary recorded file to specified name
+     * Start recording PCM directly to the specified file.
      *
-     * @param file
+     * @param file              The name of the file
+     * @param options           The options passed to media.startRecord()
      */
-    public void moveFile(String file) {
-        /* this is a hack to save the file as the specified name */
+    private void startPcmRecording(String file, JSONObject options) {
+        this.audioFile = file;
+        this.pcmRecorder = PcmRecorder.create(options, new PcmRecorder.Listener() {
+            public void onRecordingError(Exception e) {
+                sendErrorStatus(MEDIA_ERR_ABORTED);
+            }
+
+            public void onSpeech(boolean speaking, long position) {
+                sendSpeech(speaking, position);
+            }
+
+            public void onChunk(String path, int index, long duration, boolean last) {
+                sendChunk(path, index, duration, last);
+            }
+        });
+        try {
+            this.pcmRecorder.start(resolveRecordingPath(this.handler.cordova.getActivity(), file));
+            this.setState(STATE.MEDIA_RUNNING);
+        } catch (Exception e) {
+            LOG.e(LOG_TAG, "AudioPlayer Error: failed to start recording", e);
+            this.pcmRecorder = null;
+            sendErrorStatus(MEDIA_ERR_ABORTED);
+        }
+    }
 
+    /**
+     * Stop the PCM recording on a background thread, as flushing the encoder
+     * may take a while, then tell JavaScript the recording has stopped.
+     */
+    private void stopPcmRecording() {
+        final PcmRecorder recorder = this.pcmRecorder;
+        this.pcmRecorder = null;
+        this.state = STATE.MEDIA_STOPPED;
+        this.handler.cordova.getThreadPool().execute(new Runnable() {
+            public void run() {
+                try {
+                    recorder.stop();
+                } catch (IOException e) {
+                    LOG.e(LOG_TAG, "AudioPlayer Error: failed to finish recording", e);
+                    sendErrorStatus(MEDIA_ERR_ABORTED);
+                }
+                synchronized (AudioPlayer.this) {
+                    sendStatusChange(MEDIA_STATE, null, (float)STATE.MEDIA_STOPPED.ordinal());
+                }
+            }
+        });
+    }
+
+    /**
+     * Resolve a recording file name to an absolute path.
+     * Relative names are stored on the external storage, or in the cache if it is not mounted.
+     *
+     * @param context           Used to find the cache
+     * @param file              The name of the file
+     * @return                  The absolute path
+     */
+    static String resolveRecordingPath(Context context, String file) {
         if (!file.startsWith("/")) {
             if (Environment.getExternalStorageState().equals(Environment.MEDIA_MOUNTED)) {
                 file = Environment.getExternalStorageDirectory().getAbsolutePath() + File.separator + file;
             } else {
-                file = "/data/data/" + handler.cordova.getActivity().getPackageName() + "/cache/" + file;
+                file = "/data/data/" + context.getPackageName() + "/cache/" + file;
             }
         }
+        return file;
+    }
+
+    /**
+     * Save the recorded segments to the specified name on a background thread,
+     * then tell JavaScript the recording has stopped.
+     *
+     * @param file              The name of the file
+     */
+    private void saveRecording(final String file) {
+        final LinkedList<String> segments = this.tempFiles;
+        this.tempFiles = new LinkedList<String>();
+        this.handler.cordova.getThreadPool().execute(new Runnable() {
+            public void run() {
+                moveFile(file, segments);
+                synchronized (AudioPlayer.this) {
+                    sendStatusChange(MEDIA_STATE, null, (float)STATE.MEDIA_STOPPED.ordinal());
+                }
+            }
+        });
+    }
+
+    /**
+     * Save temporary recorded files to specified name
+     *
+     * @param file              The name of the file
+     * @param segments          The temporary files, in recording order
+     */
+    void moveFile(String file, LinkedList<String> segments) {
+        /* this is a hack to save the file as the specified name */
+        file = resolveRecordingPath(this.handler.cordova.getActivity(), file);
 
-        int size = this.tempFiles.size();
+        int size = segments.size();
         LOG.d(LOG_TAG, "size = " + size);
 
-        // only one file so just copy it
+        // only one file so just rename it
         if (size == 1) {
-            String logMsg = "renaming " + this.tempFile + " to " + file;
+            String logMsg = "renaming " + segments.getFirst() + " to " + file;
             LOG.d(LOG_TAG, logMsg);
-            File f = new File(this.tempFile);
-            if (!f.renameTo(new File(file))) LOG.e(LOG_TAG, "FAILED " + logMsg);
+            File f = new File(segments.getFirst());
+            if (f.renameTo(new File(file))) {
+                return;
+            }
+            // renaming fails across file systems, so fall back to copying
+            LOG.d(LOG_TAG, "FAILED " + logMsg + ", copying instead");
         }
+
         // more than one file so the user must have pause recording. We'll need to concat files.
-        else {
-          FileOutputStream outputStream = null;
-          try {
-              outputStream = new FileOutputStream(new File(file));
-              FileInputStream inputStream = null;
-              File inputFile = null;
-              for (int i = 0; i < size; i++) {
-                  try {
-                      inputFile = new File(this.tempFiles.get(i));
-                      inputStream = new FileInputStream(inputFile);
-                      copy(inputStream, outputStream, (i>0));
-                  } catch(Exception e) {
-                      LOG.e(LOG_TAG, e.getLocalizedMessage(), e);
-                  } finally {
-                      if (inputStream != null) try {
-                          inputStream.close();
-                          inputFile.delete();
-                          inputFile = null;
-                      } catch (Exception e) {
-                          LOG.e(LOG_TAG, e.getLocalizedMessage(), e);
-                      }
-                  }
-              }
-          } catch(Exception e) {
-              e.printStackTrace();
-          } finally {
-              if (outputStream != null) try {
-                  outputStream.close();
-              } catch (Exception e) {
-                  LOG.e(LOG_TAG, e.getLocalizedMessage(), e);
-              }
-          }
-        }
-    }
-
-    private static long copy(InputStream from, OutputStream to, boolean skipHeader)
+        FileChannel output = null;
+        try {
+            output = new FileOutputStream(new File(file)).getChannel();
+            for (int i = 0; i < size; i++) {
+                File inputFile = new File(segments.get(i));
+                FileChannel input = null;
+                try {
+                    input = new FileInputStream(inputFile).getChannel();
+                    copy(input, output, (i>0));
+                } catch(Exception e) {
+                    LOG.e(LOG_TAG, e.getLocalizedMessage(), e);
+                } finally {
+                    if (input != null) try {
+                        input.close();
+                        inputFile.delete();
+                    } catch (Exception e) {
+                        LOG.e(LOG_TAG, e.getLocalizedMessage(), e);
+                    }
+                }
+            }
+        } catch(Exception e) {
+            e.printStackTrace();
+        } finally {
+            if (output != null) try {
+                output.close();
+            } catch (Exception e) {
+                LOG.e(LOG_TAG, e.getLocalizedMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Append a segment to the output, letting the kernel move the bytes.
+     *
+     * @param skipHeader        true to drop the AMR header of the segment
+     */
+    private static long copy(FileChannel from, FileChannel to, boolean skipHeader)
                 throws IOException {
-        byte[] buf = new byte[8096];
+        long position = skipHeader ? AMR_HEADER_LENGTH : 0;
+        long end = from.size();
         long total = 0;
-        if (skipHeader) {
-            from.skip(6);
-        }
-        while (true) {
-            int r = from.read(buf);
-            if (r == -1) {
+        while (position < end) {
+            long r = from.transferTo(position, end - position, to);
+            if (r <= 0) {
                 break;
             }
-            to.write(buf, 0, r);
+            position += r;
             total += r;
         }
         return total;
@@ -257,20 +444,37 @@ public class AudioPlayer implements OnCompletionListener, OnPreparedListener, On
     /**
      * Stop/Pause recording and save to the file specified when recording started.
      */
-    public void stopRecording(boolean stop) {
-        if (this.recorder != null) {
+    public synchronized void stopRecording(boolean stop) {
+        if (this.pcmRecorder != null) {
+            if (stop) {
+                LOG.d(LOG_TAG, "stopping recording");
+                this.stopPcmRecording();
+            } else if (this.state == STATE.MEDIA_RUNNING) {
+                LOG.d(LOG_TAG, "pause recording");
+                this.pcmRecorder.pause();
+                this.setState(STATE.MEDIA_PAUSED);
+            }
+        }
+        else if (this.recorder != null) {
             try{
                 if (this.state == STATE.MEDIA_RUNNING) {
                     this.recorder.stop();
                 }
                 this.recorder.reset();
-                this.tempFiles.add(this.tempFile);
+                if (this.tempFile != null) {
+                    this.tempFiles.add(this.tempFile);
+                    this.tempFile = null;
+                }
                 if (stop) {
-                    LOG.d(LOG_TAG, "stopping recording");
-                    this.setState(STATE.MEDIA_STOPPED);
-                    this.moveFile(this.audioFile);
+                    if (!this.tempFiles.isEmpty()) {
+                        LOG.d(LOG_TAG, "stopping recording");
+                        // JavaScript is told the recording stopped once the file is saved
+                        this.state = STATE.MEDIA_STOPPED;
+                        this.saveRecording(this.audioFile);
+                    }
                 } else {
                     LOG.d(LOG_TAG, "pause recording");
+                    this.setState(STATE.MEDIA_PAUSED);
                 }
             }
             catch (Exception e) {
@@ -282,8 +486,13 @@ public class AudioPlayer implements OnCompletionListener, OnPreparedListener, On
     /**
      * Resume recording and save to the file specified when recording started.
      */
-    public void resumeRecording() {
-        startRecording(this.audioFile);
+    public synchronized void resumeRecording() {
+        if (this.pcmRecorder != null) {
+            this.pcmRecorder.resume();
+            this.setState(STATE.MEDIA_RUNNING);
+        } else {
+            startRecording(this.audioFile);
+        }
     }
 
     //==========================================================================
@@ -295,20 +504,199 @@ public class AudioPlayer implements OnCompletionListener, OnPreparedListener, On
      *
      * @param file              The name of the audio file.
      */
-    public void startPlaying(String file) {
+    public synchronized void startPlaying(final String file) {
         if (this.readyPlayer(file) && this.player != null) {
             this.player.start();
+            this.applyRate();
             this.setState(STATE.MEDIA_RUNNING);
-            this.seekOnPrepared = 0; //insures this is always reset
         } else {
-            this.prepareOnly = false;
+            this.deferUntilPrepared(new Runnable() {
+                public void run() {
+                    startPlaying(file);
+                }
+            });
+        }
+    }
+
+    /**
+     * Prepare the audio file without playing it, so that play() starts right away.
+     * JavaScript is told MEDIA_STARTING and receives the duration once it is prepared.
+     *
+     * @param file              The name of the audio file.
+     * @param listener          Run once the file has been prepared or has failed to load
+     */
+    public synchronized void preload(String file, Runnable listener) {
+        boolean idle = this.state == STATE.MEDIA_NONE
+                || (this.state == STATE.MEDIA_STOPPED && this.player == null);
+        if (idle && this.mode != MODE.RECORD && !this.readyPlayer(file)) {
+            this.loadListeners.add(listener);
+        } else if (!this.addLoadListener(listener)) {
+            listener.run();
+        }
+    }
+
+    /**
+     * Run a listener once loading ends, if the player is loading.
+     *
+     * @return                  true if the listener was added, false if the player is not loading
+     */
+    boolean addLoadListener(Runnable listener) {
+        if (this.state == STATE.MEDIA_LOADING) {
+            this.loadListeners.add(listener);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Play another player without a gap when this one completes.
+     * The next player is preloaded and chained to this one with MediaPlayer.setNextMediaPlayer
+     * once both are prepared. When this player completes, the next one is reported as running
+     * and JavaScript receives a MEDIA_TRACK_CHANGE with the id of the next player.
+     *
+     * @param next              The next player, or null to stop chaining
+     */
+    public void setNextPlayer(AudioPlayer next) {
+        AudioPlayer old;
+        synchronized (this) {
+            old = this.next;
+            this.next = next;
+        }
+        if (old != null && old != next) {
+            old.setPrevious(this, null);
+        }
+        if (next != null) {
+            next.setPrevious(null, this);
+            next.preload(next.audioFile, this.nextLinker);
+        } else {
+            this.requestLinkNext();
+        }
+    }
+
+    private synchronized void setPrevious(AudioPlayer expected, AudioPlayer previous) {
+        if (expected == null || this.previous == expected) {
+            this.previous = previous;
+        }
+    }
+
+    private synchronized void clearNext(AudioPlayer expected) {
+        if (this.next == expected) {
+            this.next = null;
+            this.requestLinkNext();
+        }
+    }
+
+    /**
+     * Let the players chained to this one forget it, e.g. when it is destroyed.
+     * The players are updated on the media worker thread, so that no two player locks are held at once.
+     */
+    private void unchain() {
+        final AudioPlayer previous = this.previous;
+        final AudioPlayer next = this.next;
+        this.previous = null;
+        this.next = null;
+        if (previous != null) {
+            this.handler.getMediaHandler().post(new Runnable() {
+                public void run() {
+                    previous.clearNext(AudioPlayer.this);
+                }
+            });
+        }
+        if (next != null) {
+            this.handler.getMediaHandler().post(new Runnable() {
+                public void run() {
+                    next.setPrevious(AudioPlayer.this, null);
+                }
+            });
+        }
+    }
+
+    /**
+     * Update the chain to the next player on the media worker thread.
+     */
+    void requestLinkNext() {
+        this.handler.getMediaHandler().post(this.nextLinker);
+    }
+
+    /**
+     * Chain the MediaPlayer of the next player to this one, or remove the chain if the
+     * next player is not prepared. Runs on the media worker thread.
+     */
+    private void linkNext() {
+        AudioPlayer next;
+        synchronized (this) {
+            next = this.next;
+        }
+        MediaPlayer nextPlayer = next != null ? next.getPreparedPlayer() : null;
+        synchronized (this) {
+            if (this.next != next || this.player == null || this.state == STATE.MEDIA_LOADING) {
+                // changed meanwhile, or linked again once prepared
+                return;
+            }
+            if (nextPlayer == this.player) {
+                nextPlayer = null;
+            }
+            if (this.linkedNext == nextPlayer) {
+                return;
+            }
+            try {
+                this.player.setNextMediaPlayer(nextPlayer);
+                this.linkedNext = nextPlayer;
+            } catch (RuntimeException e) {
+                LOG.e(LOG_TAG, "AudioPlayer Error: failed to chain the next player", e);
+                this.linkedNext = null;
+            }
+        }
+    }
+
+    /**
+     * Get the MediaPlayer if it is prepared and not playing, so it can be started by the previous player.
+     */
+    private synchronized MediaPlayer getPreparedPlayer() {
+        if (this.state == STATE.MEDIA_STARTING || this.state == STATE.MEDIA_PAUSED || this.state == STATE.MEDIA_STOPPED) {
+            return this.player;
+        }
+        return null;
+    }
+
+    /**
+     * Called when the previous player completed and started the MediaPlayer of this one.
+     *
+     * @return                  true if this player is now running
+     */
+    private synchronized boolean onStartedByPrevious(MediaPlayer started) {
+        if (this.player != started || this.state == STATE.MEDIA_LOADING) {
+            return false;
         }
+        this.applyRate();
+        this.setState(STATE.MEDIA_RUNNING);
+        return true;
+    }
+
+    /**
+     * Run the listeners waiting for the end of loading.
+     */
+    void notifyLoadListeners() {
+        while (!this.loadListeners.isEmpty()) {
+            this.loadListeners.removeFirst().run();
+        }
+    }
+
+    /**
+     * Start or resume playing audio file with the options passed to media.play().
+     * MediaPlayer based playback has no Android specific options.
+     *
+     * @param file              The name of the audio file.
+     * @param options           The play options, may be null
+     */
+    public void startPlaying(String file, JSONObject options) {
+        this.startPlaying(file);
     }
 
     /**
      * Seek or jump to a new time in the track.
      */
-    public void seekToPlaying(int milliseconds) {
+    public synchronized void seekToPlaying(final int milliseconds) {
         if (this.readyPlayer(this.audioFile)) {
             if (milliseconds > 0) {
                 this.player.seekTo(milliseconds);
@@ -317,14 +705,18 @@ public class AudioPlayer implements OnCompletionListener, OnPreparedListener, On
             sendStatusChange(MEDIA_POSITION, null, (milliseconds / 1000.0f));
         }
         else {
-            this.seekOnPrepared = milliseconds;
+            this.deferUntilPrepared(new Runnable() {
+                public void run() {
+                    seekToPlaying(milliseconds);
+                }
+            });
         }
     }
 
     /**
      * Pause playing.
      */
-    public void pausePlaying() {
+    public synchronized void pausePlaying() {
 
         // If playing, then pause
         if (this.state == STATE.MEDIA_RUNNING && this.player != null) {
@@ -340,7 +732,7 @@ public class AudioPlayer implements OnCompletionListener, OnPreparedListener, On
     /**
      * Stop playing the audio file.
      */
-    public void stopPlaying() {
+    public synchronized void stopPlaying() {
         if ((this.state == STATE.MEDIA_RUNNING) || (this.state == STATE.MEDIA_PAUSED)) {
             this.player.pause();
             this.player.seekTo(0);
@@ -359,8 +751,18 @@ public class AudioPlayer implements OnCompletionListener, OnPreparedListener, On
      * @param player           The MediaPlayer that reached the end of the file
      */
     public void onCompletion(MediaPlayer player) {
-        LOG.d(LOG_TAG, "on completion is calling stopped");
-        this.setState(STATE.MEDIA_STOPPED);
+        AudioPlayer next;
+        MediaPlayer started;
+        synchronized (this) {
+            LOG.d(LOG_TAG, "on completion is calling stopped");
+            this.setState(STATE.MEDIA_STOPPED);
+            next = this.linkedNext != null ? this.next : null;
+            started = this.linkedNext;
+        }
+        // the chained MediaPlayer has already started by itself
+        if (next != null && next.onStartedByPrevious(started)) {
+            this.sendTrackChange(next.id);
+        }
     }
 
     /**
@@ -368,17 +770,108 @@ public class AudioPlayer implements OnCompletionListener, OnPreparedListener, On
      *
      * @return                  position in msec or -1 if not playing
      */
-    public long getCurrentPosition() {
-        if ((this.state == STATE.MEDIA_RUNNING) || (this.state == STATE.MEDIA_PAUSED)) {
-            int curPos = this.player.getCurrentPosition();
-            sendStatusChange(MEDIA_POSITION, null, (curPos / 1000.0f));
-            return curPos;
+    public synchronized long getCurrentPosition() {
+        // a recording is MEDIA_RUNNING too, without a MediaPlayer
+        if (this.player != null && !this.isRecording()
+                && ((this.state == STATE.MEDIA_RUNNING) || (this.state == STATE.MEDIA_PAUSED))) {
+            // the position is returned to the caller, so no MEDIA_POSITION message is sent
+            return this.player.getCurrentPosition();
         }
         else {
             return -1;
         }
     }
 
+    /**
+     * Push the playback position to JavaScript at a fixed interval while playing.
+     *
+     * @param interval          Interval in msec, 0 to stop the updates
+     */
+    public synchronized void setPositionUpdateInterval(int interval) {
+        this.positionInterval = interval > 0 ? Math.max(MIN_POSITION_INTERVAL, interval) : 0;
+        this.lastTickPosition = -1;
+        this.updatePositionTicker();
+    }
+
+    /**
+     * Run the position ticker only while subscribed and playing.
+     */
+    private void updatePositionTicker() {
+        Handler mediaHandler = this.handler.getMediaHandler();
+        mediaHandler.removeCallbacks(this.positionTicker);
+        if (this.positionInterval > 0 && !this.isRecording() && this.state == STATE.MEDIA_RUNNING) {
+            mediaHandler.post(this.positionTicker);
+        }
+    }
+
+    private synchronized void tickPosition() {
+        if (this.positionInterval <= 0 || this.isRecording() || this.state != STATE.MEDIA_RUNNING) {
+            return;
+        }
+        long position = this.getCurrentPosition();
+        // only send positions that changed since the last update
+        if (position >= 0 && position != this.lastTickPosition) {
+            this.lastTickPosition = position;
+            sendStatusChange(MEDIA_POSITION, null, (position / 1000.0f));
+        }
+        this.handler.getMediaHandler().postDelayed(this.positionTicker, this.positionInterval);
+    }
+
+    /**
+     * Push the level of the recording to JavaScript at a fixed interval while recording.
+     *
+     * @param interval          Interval in msec, 0 to stop the updates
+     * @param decay             Time in msec for the levels to fall to 1/e, 0 to send the level of each interval as is
+     */
+    public synchronized void setLevelUpdateInterval(int interval, long decay) {
+        this.levelInterval = interval > 0 ? Math.max(MIN_LEVEL_INTERVAL, interval) : 0;
+        this.levelMeter.setDecay(decay);
+        if (this.pcmRecorder != null) {
+            // skip the frames captured before the subscription
+            this.pcmRecorder.readLevels(this.levelMeter);
+        }
+        this.levelMeter.reset();
+        this.updateLevelTicker();
+    }
+
+    /**
+     * Run the level ticker only while subscribed and recording.
+     */
+    private void updateLevelTicker() {
+        Handler mediaHandler = this.handler.getMediaHandler();
+        mediaHandler.removeCallbacks(this.levelTicker);
+        if (this.levelInterval > 0 && this.isRecording() && this.state == STATE.MEDIA_RUNNING) {
+            mediaHandler.post(this.levelTicker);
+        }
+    }
+
+    private boolean isRecording() {
+        return this.mode != MODE.PLAY && (this.recorder != null || this.pcmRecorder != null);
+    }
+
+    /**
+     * Measure the frames recorded since the last tick. The MediaRecorder used for
+     * the default format only reports its peak, so the RMS level is 0 for it.
+     */
+    private synchronized void tickLevel() {
+        if (this.levelInterval <= 0 || !this.isRecording() || this.state != STATE.MEDIA_RUNNING) {
+            return;
+        }
+        if (this.pcmRecorder != null) {
+            this.pcmRecorder.readLevels(this.levelMeter);
+        }
+        else if (this.recorder != null) {
+            try {
+                this.levelMeter.addPeak(this.recorder.getMaxAmplitude());
+            } catch (IllegalStateException e) {
+                LOG.d(LOG_TAG, "Level not available: " + e.getMessage());
+            }
+        }
+        this.levelMeter.closeWindow(SystemClock.uptimeMillis());
+        this.sendLevel(this.levelMeter.getRms(), this.levelMeter.getPeak());
+        this.handler.getMediaHandler().postDelayed(this.levelTicker, this.levelInterval);
+    }
+
     /**
      * Determine if playback file is streaming or local.
      * It is streaming if file name starts with "http://"
@@ -403,10 +896,10 @@ public class AudioPlayer implements OnCompletionListener, OnPreparedListener, On
       *                             -1=can't be determined
       *                             -2=not allowed
       */
-    public float getDuration(String file) {
+    public synchronized float getDuration(String file) {
 
         // Can't get duration of recording
-        if (this.recorder != null) {
+        if (this.recorder != null || this.pcmRecorder != null) {
             return (-2); // not allowed
         }
 
@@ -415,13 +908,10 @@ public class AudioPlayer implements OnCompletionListener, OnPreparedListener, On
             return this.duration;
         }
 
-        // If no player yet, then create one
+        // If no player yet, then start preparing one; the duration is
+        // sent to JavaScript once the file has been prepared
         else {
-            this.prepareOnly = true;
-            this.startPlaying(file);
-
-            // This will only return value for local, since streaming
-            // file hasn't been read yet.
+            this.readyPlayer(file);
             return this.duration;
         }
     }
@@ -431,26 +921,79 @@ public class AudioPlayer implements OnCompletionListener, OnPreparedListener, On
      *
      * @param player           The MediaPlayer that is ready for playback
      */
-    public void onPrepared(MediaPlayer player) {
+    public synchronized void onPrepared(MediaPlayer player) {
+        if (this.state != STATE.MEDIA_LOADING || this.player != player) {
+            // destroyed or reloaded while preparing
+            return;
+        }
         // Listen for playback completion
         this.player.setOnCompletionListener(this);
-        // seek to any location received while not prepared
-        this.seekToPlaying(this.seekOnPrepared);
-        // If start playing after prepared
-        if (!this.prepareOnly) {
-            this.player.start();
-            this.setState(STATE.MEDIA_RUNNING);
-            this.seekOnPrepared = 0; //reset only when played
-        } else {
-            this.setState(STATE.MEDIA_STARTING);
-        }
+        // JavaScript was already told MEDIA_STARTING when loading began
+        this.state = STATE.MEDIA_STARTING;
         // Save off duration
         this.duration = getDurationInSeconds();
-        // reset prepare only flag
-        this.prepareOnly = true;
 
         // Send status notification to JavaScript
         sendStatusChange(MEDIA_DURATION, null, this.duration);
+
+        this.runPendingCommands();
+        this.notifyLoadListeners();
+        if (this.next != null) {
+            this.requestLinkNext();
+        }
+        if (this.previous != null) {
+            this.previous.requestLinkNext();
+        }
+    }
+
+    /**
+     * Enter MEDIA_LOADING. JavaScript is told MEDIA_STARTING, as it is not aware of MEDIA_LOADING.
+     */
+    void beginLoading() {
+        this.setState(STATE.MEDIA_STARTING);
+        this.state = STATE.MEDIA_LOADING;
+    }
+
+    /**
+     * Load the file with a MediaPlayer instead, for a subclass that could not load it itself.
+     * The player stays in MEDIA_LOADING, so queued commands and load listeners wait for onPrepared.
+     */
+    void loadWithMediaPlayer() {
+        this.state = STATE.MEDIA_NONE;
+        this.prepareAudioFile(this.audioFile);
+    }
+
+    /**
+     * Leave MEDIA_LOADING after the source failed to load, dropping any queued commands.
+     */
+    void failLoading() {
+        this.pendingCommands.clear();
+        this.state = STATE.MEDIA_NONE;
+        sendErrorStatus(MEDIA_ERR_ABORTED);
+        this.notifyLoadListeners();
+    }
+
+    /**
+     * Queue a command to be run once the player has been prepared.
+     *
+     * @param command           The command to run from onPrepared
+     * @return                  true if the command was queued, false if the player is not loading
+     */
+    boolean deferUntilPrepared(Runnable command) {
+        if (this.state == STATE.MEDIA_LOADING) {
+            this.pendingCommands.add(command);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Apply the commands received while loading, in the order they were issued.
+     */
+    void runPendingCommands() {
+        while (!this.pendingCommands.isEmpty() && this.state != STATE.MEDIA_LOADING) {
+            this.pendingCommands.removeFirst().run();
+        }
     }
 
     /**
@@ -470,12 +1013,17 @@ public class AudioPlayer implements OnCompletionListener, OnPreparedListener, On
      * @param arg1              the type of error that has occurred: (MEDIA_ERROR_UNKNOWN, MEDIA_ERROR_SERVER_DIED)
      * @param arg2              an extra code, specific to the error.
      */
-    public boolean onError(MediaPlayer player, int arg1, int arg2) {
+    public synchronized boolean onError(MediaPlayer player, int arg1, int arg2) {
         LOG.d(LOG_TAG, "AudioPlayer.onError(" + arg1 + ", " + arg2 + ")");
 
         // we don't want to send success callback
         // so we don't call setState() here
         this.state = STATE.MEDIA_STOPPED;
+        // a player that reported an error is not returned to the pool
+        if (this.player != null) {
+            this.player.release();
+            this.player = null;
+        }
         this.destroy();
         // Send error notification to JavaScript
         sendErrorStatus(arg1);
@@ -488,11 +1036,17 @@ public class AudioPlayer implements OnCompletionListener, OnPreparedListener, On
      *
      * @param state
      */
-    private void setState(STATE state) {
+    void setState(STATE state) {
         if (this.state != state) {
             sendStatusChange(MEDIA_STATE, null, (float)state.ordinal());
+            this.state = state;
+            if (this.positionInterval > 0) {
+                this.updatePositionTicker();
+            }
+            if (this.levelInterval > 0) {
+                this.updateLevelTicker();
+            }
         }
-        this.state = state;
     }
 
     /**
@@ -522,15 +1076,187 @@ public class AudioPlayer implements OnCompletionListener, OnPreparedListener, On
      *
      * @param volume
      */
-    public void setVolume(float volume) {
+    public synchronized void setVolume(final float volume) {
+        if (this.deferUntilPrepared(new Runnable() {
+                public void run() {
+                    setVolume(volume);
+                }
+            })) {
+            return;
+        }
         if (this.player != null) {
-            this.player.setVolume(volume, volume);
+            this.volume = volume;
+            this.applyVolume();
         } else {
             LOG.d(LOG_TAG, "AudioPlayer Error: Cannot set volume until the audio file is initialized.");
             sendErrorStatus(MEDIA_ERR_NONE_ACTIVE);
         }
     }
 
+    /**
+     * Get the volume last set, where a fade starts.
+     *
+     * @return                  The volume, 0.0f - 1.0f
+     */
+    float getVolume() {
+        return this.volume;
+    }
+
+    /**
+     * Determine if setVolume can be applied now, without reporting an error.
+     *
+     * @return                  T=there is something to set the volume of
+     */
+    boolean canSetVolume() {
+        return this.player != null;
+    }
+
+    /**
+     * Set the volume for a step of a fade. Unlike setVolume it is never deferred,
+     * so it must only be called while the player is not loading.
+     *
+     * @param volume            The volume, 0.0f - 1.0f
+     */
+    void setFadeVolume(float volume) {
+        this.volume = volume;
+        this.applyVolume();
+    }
+
+    /**
+     * Fade the volume to a target on the media thread, instead of JavaScript calling
+     * setVolume many times. MEDIA_FADE is sent with the target once it is reached.
+     * A fade stops the fade in progress without a MEDIA_FADE for it.
+     *
+     * @param volume            The target volume, 0.0f - 1.0f
+     * @param duration          The duration of the fade in msec
+     * @param curve             The shape of the fade
+     */
+    public synchronized void fadeTo(final float volume, final long duration, final VolumeRamp.Curve curve) {
+        if (this.deferUntilPrepared(new Runnable() {
+                public void run() {
+                    fadeTo(volume, duration, curve);
+                }
+            })) {
+            return;
+        }
+        if (this.state == STATE.MEDIA_NONE || this.isRecording() || !this.canSetVolume()) {
+            LOG.d(LOG_TAG, "AudioPlayer Error: fadeTo() called during invalid state: " + this.state.ordinal());
+            sendErrorStatus(MEDIA_ERR_NONE_ACTIVE);
+            return;
+        }
+        float target = Math.max(0.0f, Math.min(1.0f, volume));
+        this.fade = new VolumeRamp(this.getVolume(), target, SystemClock.uptimeMillis(), duration, curve);
+        Handler mediaHandler = this.handler.getMediaHandler();
+        mediaHandler.removeCallbacks(this.fadeTicker);
+        mediaHandler.post(this.fadeTicker);
+    }
+
+    /**
+     * Stop the fade in progress at its current volume.
+     */
+    public synchronized void cancelFade() {
+        this.fade = null;
+        this.handler.getMediaHandler().removeCallbacks(this.fadeTicker);
+    }
+
+    private synchronized void tickFade() {
+        VolumeRamp fade = this.fade;
+        if (fade == null) {
+            return;
+        }
+        if (!this.canSetVolume()) {
+            // the player was released, e.g. after an error that was already reported
+            this.fade = null;
+            return;
+        }
+        if (this.state == STATE.MEDIA_LOADING) {
+            // reloading; the ramp follows the clock, so it goes on once the file is prepared
+            this.handler.getMediaHandler().postDelayed(this.fadeTicker, FADE_INTERVAL);
+            return;
+        }
+        long now = SystemClock.uptimeMillis();
+        this.setFadeVolume(fade.getVolume(now));
+        if (fade.isDone(now)) {
+            this.fade = null;
+            sendStatusChange(MEDIA_FADE, null, fade.getTarget());
+        } else {
+            this.handler.getMediaHandler().postDelayed(this.fadeTicker, FADE_INTERVAL);
+        }
+    }
+
+    /**
+     * Set the position between the left and right speakers, by lowering the volume of the other side.
+     *
+     * @param pan               -1.0f (left) - 1.0f (right)
+     */
+    public synchronized void setPan(final float pan) {
+        if (this.deferUntilPrepared(new Runnable() {
+                public void run() {
+                    setPan(pan);
+                }
+            })) {
+            return;
+        }
+        if (this.player != null) {
+            this.pan = Math.max(-1.0f, Math.min(1.0f, pan));
+            this.applyVolume();
+        } else {
+            LOG.d(LOG_TAG, "AudioPlayer Error: Cannot set pan until the audio file is initialized.");
+            sendErrorStatus(MEDIA_ERR_NONE_ACTIVE);
+        }
+    }
+
+    private void applyVolume() {
+        this.player.setVolume(this.volume * Math.min(1.0f, 1.0f - this.pan),
+                this.volume * Math.min(1.0f, 1.0f + this.pan));
+    }
+
+    /**
+     * Set the playback speed and pitch. Requires API level 23, the rate is ignored on older devices.
+     * The speed and pitch are independent, so a pitch of 1 keeps the pitch at any speed.
+     * The position reported to JavaScript is the media time, so it advances at the playback speed.
+     *
+     * @param rate              Playback speed, 0.25f - 4.0f
+     * @param pitch             Pitch, 0.25f - 4.0f
+     */
+    public synchronized void setRate(final float rate, final float pitch) {
+        if (this.deferUntilPrepared(new Runnable() {
+                public void run() {
+                    setRate(rate, pitch);
+                }
+            })) {
+            return;
+        }
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+            LOG.d(LOG_TAG, "AudioPlayer Error: setRate() requires Android 6.0");
+            return;
+        }
+        this.rate = Math.max(MIN_RATE, Math.min(MAX_RATE, rate));
+        this.pitch = Math.max(MIN_RATE, Math.min(MAX_RATE, pitch));
+        // setting the speed of a paused player starts it, so a paused player gets it on start
+        if (this.state == STATE.MEDIA_RUNNING) {
+            this.applyRate();
+        }
+    }
+
+    /**
+     * Apply the playback speed and pitch to the running MediaPlayer.
+     */
+    private void applyRate() {
+        boolean custom = this.rate != 1.0f || this.pitch != 1.0f;
+        if (this.player == null || Build.VERSION.SDK_INT < Build.VERSION_CODES.M || (!custom && !this.rateApplied)) {
+            return;
+        }
+        try {
+            PlaybackParams params = this.player.getPlaybackParams();
+            this.player.setPlaybackParams(params.setSpeed(this.rate).setPitch(this.pitch));
+            this.rateApplied = custom;
+        } catch (RuntimeException e) {
+            LOG.e(LOG_TAG, "AudioPlayer Error: failed to set the playback rate", e);
+            sendErrorStatus(MEDIA_ERR_ABORTED);
+        }
+    }
+
     /**
      * attempts to put the player in play mode
      * @return true if in playmode, false otherwise
@@ -559,20 +1285,11 @@ public class AudioPlayer implements OnCompletionListener, OnPreparedListener, On
         if (playMode()) {
             switch (this.state) {
                 case MEDIA_NONE:
-                    if (this.player == null) {
-                        this.player = new MediaPlayer();
-                        this.player.setOnErrorListener(this);
-                    }
-                    try {
-                        this.loadAudioFile(file);
-                    } catch (Exception e) {
-                        sendErrorStatus(MEDIA_ERR_ABORTED);
-                    }
+                    this.prepareAudioFile(file);
                     return false;
                 case MEDIA_LOADING:
                     //cordova js is not aware of MEDIA_LOADING, so we send MEDIA_STARTING instead
                     LOG.d(LOG_TAG, "AudioPlayer Loading: startPlaying() called during media preparation: " + STATE.MEDIA_STARTING.ordinal());
-                    this.prepareOnly = false;
                     return false;
                 case MEDIA_STARTING:
                 case MEDIA_RUNNING:
@@ -581,17 +1298,9 @@ public class AudioPlayer implements OnCompletionListener, OnPreparedListener, On
                 case MEDIA_STOPPED:
                     //if we are readying the same file
                     if (this.audioFile.compareTo(file) == 0) {
-                        //maybe it was recording?
-                        if(this.recorder!=null && player==null) {
-                            this.player = new MediaPlayer();
-                            this.player.setOnErrorListener(this);
-                            this.prepareOnly = false;
-
-                            try {
-                                this.loadAudioFile(file);
-                            } catch (Exception e) {
-                                sendErrorStatus(MEDIA_ERR_ABORTED);
-                            }
+                        //maybe it was recording, or the player was released after an error?
+                        if (this.player == null) {
+                            this.prepareAudioFile(file);
                             return false;//we´re not ready yet
                         }
                         else {
@@ -601,14 +1310,8 @@ public class AudioPlayer implements OnCompletionListener, OnPreparedListener, On
                             return true;
                         }
                     } else {
-                        //reset the player
-                        this.player.reset();
-                        try {
-                            this.loadAudioFile(file);
-                        } catch (Exception e) {
-                            sendErrorStatus(MEDIA_ERR_ABORTED);
-                        }
                         //if we had to prepare the file, we won't be in the correct state for playback
+                        this.prepareAudioFile(file);
                         return false;
                     }
                 default:
@@ -619,54 +1322,124 @@ public class AudioPlayer implements OnCompletionListener, OnPreparedListener, On
         return false;
     }
 
+    /**
+     * Start loading the audio file on the media worker thread.
+     * The player stays in MEDIA_LOADING until onPrepared is called; commands
+     * issued in the meantime are queued and applied once it is prepared.
+     *
+     * @param file              The name of the audio file
+     */
+    private void prepareAudioFile(final String file) {
+        this.beginLoading();
+        if (this.previous != null) {
+            // unchain this player before it is reset
+            this.previous.requestLinkNext();
+        }
+        final StreamCache cache = this.handler.getStreamCache();
+        if (cache != null && StreamCache.isCacheable(file)) {
+            // validating the cached copy is a network request, keep it off the worker thread
+            this.handler.cordova.getThreadPool().execute(new Runnable() {
+                public void run() {
+                    postLoadAudioFile(file, cache.open(file));
+                }
+            });
+        } else {
+            this.postLoadAudioFile(file, null);
+        }
+    }
+
+    /**
+     * Load the audio file on the media worker thread.
+     *
+     * @param file              The name of the audio file
+     * @param cached            The cached source of a streamed file, may be null
+     */
+    private void postLoadAudioFile(final String file, final StreamCache.Source cached) {
+        this.handler.getMediaHandler().post(new Runnable() {
+            public void run() {
+                synchronized (AudioPlayer.this) {
+                    if (state != STATE.MEDIA_LOADING) {
+                        // destroyed before loading started
+                        if (cached != null) {
+                            cached.close();
+                        }
+                        return;
+                    }
+                    try {
+                        loadAudioFile(file, cached);
+                    } catch (Exception e) {
+                        LOG.e(LOG_TAG, "AudioPlayer Error: failed to load " + file, e);
+                        if (cached != null) {
+                            cached.close();
+                        }
+                        failLoading();
+                    }
+                }
+            }
+        });
+    }
+
     /**
      * load audio file
+     * Must be called on the media worker thread, so the player delivers its
+     * callbacks there instead of on the caller thread.
+     * @param file              The name of the audio file
+     * @param cached            The cached source of a streamed file, may be null
      * @throws IOException
      * @throws IllegalStateException
      * @throws SecurityException
      * @throws IllegalArgumentException
      */
-    private void loadAudioFile(String file) throws IllegalArgumentException, SecurityException, IllegalStateException, IOException {
-        if (this.isStreaming(file)) {
+    private void loadAudioFile(String file, StreamCache.Source cached) throws IllegalArgumentException, SecurityException, IllegalStateException, IOException {
+        if (this.player == null) {
+            this.player = this.handler.getPlayerPool().acquire();
+            this.player.setOnErrorListener(this);
+        } else {
+            // resetting also drops the chain to the next player
+            this.player.reset();
+            this.linkedNext = null;
+            this.rateApplied = false;
+        }
+        if (cached != null) {
+            cached.setDataSourceOf(this.player);
+            this.player.setAudioStreamType(AudioManager.STREAM_MUSIC);
+        }
+        else if (this.isStreaming(file)) {
             this.player.setDataSource(file);
             this.player.setAudioStreamType(AudioManager.STREAM_MUSIC);
-            //if it's a streaming file, play mode is implied
-            this.setMode(MODE.PLAY);
-            this.setState(STATE.MEDIA_STARTING);
-            this.player.setOnPreparedListener(this);
-            this.player.prepareAsync();
         }
-        else {
-            if (file.startsWith("/android_asset/")) {
-                String f = file.substring(15);
-                android.content.res.AssetFileDescriptor fd = this.handler.cordova.getActivity().getAssets().openFd(f);
+        else if (file.startsWith("/android_asset/")) {
+            String f = file.substring(15);
+            android.content.res.AssetFileDescriptor fd = this.handler.cordova.getActivity().getAssets().openFd(f);
+            try {
                 this.player.setDataSource(fd.getFileDescriptor(), fd.getStartOffset(), fd.getLength());
+            } finally {
+                fd.close();
             }
-            else {
-                File fp = new File(file);
-                if (fp.exists()) {
-                    FileInputStream fileInputStream = new FileInputStream(file);
+        }
+        else {
+            File fp = new File(file);
+            if (fp.exists()) {
+                FileInputStream fileInputStream = new FileInputStream(file);
+                try {
                     this.player.setDataSource(fileInputStream.getFD());
+                } finally {
                     fileInputStream.close();
                 }
-                else {
-                    this.player.setDataSource(Environment.getExternalStorageDirectory().getPath() + "/" + file);
-                }
             }
-                this.setState(STATE.MEDIA_STARTING);
-                this.player.setOnPreparedListener(this);
-                this.player.prepare();
-
-                // Get duration
-                this.duration = getDurationInSeconds();
+            else {
+                this.player.setDataSource(Environment.getExternalStorageDirectory().getPath() + "/" + file);
             }
+        }
+        this.player.setOnPreparedListener(this);
+        this.player.prepareAsync();
     }
 
-    private void sendErrorStatus(int errorCode) {
+    void sendErrorStatus(int errorCode) {
         sendStatusChange(MEDIA_ERROR, errorCode, null);
     }
 
-    private void sendStatusChange(int messageType, Integer additionalCode, Float value) {
+    void sendStatusChange(int messageType, Integer additionalCode, Float value) {
 
         if (additionalCode != null && value != null) {
             throw new IllegalArgumentException("Only one of additionalCode or value can be specified, not both");
@@ -691,13 +1464,102 @@ public class AudioPlayer implements OnCompletionListener, OnPreparedListener, On
         this.handler.sendEventMessage("status", statusDetails);
     }
 
+    /**
+     * Tell JavaScript that the next player took over from this one.
+     *
+     * @param nextId            The id of the next player
+     */
+    private void sendTrackChange(String nextId) {
+        JSONObject statusDetails = new JSONObject();
+        try {
+            statusDetails.put("id", this.id);
+            statusDetails.put("msgType", MEDIA_TRACK_CHANGE);
+            statusDetails.put("value", nextId);
+        } catch (JSONException e) {
+            LOG.e(LOG_TAG, "Failed to create status details", e);
+        }
+        this.handler.sendEventMessage("status", statusDetails);
+    }
+
+    /**
+     * Tell JavaScript that speech started or ended in the recording.
+     *
+     * @param speaking          T=speech started, F=speech ended
+     * @param position          Time in the recording in msec
+     */
+    private void sendSpeech(boolean speaking, long position) {
+        JSONObject statusDetails = new JSONObject();
+        try {
+            JSONObject speech = new JSONObject();
+            speech.put("speaking", speaking);
+            speech.put("position", position / 1000.0);
+            statusDetails.put("id", this.id);
+            statusDetails.put("msgType", MEDIA_SPEECH);
+            statusDetails.put("value", speech);
+        } catch (JSONException e) {
+            LOG.e(LOG_TAG, "Failed to create status details", e);
+        }
+        this.handler.sendEventMessage("status", statusDetails);
+    }
+
+    /**
+     * Tell JavaScript that a chunk of a segmented recording is complete.
+     *
+     * @param path              The absolute path of the chunk
+     * @param index             The index of the chunk, from 0
+     * @param duration          The duration of the chunk in msec
+     * @param last              T=the recording stopped with this chunk
+     */
+    private void sendChunk(String path, int index, long duration, boolean last) {
+        JSONObject statusDetails = new JSONObject();
+        try {
+            JSONObject chunk = new JSONObject();
+            chunk.put("path", path);
+            chunk.put("index", index);
+            chunk.put("duration", duration / 1000.0);
+            chunk.put("last", last);
+            statusDetails.put("id", this.id);
+            statusDetails.put("msgType", MEDIA_CHUNK);
+            statusDetails.put("value", chunk);
+        } catch (JSONException e) {
+            LOG.e(LOG_TAG, "Failed to create status details", e);
+        }
+        this.handler.sendEventMessage("status", statusDetails);
+    }
+
+    /**
+     * Send the level of the recording to JavaScript.
+     *
+     * @param rms               The RMS level, 0 - 1
+     * @param peak              The peak level, 0 - 1
+     */
+    private void sendLevel(float rms, float peak) {
+        JSONObject statusDetails = new JSONObject();
+        try {
+            JSONObject level = new JSONObject();
+            level.put("rms", rms);
+            level.put("peak", peak);
+            statusDetails.put("id", this.id);
+            statusDetails.put("msgType", MEDIA_LEVEL);
+            statusDetails.put("value", level);
+        } catch (JSONException e) {
+            LOG.e(LOG_TAG, "Failed to create status details", e);
+        }
+        this.handler.sendEventMessage("status", statusDetails);
+    }
+
     /**
      * Get current amplitude of recording.
      *
      * @return amplitude or 0 if not recording
      */
     public float getCurrentAmplitude() {
-        if (this.recorder != null) {
+        if (this.pcmRecorder != null) {
+            if (this.state == STATE.MEDIA_RUNNING) {
+                return (float) this.pcmRecorder.getMaxAmplitude() / 32762;
+            }
+        }
+        else if (this.recorder != null) {
             try{
                 if (this.state == STATE.MEDIA_RUNNING) {
                     return (float) this.recorder.getMaxAmplitude() / 32762;
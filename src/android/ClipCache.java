@@ -0,0 +1,401 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.media;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.content.res.AssetFileDescriptor;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+
+import org.apache.cordova.LOG;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * This class keeps short /android_asset/ clips decoded to PCM in memory, so a clip
+ * that is played again by a new player is neither read nor decoded again.
+ *
+ * Entries are keyed by asset path and the time the app was last updated, as assets
+ * only change with the app. A clip requested by several players at once is decoded
+ * only once.
+ *
+ * The samples are kept in a PcmSlab, a direct ByteBuffer allocated once for the size
+ * budget, so cached clips add no arrays for the garbage collector to track and
+ * decoding or evicting a clip allocates nothing. When the slab has no room for a new
+ * clip, the least recently used clips no player is reading are evicted.
+ */
+public class ClipCache {
+
+    private static final String LOG_TAG = "ClipCache";
+
+    private static final int MAX_CLIP_BYTES = 1024 * 1024; // Largest static AudioTrack buffer we ask for
+    private static final int CHUNK_SIZE = 16 * 1024;        // Allocation unit of the slab
+    private static final int DEFAULT_CLIP_BYTES = 256 * 1024; // Initial block when the duration is unknown
+
+    /**
+     * A decoded clip, shared by the players that play it.
+     * Its samples stay valid until it is passed back to release().
+     */
+    public static class Clip {
+        private final PcmSlab.Block block;
+        final int length;                   // Bytes of samples in the block
+        final int sampleRate;
+        final int channels;
+        private int users = 0;              // Players reading the samples
+        private boolean evicted = false;    // Block freed once the last user releases it
+
+        Clip(PcmSlab.Block block, int length, int sampleRate, int channels) {
+            this.block = block;
+            this.length = length;
+            this.sampleRate = sampleRate;
+            this.channels = channels;
+        }
+
+        /**
+         * @return              A view of the 16 bit interleaved samples, in native byte order.
+         *                      It is shared with other players and must not be written.
+         */
+        public ByteBuffer getSamples() {
+            // a direct duplicate, so AudioTrack can read it without copying it to an array
+            ByteBuffer samples = this.block.buffer.duplicate().order(this.block.buffer.order());
+            samples.clear();
+            samples.limit(this.length);
+            return samples;
+        }
+
+        /**
+         * @return              The number of frames, one sample per channel each
+         */
+        public int getFrames() {
+            return this.length / (2 * this.channels);
+        }
+
+        /**
+         * @return              The duration in msec
+         */
+        public long getDuration() {
+            return this.getFrames() * 1000L / this.sampleRate;
+        }
+    }
+
+    private final Context context;
+    private final PcmSlab slab;
+    private final long maxFileLength;
+
+    private final LinkedHashMap<String, Clip> clips = new LinkedHashMap<String, Clip>(16, 0.75f, true);
+    private final HashMap<String, FutureTask<Clip>> decoding = new HashMap<String, FutureTask<Clip>>();
+    private final HashMap<String, Boolean> cacheable = new HashMap<String, Boolean>();
+    private final HashMap<String, Boolean> fitting = new HashMap<String, Boolean>();
+    private long appUpdateTime = -1;
+
+    /**
+     * Constructor.
+     *
+     * @param context           Used to read the assets
+     * @param maxBytes          The size budget of the decoded clips
+     * @param maxFileLength     The length of the largest asset file that is cached
+     */
+    public ClipCache(Context context, long maxBytes, long maxFileLength) {
+        this.context = context;
+        this.slab = new PcmSlab(maxBytes, CHUNK_SIZE);
+        this.maxFileLength = maxFileLength;
+    }
+
+    /**
+     * Determine if a source is a short asset that is played from the cache: it exists and
+     * its file is at most maxFileLength long. This is called on the bridge thread, so it
+     * only looks the asset up; whether the clip fits a static AudioTrack is left to fits().
+     */
+    public boolean isCacheable(String file) {
+        if (!file.startsWith("/android_asset/")) {
+            return false;
+        }
+        synchronized (this.cacheable) {
+            Boolean known = this.cacheable.get(file);
+            if (known == null) {
+                known = Boolean.FALSE;
+                try {
+                    AssetFileDescriptor fd = this.context.getAssets().openFd(file.substring(15));
+                    try {
+                        known = fd.getLength() <= this.maxFileLength;
+                    } finally {
+                        fd.close();
+                    }
+                } catch (IOException e) {
+                    // missing, or compressed in the APK
+                }
+                this.cacheable.put(file, known);
+            }
+            return known;
+        }
+    }
+
+    /**
+     * Determine if a cacheable asset decodes to a clip a static AudioTrack holds, from
+     * the format of its first audio track. The first call for an asset reads its format,
+     * so it must not be called on the bridge or the media worker thread.
+     */
+    public boolean fits(String file) {
+        synchronized (this.fitting) {
+            Boolean known = this.fitting.get(file);
+            if (known == null) {
+                known = Boolean.FALSE;
+                try {
+                    AssetFileDescriptor fd = this.context.getAssets().openFd(file.substring(15));
+                    try {
+                        known = decodedLength(fd) <= Math.min(MAX_CLIP_BYTES, this.slab.capacity());
+                    } finally {
+                        fd.close();
+                    }
+                } catch (IOException e) {
+                    LOG.d(LOG_TAG, "Can not read the format of " + file + ": " + e.getMessage());
+                }
+                this.fitting.put(file, known);
+            }
+            return known;
+        }
+    }
+
+    /**
+     * Estimate the bytes of 16 bit PCM an asset decodes to from the duration, rate and
+     * channels of its first audio track. A clip may still turn out longer when it is decoded.
+     *
+     * @return                  The estimate, 0 if the format does not tell
+     */
+    private static long decodedLength(AssetFileDescriptor fd) throws IOException {
+        MediaExtractor extractor = new MediaExtractor();
+        try {
+            extractor.setDataSource(fd.getFileDescriptor(), fd.getStartOffset(), fd.getLength());
+            for (int i = 0; i < extractor.getTrackCount(); i++) {
+                MediaFormat format = extractor.getTrackFormat(i);
+                String mime = format.getString(MediaFormat.KEY_MIME);
+                if (mime == null || !mime.startsWith("audio/")) {
+                    continue;
+                }
+                if (!format.containsKey(MediaFormat.KEY_DURATION)) {
+                    return 0;
+                }
+                return format.getLong(MediaFormat.KEY_DURATION) * format.getInteger(MediaFormat.KEY_SAMPLE_RATE)
+                        / 1000000L * format.getInteger(MediaFormat.KEY_CHANNEL_COUNT) * 2;
+            }
+            return 0;
+        } catch (RuntimeException e) {
+            throw new IOException("Can not read the format of the asset", e);
+        } finally {
+            extractor.release();
+        }
+    }
+
+    /**
+     * Get the decoded clip, decoding it if it is not cached. The clip is not evicted
+     * until it is passed to release().
+     * Decoding takes a while, so it must not be called on the bridge or the media worker thread.
+     *
+     * @param file              The /android_asset/ path of the clip
+     */
+    public Clip acquire(final String file) throws IOException {
+        String key = file + "@" + this.getAppUpdateTime();
+        FutureTask<Clip> task;
+        boolean owner = false;
+        synchronized (this) {
+            Clip clip = this.clips.get(key);
+            if (clip != null) {
+                clip.users++;
+                return clip;
+            }
+            task = this.decoding.get(key);
+            if (task == null) {
+                task = new FutureTask<Clip>(new Callable<Clip>() {
+                    public Clip call() throws IOException {
+                        return decode(file);
+                    }
+                });
+                this.decoding.put(key, task);
+                owner = true;
+            }
+        }
+
+        if (owner) {
+            task.run();
+        }
+        Clip clip = null;
+        try {
+            clip = task.get();
+            synchronized (this) {
+                if (!clip.evicted) {
+                    clip.users++;
+                    return clip;
+                }
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException("Can not decode " + file, cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while decoding " + file, e);
+        } finally {
+            if (owner) {
+                synchronized (this) {
+                    this.decoding.remove(key);
+                    if (clip != null) {
+                        this.put(key, clip);
+                    }
+                }
+            }
+        }
+        // evicted before this waiter could use it
+        return this.acquire(file);
+    }
+
+    /**
+     * Let the cache evict a clip returned by acquire() again.
+     */
+    public synchronized void release(Clip clip) {
+        clip.users--;
+        if (clip.users == 0 && clip.evicted) {
+            this.slab.free(clip.block);
+        }
+    }
+
+    /**
+     * Drop all decoded clips. The clips still read by players are freed once released.
+     */
+    public synchronized void clear() {
+        for (Clip clip : this.clips.values()) {
+            this.evict(clip);
+        }
+        this.clips.clear();
+    }
+
+    private void put(String key, Clip clip) {
+        this.clips.put(key, clip);
+        LOG.d(LOG_TAG, "cached " + key + ", " + this.slab.usedBytes() + " of " + this.slab.capacity() + " bytes used");
+    }
+
+    private void evict(Clip clip) {
+        clip.evicted = true;
+        if (clip.users == 0) {
+            this.slab.free(clip.block);
+        }
+    }
+
+    /**
+     * Allocate a block, evicting the least recently used clips that are not being read until it fits.
+     *
+     * @return                  The block, or null if the clips being read leave no room for it
+     */
+    private synchronized PcmSlab.Block reserve(int bytes) {
+        PcmSlab.Block block = this.slab.allocate(bytes);
+        Iterator<Map.Entry<String, Clip>> it = this.clips.entrySet().iterator();
+        while (block == null && it.hasNext()) {
+            Map.Entry<String, Clip> eldest = it.next();
+            if (eldest.getValue().users > 0) {
+                continue;
+            }
+            LOG.d(LOG_TAG, "evicting " + eldest.getKey());
+            this.evict(eldest.getValue());
+            it.remove();
+            block = this.slab.allocate(bytes);
+        }
+        return block;
+    }
+
+    private PcmSlab.Block reserveOrThrow(int bytes, String file) throws IOException {
+        PcmSlab.Block block = this.reserve(bytes);
+        if (block == null) {
+            throw new IOException("No room in the clip cache for " + file);
+        }
+        return block;
+    }
+
+    /**
+     * Decode a clip straight into a block of the slab. If the clip outgrows its
+     * block, the samples are moved to a larger one.
+     */
+    private Clip decode(String file) throws IOException {
+        int maxBytes = Math.min(MAX_CLIP_BYTES, this.slab.capacity());
+        PcmDecoder decoder = PcmDecoder.open(this.context, file);
+        PcmSlab.Block block = null;
+        try {
+            int capacity = DEFAULT_CLIP_BYTES;
+            if (decoder.getDurationUs() > 0) {
+                long estimate = decoder.getDurationUs() * decoder.getSampleRate() / 1000000L * decoder.getChannels() * 2;
+                capacity = (int) Math.min(maxBytes, estimate + 4096);
+            }
+            block = this.reserveOrThrow(Math.min(maxBytes, capacity), file);
+            ByteBuffer samples = block.buffer.duplicate();
+            samples.clear();
+            while (true) {
+                if (!samples.hasRemaining()) {
+                    if (samples.capacity() >= maxBytes) {
+                        throw new IOException(file + " is too long to be played as a clip");
+                    }
+                    PcmSlab.Block larger = this.reserveOrThrow(Math.min(maxBytes, samples.capacity() * 2), file);
+                    samples.flip();
+                    ByteBuffer moved = larger.buffer.duplicate();
+                    moved.clear();
+                    moved.put(samples);
+                    this.slab.free(block);
+                    block = larger;
+                    samples = moved;
+                }
+                if (decoder.read(samples) < 0) {
+                    break;
+                }
+            }
+            int length = samples.position();
+            if (length == 0) {
+                throw new IOException(file + " has no samples");
+            }
+            if (decoder.getChannels() < 1 || decoder.getChannels() > 2) {
+                throw new IOException(file + " has " + decoder.getChannels() + " channels");
+            }
+            LOG.d(LOG_TAG, "decoded " + file + ": " + length + " bytes");
+            Clip clip = new Clip(block, length, decoder.getSampleRate(), decoder.getChannels());
+            block = null;
+            return clip;
+        } finally {
+            if (block != null) {
+                this.slab.free(block);
+            }
+            decoder.release();
+        }
+    }
+
+    private synchronized long getAppUpdateTime() {
+        if (this.appUpdateTime < 0) {
+            try {
+                this.appUpdateTime = this.context.getPackageManager()
+                        .getPackageInfo(this.context.getPackageName(), 0).lastUpdateTime;
+            } catch (PackageManager.NameNotFoundException e) {
+                this.appUpdateTime = 0;
+            }
+        }
+        return this.appUpdateTime;
+    }
+}
@@ -0,0 +1,475 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.media;
+
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioTrack;
+import android.os.Build;
+
+import org.apache.cordova.LOG;
+
+import org.json.JSONObject;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This class plays a short asset from the ClipCache with a static AudioTrack.
+ * The clip is decoded once for all players, so creating and playing another
+ * player of the same clip costs neither file I/O nor decoding.
+ *
+ * It reports the same status messages as AudioPlayer. The rate is applied by
+ * resampling, so the pitch changes with it. Recording is not supported.
+ */
+public class ClipPlayer extends AudioPlayer implements AudioTrack.OnPlaybackPositionUpdateListener {
+
+    private static final String LOG_TAG = "ClipPlayer";
+
+    private static final float TRACK_MIN_RATE = 0.5f;     // Playback rate limits of AudioTrack
+    private static final float TRACK_MAX_RATE = 2.0f;
+
+    private final ClipCache cache;
+    private AudioTrack track = null;        // Holds a copy of the clip, null until loaded
+    private float volume = 1.0f;            // Volume set by JavaScript, 0.0f - 1.0f
+    private float pan = 0.0f;               // Position between the speakers, -1.0f (left) - 1.0f (right)
+    private int frames = 0;                 // Length of the clip in frames
+    private int sampleRate = 0;
+    private float rate = 1.0f;
+    private boolean fallback = false;       // Played with the MediaPlayer of AudioPlayer, as the clip could not be loaded
+
+    /**
+     * Constructor.
+     *
+     * @param handler           The audio handler object
+     * @param id                The id of this audio player
+     * @param file              The /android_asset/ path of the clip
+     */
+    public ClipPlayer(AudioHandler handler, String id, String file) {
+        super(handler, id, file);
+        this.cache = handler.getClipCache();
+        this.loadClip(file);
+    }
+
+    /**
+     * Destroy player and stop playing.
+     */
+    @Override
+    public synchronized void destroy() {
+        if (this.track != null) {
+            if ((this.state == STATE.MEDIA_RUNNING) || (this.state == STATE.MEDIA_PAUSED)) {
+                this.track.stop();
+                this.setState(STATE.MEDIA_STOPPED);
+            }
+            this.track.release();
+            this.track = null;
+        }
+        super.destroy();
+    }
+
+    /**
+     * Clips can not be recorded.
+     *
+     * @param file              The name of the file
+     * @param options           The options passed to media.startRecord()
+     */
+    @Override
+    public void startRecording(String file, JSONObject options) {
+        LOG.d(LOG_TAG, "ClipPlayer Error: Can't record a clip.");
+        sendErrorStatus(MEDIA_ERR_ABORTED);
+    }
+
+    /**
+     * Clips are loaded when they are created, so preloading only waits for the load to end.
+     */
+    @Override
+    public synchronized void preload(String file, Runnable listener) {
+        if (this.fallback) {
+            super.preload(file, listener);
+            return;
+        }
+        if (!this.addLoadListener(listener)) {
+            listener.run();
+        }
+    }
+
+    /**
+     * Start or resume playing the clip.
+     *
+     * @param file              The name of the audio file.
+     */
+    @Override
+    public synchronized void startPlaying(final String file) {
+        if (this.fallback) {
+            super.startPlaying(file);
+            return;
+        }
+        if (this.deferUntilPrepared(new Runnable() {
+                public void run() {
+                    startPlaying(file);
+                }
+            })) {
+            return;
+        }
+        if (this.track == null) {
+            LOG.d(LOG_TAG, "ClipPlayer Error: startPlaying() called before the clip was loaded");
+            sendErrorStatus(MEDIA_ERR_ABORTED);
+            return;
+        }
+        if (this.state != STATE.MEDIA_RUNNING) {
+            // reaching the marker again notifies again
+            this.track.setNotificationMarkerPosition(this.frames);
+            this.track.play();
+            this.setState(STATE.MEDIA_RUNNING);
+        }
+    }
+
+    /**
+     * Seek or jump to a new time in the clip.
+     */
+    @Override
+    public synchronized void seekToPlaying(final int milliseconds) {
+        if (this.fallback) {
+            super.seekToPlaying(milliseconds);
+            return;
+        }
+        if (this.deferUntilPrepared(new Runnable() {
+                public void run() {
+                    seekToPlaying(milliseconds);
+                }
+            })) {
+            return;
+        }
+        if (this.track == null) {
+            return;
+        }
+        int frame = (int) Math.min(this.frames - 1, Math.max(0, (long) milliseconds * this.sampleRate / 1000));
+        // the head of a static track can only be moved while it is not playing
+        boolean running = this.state == STATE.MEDIA_RUNNING;
+        if (running) {
+            this.track.pause();
+        }
+        this.track.setPlaybackHeadPosition(frame);
+        if (running) {
+            this.track.play();
+        }
+        sendStatusChange(MEDIA_POSITION, null, (milliseconds / 1000.0f));
+    }
+
+    /**
+     * Pause playing.
+     */
+    @Override
+    public synchronized void pausePlaying() {
+        if (this.fallback) {
+            super.pausePlaying();
+            return;
+        }
+        if (this.state == STATE.MEDIA_RUNNING && this.track != null) {
+            this.track.pause();
+            this.setState(STATE.MEDIA_PAUSED);
+        }
+        else {
+            LOG.d(LOG_TAG, "ClipPlayer Error: pausePlaying() called during invalid state: " + this.state.ordinal());
+            sendErrorStatus(MEDIA_ERR_NONE_ACTIVE);
+        }
+    }
+
+    /**
+     * Stop playing and rewind the clip.
+     */
+    @Override
+    public synchronized void stopPlaying() {
+        if (this.fallback) {
+            super.stopPlaying();
+            return;
+        }
+        if ((this.state == STATE.MEDIA_RUNNING) || (this.state == STATE.MEDIA_PAUSED)) {
+            this.rewind();
+            this.setState(STATE.MEDIA_STOPPED);
+        }
+        else {
+            LOG.d(LOG_TAG, "ClipPlayer Error: stopPlaying() called during invalid state: " + this.state.ordinal());
+            sendErrorStatus(MEDIA_ERR_NONE_ACTIVE);
+        }
+    }
+
+    /**
+     * Get current position of playback.
+     *
+     * @return                  position in msec or -1 if not playing
+     */
+    @Override
+    public synchronized long getCurrentPosition() {
+        if (this.fallback) {
+            return super.getCurrentPosition();
+        }
+        if (((this.state == STATE.MEDIA_RUNNING) || (this.state == STATE.MEDIA_PAUSED)) && this.track != null) {
+            return this.track.getPlaybackHeadPosition() * 1000L / this.sampleRate;
+        }
+        return -1;
+    }
+
+    /**
+     * Get the duration of the clip.
+     *
+     * @param file              The name of the audio file.
+     * @return                  The duration in seconds, -1 if not loaded yet
+     */
+    @Override
+    public synchronized float getDuration(String file) {
+        if (this.fallback) {
+            return super.getDuration(file);
+        }
+        return this.sampleRate > 0 ? (float) this.frames / this.sampleRate : -1;
+    }
+
+    /**
+     * Set the volume for audio player
+     *
+     * @param volume            Volume to adjust to 0.0f - 1.0f
+     */
+    @Override
+    public synchronized void setVolume(final float volume) {
+        if (this.fallback) {
+            super.setVolume(volume);
+            return;
+        }
+        if (this.deferUntilPrepared(new Runnable() {
+                public void run() {
+                    setVolume(volume);
+                }
+            })) {
+            return;
+        }
+        if (this.track == null) {
+            LOG.d(LOG_TAG, "ClipPlayer Error: Cannot set volume until the clip is loaded.");
+            sendErrorStatus(MEDIA_ERR_NONE_ACTIVE);
+            return;
+        }
+        this.volume = volume;
+        this.applyVolume();
+    }
+
+    /**
+     * Set the position between the left and right speakers, by lowering the volume of the other side.
+     *
+     * @param pan               -1.0f (left) - 1.0f (right)
+     */
+    @Override
+    public synchronized void setPan(final float pan) {
+        if (this.fallback) {
+            super.setPan(pan);
+            return;
+        }
+        if (this.deferUntilPrepared(new Runnable() {
+                public void run() {
+                    setPan(pan);
+                }
+            })) {
+            return;
+        }
+        if (this.track == null) {
+            LOG.d(LOG_TAG, "ClipPlayer Error: Cannot set pan until the clip is loaded.");
+            sendErrorStatus(MEDIA_ERR_NONE_ACTIVE);
+            return;
+        }
+        this.pan = Math.max(-1.0f, Math.min(1.0f, pan));
+        this.applyVolume();
+    }
+
+    /**
+     * AudioTrack.setVolume sets every channel alike, so the gains of a pan need the older stereo call.
+     */
+    @SuppressWarnings("deprecation")
+    private void applyVolume() {
+        float left = this.volume * Math.min(1.0f, 1.0f - this.pan);
+        float right = this.volume * Math.min(1.0f, 1.0f + this.pan);
+        if (left == right && Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            this.track.setVolume(left);
+        } else {
+            this.track.setStereoVolume(left, right);
+        }
+    }
+
+    @Override
+    void setFadeVolume(float volume) {
+        if (this.fallback) {
+            super.setFadeVolume(volume);
+            return;
+        }
+        this.volume = volume;
+        this.applyVolume();
+    }
+
+    @Override
+    boolean canSetVolume() {
+        return this.fallback ? super.canSetVolume() : this.track != null;
+    }
+
+    @Override
+    float getVolume() {
+        if (this.fallback) {
+            return super.getVolume();
+        }
+        return this.volume;
+    }
+
+    /**
+     * Set the playback rate. The clip is resampled, so the pitch changes with the rate.
+     *
+     * @param rate              Playback rate, 0.5f - 2.0f
+     * @param pitch             Ignored
+     */
+    @Override
+    public synchronized void setRate(final float rate, final float pitch) {
+        if (this.fallback) {
+            super.setRate(rate, pitch);
+            return;
+        }
+        if (this.deferUntilPrepared(new Runnable() {
+                public void run() {
+                    setRate(rate, pitch);
+                }
+            })) {
+            return;
+        }
+        this.rate = Math.max(TRACK_MIN_RATE, Math.min(TRACK_MAX_RATE, rate));
+        if (this.track != null) {
+            this.track.setPlaybackRate((int) (this.sampleRate * this.rate));
+        }
+    }
+
+    /**
+     * Called on the media worker thread when the clip has played to its end.
+     */
+    public synchronized void onMarkerReached(AudioTrack track) {
+        if (this.track != track || this.state != STATE.MEDIA_RUNNING) {
+            return;
+        }
+        LOG.d(LOG_TAG, "on completion is calling stopped");
+        this.rewind();
+        this.setState(STATE.MEDIA_STOPPED);
+    }
+
+    public void onPeriodicNotification(AudioTrack track) {
+    }
+
+    /**
+     * Stop the track and move its head back to the start of the clip.
+     */
+    private void rewind() {
+        this.track.stop();
+        this.track.reloadStaticData();
+    }
+
+    /**
+     * Get the clip from the cache on a background thread, then create its track on the media worker thread.
+     */
+    private void loadClip(final String file) {
+        this.beginLoading();
+        this.handler.cordova.getThreadPool().execute(new Runnable() {
+            public void run() {
+                ClipCache.Clip clip = null;
+                try {
+                    // too long clips are played by MediaPlayer
+                    if (cache.fits(file)) {
+                        clip = cache.acquire(file);
+                    }
+                } catch (Exception e) {
+                    LOG.e(LOG_TAG, "ClipPlayer Error: failed to load " + file, e);
+                }
+                postCreateTrack(clip);
+            }
+        });
+    }
+
+    private void postCreateTrack(final ClipCache.Clip clip) {
+        this.handler.getMediaHandler().post(new Runnable() {
+            public void run() {
+                synchronized (ClipPlayer.this) {
+                    try {
+                        if (state != STATE.MEDIA_LOADING) {
+                            // destroyed while loading
+                            return;
+                        }
+                        if (clip == null) {
+                            fallBack();
+                            return;
+                        }
+                        createTrack(clip);
+                    } catch (Exception e) {
+                        LOG.e(LOG_TAG, "ClipPlayer Error: failed to create the track of " + audioFile, e);
+                        fallBack();
+                        return;
+                    } finally {
+                        if (clip != null) {
+                            // the track holds its own copy of the samples
+                            cache.release(clip);
+                        }
+                    }
+                    // JavaScript was already told MEDIA_STARTING when loading began
+                    state = STATE.MEDIA_STARTING;
+                    sendStatusChange(MEDIA_DURATION, null, getDuration(audioFile));
+                    runPendingCommands();
+                    notifyLoadListeners();
+                }
+            }
+        });
+    }
+
+    /**
+     * Play the file with a MediaPlayer like any other file, e.g. when it decodes to more
+     * than a static track holds. The commands received while loading are applied once
+     * the MediaPlayer is prepared.
+     */
+    private void fallBack() {
+        LOG.d(LOG_TAG, "ClipPlayer: playing " + this.audioFile + " with MediaPlayer instead");
+        this.fallback = true;
+        this.loadWithMediaPlayer();
+    }
+
+    /**
+     * Copy the clip into a static track. Must be called on the media worker thread,
+     * so the end of the clip is reported there.
+     * From API level 21 the track is filled straight from the direct buffer of the
+     * cache; older devices copy the samples through a temporary array.
+     */
+    @SuppressWarnings("deprecation")
+    private void createTrack(ClipCache.Clip clip) {
+        int channelConfig = clip.channels == 2 ? AudioFormat.CHANNEL_OUT_STEREO : AudioFormat.CHANNEL_OUT_MONO;
+        AudioTrack track = new AudioTrack(AudioManager.STREAM_MUSIC, clip.sampleRate, channelConfig,
+                AudioFormat.ENCODING_PCM_16BIT, clip.length, AudioTrack.MODE_STATIC);
+        ByteBuffer samples = clip.getSamples();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            track.write(samples, clip.length, AudioTrack.WRITE_BLOCKING);
+        } else {
+            byte[] copy = new byte[clip.length];
+            samples.get(copy);
+            track.write(copy, 0, clip.length);
+        }
+        if (track.getState() != AudioTrack.STATE_INITIALIZED) {
+            track.release();
+            throw new IllegalStateException("AudioTrack could not be initialized");
+        }
+        track.setPlaybackPositionUpdateListener(this, this.handler.getMediaHandler());
+        this.track = track;
+        this.frames = clip.getFrames();
+        this.sampleRate = clip.sampleRate;
+    }
+}
@@ -0,0 +1,532 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.media;
+
+import android.content.res.AssetFileDescriptor;
+import android.media.MediaMetadataRetriever;
+import android.media.SoundPool;
+import android.os.Environment;
+import android.os.SystemClock;
+
+import org.apache.cordova.LOG;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedList;
+
+/**
+ * This class implements low latency playback of short sound effects.
+ * The clip is decoded once into the shared SoundPool when the player is created,
+ * and every play starts a new stream, so plays can overlap.
+ *
+ * It reports the same status messages as AudioPlayer: MEDIA_RUNNING while any
+ * stream is playing and MEDIA_STOPPED once the last one has ended.
+ * Recording and seeking are not supported.
+ */
+public class EffectPlayer extends AudioPlayer {
+
+    private static final String LOG_TAG = "EffectPlayer";
+
+    private static final float SOUNDPOOL_MIN_RATE = 0.5f;     // Playback rate limits of SoundPool
+    private static final float SOUNDPOOL_MAX_RATE = 2.0f;
+
+    private EffectPool pool;                // The pool the clip is decoded into
+    private int sampleId = 0;               // SoundPool sample id, 0 until loaded
+    private long clipDuration = -1;         // Duration of the clip in msec
+    private float volume = 1.0f;            // Volume of new streams
+    private float pan = 0.0f;               // Position of all streams, -1.0f (left) - 1.0f (right)
+    private float rate = 1.0f;              // Playback rate of new streams
+
+    private LinkedList<Voice> voices = new LinkedList<Voice>(); // Streams playing or paused
+
+    private final Runnable reaper = new Runnable() {
+        public void run() {
+            reapVoices();
+        }
+    };
+
+    /**
+     * Constructor.
+     *
+     * @param handler           The audio handler object
+     * @param id                The id of this audio player
+     * @param file              The name of the audio file
+     */
+    public EffectPlayer(AudioHandler handler, String id, String file) {
+        super(handler, id, file);
+        this.pool = handler.getEffectPool();
+        this.loadEffect(file);
+    }
+
+    /**
+     * Destroy player and stop all streams.
+     */
+    @Override
+    public synchronized void destroy() {
+        this.handler.getMediaHandler().removeCallbacks(this.reaper);
+        if ((this.state == STATE.MEDIA_RUNNING) || (this.state == STATE.MEDIA_PAUSED)) {
+            this.stopVoices();
+            this.setState(STATE.MEDIA_STOPPED);
+        }
+        if (this.sampleId != 0) {
+            this.pool.unload(this.sampleId);
+            this.sampleId = 0;
+        }
+        super.destroy();
+    }
+
+    /**
+     * Effects can not be recorded.
+     *
+     * @param file              The name of the file
+     * @param options           The options passed to media.startRecord()
+     */
+    @Override
+    public void startRecording(String file, JSONObject options) {
+        LOG.d(LOG_TAG, "EffectPlayer Error: Can't record an effect.");
+        sendErrorStatus(MEDIA_ERR_ABORTED);
+    }
+
+    /**
+     * Effects are loaded into the SoundPool when they are created, so there is nothing to preload.
+     */
+    @Override
+    public void preload(String file, Runnable listener) {
+        listener.run();
+    }
+
+    /**
+     * Start a new stream of the effect, or resume the paused streams.
+     *
+     * @param file              The name of the audio file.
+     */
+    @Override
+    public void startPlaying(String file) {
+        this.startPlaying(file, null);
+    }
+
+    /**
+     * Start a new stream of the effect, or resume the paused streams.
+     * The options may set the volume, rate and numberOfLoops of the new stream.
+     *
+     * @param file              The name of the audio file.
+     * @param options           The play options, may be null
+     */
+    @Override
+    public synchronized void startPlaying(final String file, final JSONObject options) {
+        if (this.deferUntilPrepared(new Runnable() {
+                public void run() {
+                    startPlaying(file, options);
+                }
+            })) {
+            return;
+        }
+        if (this.sampleId == 0 || this.state == STATE.MEDIA_NONE) {
+            LOG.d(LOG_TAG, "EffectPlayer Error: startPlaying() called before the effect was loaded");
+            sendErrorStatus(MEDIA_ERR_ABORTED);
+            return;
+        }
+
+        long now = SystemClock.uptimeMillis();
+        SoundPool soundPool = this.pool.getSoundPool();
+        if (this.state == STATE.MEDIA_PAUSED) {
+            for (Voice voice : this.voices) {
+                soundPool.resume(voice.streamId);
+                voice.resume(now);
+            }
+        } else {
+            float volume = this.volume;
+            float rate = this.rate;
+            int loops = 0;
+            if (options != null) {
+                volume = (float) options.optDouble("volume", volume);
+                rate = clampRate((float) options.optDouble("rate", rate));
+                // same meaning as the iOS option: the number of times the file is played
+                loops = options.optInt("numberOfLoops", 1) - 1;
+            }
+            int streamId = soundPool.play(this.sampleId, this.leftGain(volume), this.rightGain(volume), 1, loops, rate);
+            if (streamId == 0) {
+                LOG.d(LOG_TAG, "EffectPlayer Error: no stream available to play the effect");
+                sendErrorStatus(MEDIA_ERR_ABORTED);
+                return;
+            }
+            long length = (loops < 0 || this.clipDuration <= 0) ? -1 : this.clipDuration * (loops + 1);
+            this.voices.add(new Voice(streamId, length, rate, now));
+        }
+        this.setState(STATE.MEDIA_RUNNING);
+        this.scheduleReaper();
+    }
+
+    /**
+     * Seeking is not supported for effects.
+     */
+    @Override
+    public void seekToPlaying(int milliseconds) {
+        LOG.d(LOG_TAG, "EffectPlayer: seekToPlaying() is not supported for effects");
+    }
+
+    /**
+     * Pause all streams.
+     */
+    @Override
+    public synchronized void pausePlaying() {
+        if (this.state == STATE.MEDIA_RUNNING) {
+            long now = SystemClock.uptimeMillis();
+            this.handler.getMediaHandler().removeCallbacks(this.reaper);
+            for (Voice voice : this.voices) {
+                this.pool.getSoundPool().pause(voice.streamId);
+                voice.pause(now);
+            }
+            this.setState(STATE.MEDIA_PAUSED);
+        }
+        else {
+            LOG.d(LOG_TAG, "EffectPlayer Error: pausePlaying() called during invalid state: " + this.state.ordinal());
+            sendErrorStatus(MEDIA_ERR_NONE_ACTIVE);
+        }
+    }
+
+    /**
+     * Stop all streams.
+     */
+    @Override
+    public synchronized void stopPlaying() {
+        if ((this.state == STATE.MEDIA_RUNNING) || (this.state == STATE.MEDIA_PAUSED)) {
+            this.handler.getMediaHandler().removeCallbacks(this.reaper);
+            this.stopVoices();
+            this.setState(STATE.MEDIA_STOPPED);
+        }
+        else {
+            LOG.d(LOG_TAG, "EffectPlayer Error: stopPlaying() called during invalid state: " + this.state.ordinal());
+            sendErrorStatus(MEDIA_ERR_NONE_ACTIVE);
+        }
+    }
+
+    /**
+     * Get current position of the most recently started stream.
+     *
+     * @return                  position in msec or -1 if not playing
+     */
+    @Override
+    public synchronized long getCurrentPosition() {
+        if (((this.state == STATE.MEDIA_RUNNING) || (this.state == STATE.MEDIA_PAUSED))
+                && !this.voices.isEmpty() && this.clipDuration > 0) {
+            double played = this.voices.getLast().played(SystemClock.uptimeMillis());
+            return (long) played % this.clipDuration;
+        }
+        return -1;
+    }
+
+    /**
+     * Get the duration of the clip.
+     *
+     * @param file              The name of the audio file.
+     * @return                  The duration in seconds, -1 if not loaded yet
+     */
+    @Override
+    public synchronized float getDuration(String file) {
+        return this.clipDuration > 0 ? this.clipDuration / 1000.0f : -1;
+    }
+
+    /**
+     * Set the volume of all streams and of the streams started later.
+     *
+     * @param volume            Volume to adjust to 0.0f - 1.0f
+     */
+    @Override
+    public synchronized void setVolume(final float volume) {
+        if (this.deferUntilPrepared(new Runnable() {
+                public void run() {
+                    setVolume(volume);
+                }
+            })) {
+            return;
+        }
+        this.setFadeVolume(volume);
+    }
+
+    @Override
+    void setFadeVolume(float volume) {
+        this.volume = volume;
+        for (Voice voice : this.voices) {
+            this.pool.getSoundPool().setVolume(voice.streamId, this.leftGain(volume), this.rightGain(volume));
+        }
+    }
+
+    /**
+     * Set the position of all streams and of the streams started later between the left and
+     * right speakers, by lowering the volume of the other side.
+     *
+     * @param pan               -1.0f (left) - 1.0f (right)
+     */
+    @Override
+    public synchronized void setPan(final float pan) {
+        if (this.deferUntilPrepared(new Runnable() {
+                public void run() {
+                    setPan(pan);
+                }
+            })) {
+            return;
+        }
+        this.pan = Math.max(-1.0f, Math.min(1.0f, pan));
+        for (Voice voice : this.voices) {
+            this.pool.getSoundPool().setVolume(voice.streamId, this.leftGain(this.volume), this.rightGain(this.volume));
+        }
+    }
+
+    private float leftGain(float volume) {
+        return volume * Math.min(1.0f, 1.0f - this.pan);
+    }
+
+    private float rightGain(float volume) {
+        return volume * Math.min(1.0f, 1.0f + this.pan);
+    }
+
+    /**
+     * The volume applies to the streams started later, so it can always be set.
+     */
+    @Override
+    boolean canSetVolume() {
+        return true;
+    }
+
+    @Override
+    float getVolume() {
+        return this.volume;
+    }
+
+    /**
+     * Set the playback rate of all streams and of the streams started later.
+     *
+     * @param rate              Playback rate, 0.5f - 2.0f
+     */
+    public synchronized void setRate(final float rate) {
+        if (this.deferUntilPrepared(new Runnable() {
+                public void run() {
+                    setRate(rate);
+                }
+            })) {
+            return;
+        }
+        this.rate = clampRate(rate);
+        long now = SystemClock.uptimeMillis();
+        for (Voice voice : this.voices) {
+            this.pool.getSoundPool().setRate(voice.streamId, this.rate);
+            voice.setRate(this.rate, now);
+        }
+        if (this.state == STATE.MEDIA_RUNNING) {
+            this.scheduleReaper();
+        }
+    }
+
+    /**
+     * SoundPool changes the pitch with the rate, so only the rate is applied.
+     *
+     * @param rate              Playback rate, 0.5f - 2.0f
+     * @param pitch             Ignored
+     */
+    @Override
+    public void setRate(float rate, float pitch) {
+        this.setRate(rate);
+    }
+
+    /**
+     * Called by the EffectPool once the clip has been decoded.
+     *
+     * @param sampleId          The sample id of the clip
+     * @param success           false if the clip could not be decoded
+     */
+    synchronized void onLoaded(int sampleId, boolean success) {
+        if (this.state != STATE.MEDIA_LOADING || this.sampleId != sampleId) {
+            // destroyed while loading
+            return;
+        }
+        if (!success) {
+            LOG.e(LOG_TAG, "EffectPlayer Error: failed to decode " + this.audioFile);
+            this.pool.unload(sampleId);
+            this.sampleId = 0;
+            this.failLoading();
+            return;
+        }
+        // JavaScript was already told MEDIA_STARTING when loading began
+        this.state = STATE.MEDIA_STARTING;
+        sendStatusChange(MEDIA_DURATION, null, this.getDuration(this.audioFile));
+        this.runPendingCommands();
+    }
+
+    private void loadEffect(final String file) {
+        this.beginLoading();
+        this.handler.getMediaHandler().post(new Runnable() {
+            public void run() {
+                synchronized (EffectPlayer.this) {
+                    if (state != STATE.MEDIA_LOADING) {
+                        // destroyed before loading started
+                        return;
+                    }
+                    try {
+                        decode(file);
+                    } catch (Exception e) {
+                        LOG.e(LOG_TAG, "EffectPlayer Error: failed to load " + file, e);
+                        failLoading();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Read the clip duration and start decoding the clip into the pool.
+     */
+    private void decode(String file) throws IOException {
+        if (this.isStreaming(file)) {
+            throw new IOException("Streaming sources can not be played as effects");
+        }
+        MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+        try {
+            if (file.startsWith("/android_asset/")) {
+                AssetFileDescriptor fd = this.handler.cordova.getActivity().getAssets().openFd(file.substring(15));
+                try {
+                    retriever.setDataSource(fd.getFileDescriptor(), fd.getStartOffset(), fd.getLength());
+                    this.clipDuration = readDuration(retriever);
+                    this.sampleId = this.pool.load(this, fd);
+                } finally {
+                    fd.close();
+                }
+            }
+            else {
+                String path = file;
+                if (!new File(path).exists()) {
+                    path = Environment.getExternalStorageDirectory().getPath() + "/" + file;
+                }
+                retriever.setDataSource(path);
+                this.clipDuration = readDuration(retriever);
+                this.sampleId = this.pool.load(this, path);
+            }
+        } finally {
+            retriever.release();
+        }
+        if (this.sampleId == 0) {
+            throw new IOException("SoundPool could not load " + file);
+        }
+    }
+
+    private static long readDuration(MediaMetadataRetriever retriever) {
+        String duration = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION);
+        try {
+            return duration != null ? Long.parseLong(duration) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static float clampRate(float rate) {
+        return Math.max(SOUNDPOOL_MIN_RATE, Math.min(SOUNDPOOL_MAX_RATE, rate));
+    }
+
+    private void stopVoices() {
+        for (Voice voice : this.voices) {
+            this.pool.getSoundPool().stop(voice.streamId);
+        }
+        this.voices.clear();
+    }
+
+    /**
+     * Forget the streams that have ended, and report MEDIA_STOPPED after the last one.
+     * SoundPool has no completion callback, so the end of each stream is computed
+     * from the clip duration, loop count and rate.
+     */
+    private synchronized void reapVoices() {
+        if (this.state != STATE.MEDIA_RUNNING) {
+            return;
+        }
+        long now = SystemClock.uptimeMillis();
+        for (Iterator<Voice> it = this.voices.iterator(); it.hasNext();) {
+            if (it.next().remaining(now) <= 0) {
+                it.remove();
+            }
+        }
+        if (this.voices.isEmpty()) {
+            LOG.d(LOG_TAG, "last effect stream ended");
+            this.setState(STATE.MEDIA_STOPPED);
+        } else {
+            this.scheduleReaper();
+        }
+    }
+
+    private void scheduleReaper() {
+        long now = SystemClock.uptimeMillis();
+        long next = Long.MAX_VALUE;
+        for (Voice voice : this.voices) {
+            next = Math.min(next, voice.remaining(now));
+        }
+        this.handler.getMediaHandler().removeCallbacks(this.reaper);
+        if (next != Long.MAX_VALUE) {
+            this.handler.getMediaHandler().postDelayed(this.reaper, Math.max(0, next));
+        }
+    }
+
+    /**
+     * A stream started by one play, tracked in media time so that pauses and
+     * rate changes keep its end time accurate.
+     */
+    private static class Voice {
+        final int streamId;
+        final long length;      // Media time in msec, -1 if looping forever
+        float rate;
+        double played = 0;      // Media time in msec played before resumedAt
+        long resumedAt;         // Uptime when the stream last started running, -1 while paused
+
+        Voice(int streamId, long length, float rate, long now) {
+            this.streamId = streamId;
+            this.length = length;
+            this.rate = rate;
+            this.resumedAt = now;
+        }
+
+        double played(long now) {
+            return this.resumedAt < 0 ? this.played : this.played + (now - this.resumedAt) * this.rate;
+        }
+
+        void pause(long now) {
+            this.played = played(now);
+            this.resumedAt = -1;
+        }
+
+        void resume(long now) {
+            this.resumedAt = now;
+        }
+
+        void setRate(float rate, long now) {
+            if (this.resumedAt >= 0) {
+                this.played = played(now);
+                this.resumedAt = now;
+            }
+            this.rate = rate;
+        }
+
+        long remaining(long now) {
+            if (this.length < 0) {
+                return Long.MAX_VALUE;
+            }
+            return (long) Math.ceil((this.length - played(now)) / this.rate);
+        }
+    }
+}
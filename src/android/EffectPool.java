@@ -0,0 +1,123 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.media;
+
+import android.content.res.AssetFileDescriptor;
+import android.media.AudioAttributes;
+import android.media.AudioManager;
+import android.media.SoundPool;
+import android.os.Build;
+
+import java.util.HashMap;
+
+/**
+ * This class wraps the SoundPool shared by all EffectPlayer instances.
+ * It routes load completion callbacks back to the player that requested the sample.
+ */
+public class EffectPool implements SoundPool.OnLoadCompleteListener {
+
+    private final SoundPool soundPool;
+    private final HashMap<Integer, EffectPlayer> loading = new HashMap<Integer, EffectPlayer>();
+
+    /**
+     * Constructor.
+     *
+     * @param maxStreams        The maximum number of streams played at the same time
+     */
+    @SuppressWarnings("deprecation")
+    public EffectPool(int maxStreams) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            this.soundPool = new SoundPool.Builder()
+                    .setMaxStreams(maxStreams)
+                    .setAudioAttributes(new AudioAttributes.Builder()
+                            .setUsage(AudioAttributes.USAGE_GAME)
+                            .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+                            .build())
+                    .build();
+        } else {
+            this.soundPool = new SoundPool(maxStreams, AudioManager.STREAM_MUSIC, 0);
+        }
+        this.soundPool.setOnLoadCompleteListener(this);
+    }
+
+    /**
+     * Decode a file into the pool.
+     *
+     * @param player            The player notified once the sample is loaded
+     * @param path              The absolute path of the file
+     * @return                  The sample id
+     */
+    public synchronized int load(EffectPlayer player, String path) {
+        int sampleId = this.soundPool.load(path, 1);
+        this.loading.put(sampleId, player);
+        return sampleId;
+    }
+
+    /**
+     * Decode an asset into the pool.
+     *
+     * @param player            The player notified once the sample is loaded
+     * @param fd                The asset file descriptor, may be closed once this returns
+     * @return                  The sample id
+     */
+    public synchronized int load(EffectPlayer player, AssetFileDescriptor fd) {
+        int sampleId = this.soundPool.load(fd, 1);
+        this.loading.put(sampleId, player);
+        return sampleId;
+    }
+
+    /**
+     * Remove a sample from the pool.
+     *
+     * @param sampleId          The sample id returned by load
+     */
+    public synchronized void unload(int sampleId) {
+        this.loading.remove(sampleId);
+        this.soundPool.unload(sampleId);
+    }
+
+    public SoundPool getSoundPool() {
+        return this.soundPool;
+    }
+
+    /**
+     * Release the pool and all its samples.
+     */
+    public synchronized void release() {
+        this.loading.clear();
+        this.soundPool.release();
+    }
+
+    /**
+     * Callback to be invoked when a sample has been decoded.
+     *
+     * @param soundPool         The pool the sample was loaded into
+     * @param sampleId          The sample id returned by load
+     * @param status            0 if the sample was loaded successfully
+     */
+    public void onLoadComplete(SoundPool soundPool, int sampleId, int status) {
+        EffectPlayer player;
+        synchronized (this) {
+            player = this.loading.remove(sampleId);
+        }
+        if (player != null) {
+            player.onLoaded(sampleId, status == 0);
+        }
+    }
+}
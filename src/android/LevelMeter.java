@@ -0,0 +1,130 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.media;
+
+/**
+ * This class measures the RMS and peak level of the samples added to it since
+ * the last window was closed, from 0 to 1.
+ *
+ * Levels rise at once and, with a decay time, fall back exponentially, like the
+ * ballistics of a hardware meter. It allocates nothing once created. It must be
+ * used from one thread at a time.
+ */
+public class LevelMeter {
+
+    private static final int FRAME = 1024;
+
+    private final short[] frame = new short[FRAME];
+    private long decay = 0;                 // Time in msec for a level to fall to 1/e, 0 to not smooth
+    private double sumOfSquares = 0;        // Of the window being measured
+    private int samples = 0;
+    private int peak = 0;
+    private float rmsLevel = 0;
+    private float peakLevel = 0;
+    private long lastWindow = -1;           // Uptime when the last window was closed
+
+    /**
+     * Set the decay time of the levels.
+     *
+     * @param decay             Time in msec for a level to fall to 1/e of its value, 0 to not smooth
+     */
+    public void setDecay(long decay) {
+        this.decay = Math.max(0, decay);
+    }
+
+    /**
+     * Forget the levels, e.g. when a new recording starts.
+     */
+    public void reset() {
+        this.sumOfSquares = 0;
+        this.samples = 0;
+        this.peak = 0;
+        this.rmsLevel = 0;
+        this.peakLevel = 0;
+        this.lastWindow = -1;
+    }
+
+    /**
+     * Add the samples available to a reader to the window.
+     */
+    public void read(ShortRingBuffer.Reader reader) {
+        int read;
+        while ((read = reader.read(this.frame, 0, FRAME)) > 0) {
+            this.add(this.frame, 0, read);
+        }
+    }
+
+    /**
+     * Add samples to the window.
+     */
+    public void add(short[] samples, int offset, int length) {
+        double sum = 0;
+        int peak = this.peak;
+        for (int i = offset; i < offset + length; i++) {
+            int sample = samples[i];
+            sum += sample * sample;
+            if (sample < 0) {
+                sample = -sample;
+            }
+            if (sample > peak) {
+                peak = sample;
+            }
+        }
+        this.sumOfSquares += sum;
+        this.samples += length;
+        this.peak = peak;
+    }
+
+    /**
+     * Add a peak measured elsewhere, e.g. by MediaRecorder.getMaxAmplitude(), to the window.
+     *
+     * @param peak              The peak amplitude, 0 - 32767
+     */
+    public void addPeak(int peak) {
+        this.peak = Math.max(this.peak, peak);
+    }
+
+    /**
+     * Close the window and update the levels.
+     *
+     * @param now               The uptime in msec
+     */
+    public void closeWindow(long now) {
+        float rms = this.samples > 0 ? (float) (Math.sqrt(this.sumOfSquares / this.samples) / 32768.0) : 0;
+        float peak = Math.min(1.0f, this.peak / 32767.0f);
+        float keep = 0;
+        if (this.decay > 0 && this.lastWindow >= 0) {
+            keep = (float) Math.exp(-(double) (now - this.lastWindow) / this.decay);
+        }
+        this.rmsLevel = Math.max(rms, this.rmsLevel * keep);
+        this.peakLevel = Math.max(peak, this.peakLevel * keep);
+        this.lastWindow = now;
+        this.sumOfSquares = 0;
+        this.samples = 0;
+        this.peak = 0;
+    }
+
+    public float getRms() {
+        return this.rmsLevel;
+    }
+
+    public float getPeak() {
+        return this.peakLevel;
+    }
+}
@@ -0,0 +1,55 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.media;
+
+/**
+ * This class converts a mix of samples in 16 bit units to 16 bit samples without
+ * clipping. The gain drops at once to keep the loudest sample of a block under the
+ * ceiling, and recovers slowly afterwards.
+ */
+public class Limiter {
+
+    private static final float CEILING = 0.98f * 32767;     // Highest sample let through
+    private static final float RELEASE = 0.00004f;          // Gain recovered per frame
+
+    private float gain = 1.0f;
+
+    /**
+     * Convert a block of samples.
+     *
+     * @param mix               The mixed samples
+     * @param out               Receives the 16 bit samples
+     * @param length            The number of samples
+     * @param channels          The number of interleaved channels
+     */
+    public void process(float[] mix, short[] out, int length, int channels) {
+        float peak = 0;
+        for (int i = 0; i < length; i++) {
+            peak = Math.max(peak, Math.abs(mix[i]));
+        }
+        float gain = Math.min(1.0f, this.gain + RELEASE * length / channels);
+        if (peak * gain > CEILING) {
+            gain = CEILING / peak;
+        }
+        this.gain = gain;
+        for (int i = 0; i < length; i++) {
+            out[i] = (short) Math.max(-32768, Math.min(32767, Math.round(mix[i] * gain)));
+        }
+    }
+}
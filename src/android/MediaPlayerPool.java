@@ -0,0 +1,194 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.media;
+
+import android.media.MediaPlayer;
+import android.os.Handler;
+import android.os.SystemClock;
+
+import org.apache.cordova.LOG;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+
+/**
+ * This class keeps a bounded pool of idle, reset MediaPlayer instances so that
+ * AudioPlayer does not pay for native player construction on first play.
+ *
+ * Players are constructed on the media worker thread, so that they deliver their
+ * callbacks there. Idle players above the minimum size are released once they
+ * have not been used for the idle timeout.
+ */
+public class MediaPlayerPool {
+
+    private static final String LOG_TAG = "MediaPlayerPool";
+
+    private final Handler handler;          // Handler of the media worker thread
+    private final int minSize;              // Idle players kept warm
+    private final int maxSize;              // Idle players kept at most
+    private final long idleTimeout;         // Time in msec before an idle player above minSize is released
+
+    private final LinkedList<IdlePlayer> idle = new LinkedList<IdlePlayer>();
+
+    private final Runnable prewarm = new Runnable() {
+        public void run() {
+            fill();
+        }
+    };
+
+    private final Runnable evict = new Runnable() {
+        public void run() {
+            evictIdle();
+        }
+    };
+
+    /**
+     * Constructor.
+     *
+     * @param handler           The handler of the media worker thread
+     * @param minSize           The number of idle players to keep warm
+     * @param maxSize           The maximum number of idle players
+     * @param idleTimeout       Time in msec before an idle player above minSize is released
+     */
+    public MediaPlayerPool(Handler handler, int minSize, int maxSize, long idleTimeout) {
+        this.handler = handler;
+        this.maxSize = Math.max(0, maxSize);
+        this.minSize = Math.max(0, Math.min(minSize, this.maxSize));
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Construct players on the media worker thread until the pool holds minSize idle players.
+     */
+    public void prewarm() {
+        this.handler.post(this.prewarm);
+    }
+
+    /**
+     * Take an idle player from the pool, or construct a new one if the pool is empty.
+     * Must be called on the media worker thread.
+     *
+     * @return                  A player in the idle state
+     */
+    public MediaPlayer acquire() {
+        MediaPlayer player = null;
+        synchronized (this) {
+            if (!this.idle.isEmpty()) {
+                player = this.idle.removeFirst().player;
+            }
+        }
+        if (player == null) {
+            player = new MediaPlayer();
+        }
+        // top the pool up again for the next first play
+        this.handler.post(this.prewarm);
+        return player;
+    }
+
+    /**
+     * Reset a player and return it to the pool, or release it if the pool is full.
+     *
+     * @param player            The player to return
+     */
+    public void release(MediaPlayer player) {
+        player.setOnPreparedListener(null);
+        player.setOnCompletionListener(null);
+        player.setOnErrorListener(null);
+        try {
+            player.reset();
+        } catch (IllegalStateException e) {
+            LOG.d(LOG_TAG, "Failed to reset player, releasing it instead");
+            player.release();
+            return;
+        }
+        synchronized (this) {
+            if (this.idle.size() < this.maxSize) {
+                this.idle.addFirst(new IdlePlayer(player));
+                player = null;
+            }
+        }
+        if (player != null) {
+            player.release();
+        }
+        this.handler.removeCallbacks(this.evict);
+        this.handler.postDelayed(this.evict, this.idleTimeout);
+    }
+
+    /**
+     * Release all idle players.
+     */
+    public void clear() {
+        this.handler.removeCallbacks(this.prewarm);
+        this.handler.removeCallbacks(this.evict);
+        synchronized (this) {
+            for (IdlePlayer entry : this.idle) {
+                entry.player.release();
+            }
+            this.idle.clear();
+        }
+    }
+
+    private void fill() {
+        while (true) {
+            synchronized (this) {
+                if (this.idle.size() >= this.minSize) {
+                    return;
+                }
+            }
+            MediaPlayer player = new MediaPlayer();
+            synchronized (this) {
+                this.idle.addLast(new IdlePlayer(player));
+            }
+        }
+    }
+
+    private void evictIdle() {
+        long now = SystemClock.uptimeMillis();
+        LinkedList<MediaPlayer> evicted = new LinkedList<MediaPlayer>();
+        synchronized (this) {
+            // most recently returned players are kept at the front
+            int kept = 0;
+            for (Iterator<IdlePlayer> it = this.idle.iterator(); it.hasNext();) {
+                IdlePlayer entry = it.next();
+                if (kept >= this.minSize && now - entry.idleSince >= this.idleTimeout) {
+                    it.remove();
+                    evicted.add(entry.player);
+                } else {
+                    kept++;
+                }
+            }
+            if (this.idle.size() > this.minSize) {
+                this.handler.postDelayed(this.evict, this.idleTimeout);
+            }
+        }
+        for (MediaPlayer player : evicted) {
+            player.release();
+        }
+    }
+
+    private static class IdlePlayer {
+        final MediaPlayer player;
+        final long idleSince;
+
+        IdlePlayer(MediaPlayer player) {
+            this.player = player;
+            this.idleSince = SystemClock.uptimeMillis();
+        }
+    }
+}
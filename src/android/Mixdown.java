@@ -0,0 +1,391 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.media;
+
+import android.content.Context;
+import android.os.Process;
+import android.os.SystemClock;
+
+import org.apache.cordova.LOG;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class mixes audio files into one file, faster than real time.
+ *
+ * Each source is decoded on a thread of its own, converted to the output rate and
+ * channels and published to a ShortRingBuffer. The calling thread sums the sources,
+ * each from its offset and with its gain, passes the sum through a Limiter and
+ * encodes it. Every buffer has a fixed size, so memory use does not depend on the
+ * length of the sources.
+ */
+public class Mixdown {
+
+    private static final String LOG_TAG = "Mixdown";
+
+    private static final int BLOCK_FRAMES = 4096;           // Frames mixed at a time
+    private static final int BUFFER_SECONDS = 1;            // Converted audio held per source
+    private static final int CHUNK_BYTES = 16 * 1024;       // Decoded at a time
+    private static final long WAIT_NANOS = 2000000;         // Longest wait for a source, or for room in its buffer
+    private static final long PROGRESS_INTERVAL = 100;      // Shortest interval of progress updates in msec
+    private static final int MIN_SAMPLE_RATE = 8000;
+    private static final int MAX_SAMPLE_RATE = 96000;
+
+    /**
+     * An input of the mix.
+     */
+    public static class Source {
+        final String file;
+        final long offsetMs;
+        final float gain;
+
+        /**
+         * @param file          The name of the audio file, as passed to AudioPlayer
+         * @param offsetMs      Where the source starts in the mix, in msec
+         * @param gain          The gain, 1.0f keeps the level
+         */
+        public Source(String file, long offsetMs, float gain) {
+            this.file = file;
+            this.offsetMs = Math.max(0, offsetMs);
+            this.gain = gain;
+        }
+    }
+
+    /**
+     * Notified on the mixing thread while the sources are mixed.
+     */
+    public interface Listener {
+        void onProgress(float fraction);
+    }
+
+    private final Context context;
+    private final List<Source> sources;
+    private final int sampleRate;
+    private final int channels;
+
+    /**
+     * Constructor.
+     *
+     * @param context           Used to read assets
+     * @param sources           The inputs of the mix
+     * @param sampleRate        The sample rate of the mix in Hz
+     * @param channels          1 for mono, 2 for stereo
+     */
+    public Mixdown(Context context, List<Source> sources, int sampleRate, int channels) {
+        this.context = context;
+        this.sources = sources;
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+    }
+
+    /**
+     * Determine if a mix can be rendered in a format.
+     *
+     * @param sampleRate        The sample rate of the mix in Hz
+     * @param channels          The number of channels of the mix
+     * @return                  T=8000 - 96000 Hz, mono or stereo
+     */
+    public static boolean isSupportedFormat(int sampleRate, int channels) {
+        return sampleRate >= MIN_SAMPLE_RATE && sampleRate <= MAX_SAMPLE_RATE && (channels == 1 || channels == 2);
+    }
+
+    /**
+     * Mix the sources to a file. This takes a while, so it must not be called on the
+     * bridge or the media worker thread. The thread may be interrupted to cancel it,
+     * the partial output is deleted then.
+     *
+     * @param path              The absolute path of the output file
+     * @param encoder           The encoder of the output
+     * @param listener          Notified of the progress
+     * @return                  The duration of the mix in seconds
+     */
+    public double render(String path, RecordingEncoder encoder, Listener listener) throws IOException {
+        Input[] inputs = new Input[this.sources.size()];
+        boolean finished = false;
+        try {
+            for (int i = 0; i < inputs.length; i++) {
+                inputs[i] = new Input(this.sources.get(i), i);
+                inputs[i].start();
+            }
+            encoder.start(path, this.sampleRate, this.channels);
+            long frames;
+            try {
+                frames = this.mix(inputs, encoder, listener);
+            } finally {
+                encoder.stop();
+            }
+            finished = true;
+            listener.onProgress(1.0f);
+            return (double) frames / this.sampleRate;
+        } catch (RuntimeException e) {
+            // MediaCodec and MediaMuxer report most failures as IllegalStateException
+            throw new IOException("Can not mix to " + path, e);
+        } finally {
+            for (Input input : inputs) {
+                if (input != null) {
+                    input.stop();
+                }
+            }
+            if (!finished) {
+                new File(path).delete();
+            }
+        }
+    }
+
+    /**
+     * @return                  The number of frames mixed
+     */
+    private long mix(Input[] inputs, RecordingEncoder encoder, Listener listener) throws IOException {
+        int blockLength = BLOCK_FRAMES * this.channels;
+        float[] mix = new float[blockLength];
+        short[] block = new short[blockLength];
+        short[] out = new short[blockLength];
+        Limiter limiter = new Limiter();
+        long position = 0;
+        long lastProgress = 0;
+
+        while (true) {
+            if (Thread.interrupted()) {
+                throw new InterruptedIOException("Cancelled");
+            }
+            for (int i = 0; i < blockLength; i++) {
+                mix[i] = 0;
+            }
+            int frames = 0;
+            boolean more = false;
+            for (Input input : inputs) {
+                long start = input.offsetFrames - position;
+                if (start >= BLOCK_FRAMES) {
+                    // starts after this block, which has to be written up to it
+                    frames = BLOCK_FRAMES;
+                    more = true;
+                    continue;
+                }
+                int skip = (int) Math.max(0, start);
+                int wanted = (BLOCK_FRAMES - skip) * this.channels;
+                int read = input.read(block, wanted);
+                float gain = input.source.gain;
+                int offset = skip * this.channels;
+                for (int i = 0; i < read; i++) {
+                    mix[offset + i] += block[i] * gain;
+                }
+                frames = Math.max(frames, skip + read / this.channels);
+                if (read == wanted) {
+                    more = true;
+                }
+            }
+            if (frames > 0) {
+                limiter.process(mix, out, frames * this.channels, this.channels);
+                encoder.encode(out, 0, frames * this.channels);
+                position += frames;
+            }
+            if (!more) {
+                return position;
+            }
+
+            long now = SystemClock.uptimeMillis();
+            if (now - lastProgress >= PROGRESS_INTERVAL) {
+                lastProgress = now;
+                listener.onProgress(this.progress(inputs, position));
+            }
+        }
+    }
+
+    private float progress(Input[] inputs, long position) {
+        long total = 0;
+        for (Input input : inputs) {
+            long duration = input.durationFrames;
+            if (duration < 0) {
+                return 0;
+            }
+            total = Math.max(total, input.offsetFrames + duration);
+        }
+        return total > 0 ? Math.min(0.99f, (float) position / total) : 0;
+    }
+
+    /**
+     * A source decoded and converted on its own thread.
+     */
+    private class Input {
+        final Source source;
+        final long offsetFrames;
+        final ShortRingBuffer ring;
+        final ShortRingBuffer.Reader reader;
+        private final Thread thread;
+        volatile long durationFrames = -1;
+        private volatile boolean done = false;
+        private volatile IOException error;
+
+        // conversion state of the decoding thread
+        private float position = 1;         // Input frame of the next output frame; 0 is the last frame of the previous chunk
+        private float lastLeft = 0;
+        private float lastRight = 0;
+
+        Input(Source source, int index) {
+            this.source = source;
+            this.offsetFrames = source.offsetMs * sampleRate / 1000;
+            this.ring = new ShortRingBuffer(sampleRate * channels * BUFFER_SECONDS);
+            this.reader = this.ring.addReader(true);
+            this.thread = new Thread(new Runnable() {
+                public void run() {
+                    decode();
+                }
+            }, "CordovaMixdown-" + index);
+        }
+
+        void start() {
+            this.thread.start();
+        }
+
+        void stop() {
+            this.thread.interrupt();
+            try {
+                this.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Read converted samples, waiting for the decoder.
+         *
+         * @return              The number of samples read, less than length at the end of the source
+         */
+        int read(short[] samples, int length) throws IOException {
+            int count = 0;
+            while (count < length) {
+                int read = this.reader.read(samples, count, length - count);
+                count += read;
+                if (read > 0) {
+                    continue;
+                }
+                if (this.error != null) {
+                    throw this.error;
+                }
+                if (this.done && this.reader.available() == 0) {
+                    break;
+                }
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("Cancelled");
+                }
+                this.reader.await(WAIT_NANOS);
+            }
+            return count;
+        }
+
+        private void decode() {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            PcmDecoder decoder = null;
+            try {
+                decoder = PcmDecoder.open(context, this.source.file);
+                if (decoder.getDurationUs() >= 0) {
+                    this.durationFrames = decoder.getDurationUs() * sampleRate / 1000000L;
+                }
+                ByteBuffer bytes = ByteBuffer.allocateDirect(CHUNK_BYTES).order(ByteOrder.nativeOrder());
+                ShortBuffer shorts = bytes.asShortBuffer();
+                short[] in = new short[CHUNK_BYTES / 2];
+                short[] out = new short[CHUNK_BYTES / 2];
+                int read;
+                while ((read = decoder.read(bytes)) >= 0) {
+                    if (read > 0) {
+                        shorts.clear();
+                        shorts.get(in, 0, read / 2);
+                        this.convert(in, read / 2, decoder.getSampleRate(), decoder.getChannels(), out);
+                    }
+                    bytes.clear();
+                }
+            } catch (InterruptedIOException e) {
+                // cancelled
+            } catch (IOException e) {
+                this.error = e;
+            } catch (RuntimeException e) {
+                this.error = new IOException("Can not decode " + this.source.file, e);
+            } finally {
+                if (decoder != null) {
+                    decoder.release();
+                }
+                this.done = true;
+            }
+        }
+
+        /**
+         * Resample a chunk to the output rate by linear interpolation and map its channels,
+         * publishing the result through out.
+         */
+        private void convert(short[] in, int length, int inputRate, int inputChannels, short[] out) throws IOException {
+            int frames = length / inputChannels;
+            if (frames == 0) {
+                return;
+            }
+            float step = (float) inputRate / sampleRate;
+            int count = 0;
+            while ((int) this.position < frames) {
+                int i = (int) this.position;
+                float fraction = this.position - i;
+                // input frame i is the previous frame of frame i + 1, frame 0 the last of the previous chunk
+                float l0 = i == 0 ? this.lastLeft : in[(i - 1) * inputChannels];
+                float r0 = i == 0 ? this.lastRight : in[(i - 1) * inputChannels + inputChannels - 1];
+                float l1 = in[i * inputChannels];
+                float r1 = in[i * inputChannels + inputChannels - 1];
+                float left = l0 + (l1 - l0) * fraction;
+                float right = r0 + (r1 - r0) * fraction;
+                if (channels == 2) {
+                    out[count++] = (short) left;
+                    out[count++] = (short) right;
+                } else {
+                    out[count++] = (short) ((left + right) / 2);
+                }
+                if (count > out.length - 2) {
+                    this.publish(out, count);
+                    count = 0;
+                }
+                this.position += step;
+            }
+            this.publish(out, count);
+            this.position -= frames;
+            this.lastLeft = in[(frames - 1) * inputChannels];
+            this.lastRight = in[(frames - 1) * inputChannels + inputChannels - 1];
+        }
+
+        /**
+         * Write samples to the ring buffer, waiting for room while the mix falls behind.
+         */
+        private void publish(short[] samples, int length) throws IOException {
+            if (length == 0) {
+                return;
+            }
+            while (this.ring.capacity() - this.reader.available() < length) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("Cancelled");
+                }
+                LockSupport.parkNanos(this, WAIT_NANOS);
+            }
+            if (!this.ring.write(samples, 0, length)) {
+                LOG.e(LOG_TAG, "Dropped " + length + " samples of " + this.source.file);
+            }
+        }
+    }
+}
@@ -0,0 +1,309 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.media;
+
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioTrack;
+import android.os.Process;
+
+import org.apache.cordova.LOG;
+
+import java.util.Arrays;
+
+/**
+ * This class plays any number of MixerVoices through a single streaming AudioTrack,
+ * so many simultaneous sounds don't each hold a MediaPlayer, a decoder and an audio
+ * session.
+ *
+ * A decoder thread decodes the voices ahead into their FIFOs. A render thread at
+ * audio priority sums the playing voices, each with its gain and pan, and writes
+ * the mix to the track. A limiter lowers the gain of the mix instead of letting it
+ * clip when the voices add up to more than full scale.
+ *
+ * The threads start with the first voice and the track only plays while a voice does.
+ * While no voice plays, both threads sleep until a player wakes them. If the track
+ * fails, the voices are released, their players get an error, and the next voice
+ * starts the mixer again.
+ */
+public class Mixer {
+
+    private static final String LOG_TAG = "Mixer";
+
+    private static final int PERIOD_FRAMES = 256;           // Frames mixed at a time
+    private static final long DECODE_WAIT_MS = 10;          // Longest wait of the decoder thread for a playing voice to drain its FIFO
+
+    private final int sampleRate;
+    private final float[] mix = new float[PERIOD_FRAMES * 2];
+    private final short[] out = new short[PERIOD_FRAMES * 2];
+    private final Object lock = new Object();
+    private volatile MixerVoice[] voices = new MixerVoice[0];
+    private volatile boolean running = false;
+    private boolean woken = false;          // Guarded by lock, set by wake() so the decoder thread doesn't miss it
+    private AudioTrack track;
+    private Thread renderThread;
+    private Thread decodeThread;
+    private final Limiter limiter = new Limiter();
+
+    public Mixer() {
+        this.sampleRate = AudioTrack.getNativeOutputSampleRate(AudioManager.STREAM_MUSIC);
+    }
+
+    /**
+     * Add a voice. It is loaded by the decoder thread.
+     */
+    public synchronized void add(MixerVoice voice) {
+        MixerVoice[] current = this.voices;
+        MixerVoice[] next = Arrays.copyOf(current, current.length + 1);
+        next[current.length] = voice;
+        this.voices = next;
+        if (!this.start()) {
+            this.voices = current;
+            voice.abort(new IllegalStateException("The mixer track could not be initialized"));
+            return;
+        }
+        this.wake();
+    }
+
+    /**
+     * Tell the threads that a voice started playing, was released or needs decoding.
+     */
+    public void wake() {
+        synchronized (this.lock) {
+            this.woken = true;
+            this.lock.notifyAll();
+        }
+    }
+
+    /**
+     * Stop the threads and release the track and all voices.
+     */
+    public void release() {
+        Thread render;
+        Thread decode;
+        synchronized (this) {
+            this.running = false;
+            render = this.renderThread;
+            decode = this.decodeThread;
+            this.renderThread = null;
+            this.decodeThread = null;
+        }
+        this.wake();
+        join(render);
+        join(decode);
+        synchronized (this) {
+            for (MixerVoice voice : this.voices) {
+                voice.release();
+                voice.close();
+            }
+            this.voices = new MixerVoice[0];
+            if (this.track != null) {
+                this.track.release();
+                this.track = null;
+            }
+        }
+    }
+
+    private synchronized void remove(MixerVoice voice) {
+        MixerVoice[] current = this.voices;
+        int index = -1;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == voice) {
+                index = i;
+            }
+        }
+        if (index < 0) {
+            return;
+        }
+        MixerVoice[] next = new MixerVoice[current.length - 1];
+        System.arraycopy(current, 0, next, 0, index);
+        System.arraycopy(current, index + 1, next, index, current.length - index - 1);
+        this.voices = next;
+    }
+
+    /**
+     * Start the threads, unless they run or a failure is still being handled.
+     *
+     * @return                  false if the track could not be created
+     */
+    @SuppressWarnings("deprecation")
+    private boolean start() {
+        if (this.running || this.decodeThread != null) {
+            return true;
+        }
+        int minBufferSize = AudioTrack.getMinBufferSize(this.sampleRate, AudioFormat.CHANNEL_OUT_STEREO,
+                AudioFormat.ENCODING_PCM_16BIT);
+        AudioTrack track = new AudioTrack(AudioManager.STREAM_MUSIC, this.sampleRate, AudioFormat.CHANNEL_OUT_STEREO,
+                AudioFormat.ENCODING_PCM_16BIT, Math.max(minBufferSize, PERIOD_FRAMES * 4 * 2), AudioTrack.MODE_STREAM);
+        if (track.getState() != AudioTrack.STATE_INITIALIZED) {
+            LOG.e(LOG_TAG, "The mixer track could not be initialized");
+            track.release();
+            return false;
+        }
+        this.track = track;
+        this.running = true;
+        this.renderThread = new Thread(new Runnable() {
+            public void run() {
+                render();
+            }
+        }, "CordovaMixerRender");
+        this.decodeThread = new Thread(new Runnable() {
+            public void run() {
+                decode();
+            }
+        }, "CordovaMixerDecoder");
+        this.renderThread.start();
+        this.decodeThread.start();
+        return true;
+    }
+
+    private boolean isAnyPlaying() {
+        for (MixerVoice voice : this.voices) {
+            if (voice.isPlaying()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void render() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+        boolean trackPlaying = false;
+        RuntimeException error = null;
+        try {
+            while (this.running) {
+                if (!this.isAnyPlaying()) {
+                    if (trackPlaying) {
+                        // plays out what was written, so the end of the last voice is not cut
+                        this.track.stop();
+                        trackPlaying = false;
+                    }
+                    synchronized (this.lock) {
+                        while (this.running && !this.isAnyPlaying()) {
+                            this.lock.wait();
+                        }
+                    }
+                    continue;
+                }
+                Arrays.fill(this.mix, 0);
+                for (MixerVoice voice : this.voices) {
+                    voice.mix(this.mix, PERIOD_FRAMES, this.sampleRate);
+                }
+                this.limiter.process(this.mix, this.out, this.out.length, 2);
+                if (!trackPlaying) {
+                    this.track.play();
+                    trackPlaying = true;
+                }
+                int written = this.track.write(this.out, 0, this.out.length);
+                if (written < 0) {
+                    // e.g. the audio server died
+                    throw new IllegalStateException("Writing to the mixer track failed: " + written);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            LOG.e(LOG_TAG, "Mixing failed", e);
+            error = e;
+        } finally {
+            if (trackPlaying) {
+                try {
+                    this.track.stop();
+                } catch (RuntimeException e) {
+                    LOG.e(LOG_TAG, "Failed to stop the mixer track", e);
+                }
+            }
+        }
+        if (error != null) {
+            this.fail(error);
+        }
+    }
+
+    /**
+     * Stop the mixer after the render thread failed, release the track and the voices
+     * and report the error to their players. Runs on the render thread, which ends then.
+     */
+    private void fail(RuntimeException error) {
+        Thread decode;
+        synchronized (this) {
+            if (!this.running) {
+                // being released
+                return;
+            }
+            this.running = false;
+            this.renderThread = null;
+            decode = this.decodeThread;
+        }
+        this.wake();
+        join(decode);
+        MixerVoice[] failed;
+        synchronized (this) {
+            failed = this.voices;
+            this.voices = new MixerVoice[0];
+            this.decodeThread = null;
+            if (this.track != null) {
+                this.track.release();
+                this.track = null;
+            }
+        }
+        for (MixerVoice voice : failed) {
+            voice.abort(error);
+        }
+    }
+
+    private void decode() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_AUDIO);
+        try {
+            while (this.running) {
+                boolean busy = false;
+                for (MixerVoice voice : this.voices) {
+                    if (voice.isReleased()) {
+                        voice.close();
+                        this.remove(voice);
+                    } else if (voice.decode()) {
+                        busy = true;
+                    }
+                }
+                synchronized (this.lock) {
+                    if (!busy && !this.woken) {
+                        // a playing voice drains its FIFO without waking the decoder
+                        if (this.isAnyPlaying()) {
+                            this.lock.wait(DECODE_WAIT_MS);
+                        } else {
+                            this.lock.wait();
+                        }
+                    }
+                    this.woken = false;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void join(Thread thread) {
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,319 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.media;
+
+import org.apache.cordova.LOG;
+
+import org.json.JSONObject;
+
+/**
+ * This class plays a file as a voice of the shared Mixer instead of with its own
+ * MediaPlayer, for apps that play many sounds at once.
+ *
+ * It reports the same status messages as AudioPlayer. The rate is applied by
+ * resampling, so the pitch changes with it. Recording is not supported.
+ */
+public class MixerPlayer extends AudioPlayer implements MixerVoice.Listener {
+
+    private static final String LOG_TAG = "MixerPlayer";
+
+    private static final float MIXER_MIN_RATE = 0.5f;     // Playback rate limits of MixerVoice
+    private static final float MIXER_MAX_RATE = 2.0f;
+
+    private final Mixer mixer;
+    private final MixerVoice voice;
+
+    /**
+     * Constructor.
+     *
+     * @param handler           The audio handler object
+     * @param id                The id of this audio player
+     * @param file              The name of the audio file
+     */
+    public MixerPlayer(AudioHandler handler, String id, String file) {
+        super(handler, id, file);
+        this.mixer = handler.getMixer();
+        this.voice = new MixerVoice(handler.cordova.getActivity(), file, this);
+        this.beginLoading();
+        this.mixer.add(this.voice);
+    }
+
+    /**
+     * Destroy player and stop playing.
+     */
+    @Override
+    public synchronized void destroy() {
+        if ((this.state == STATE.MEDIA_RUNNING) || (this.state == STATE.MEDIA_PAUSED)) {
+            this.setState(STATE.MEDIA_STOPPED);
+        }
+        this.voice.release();
+        this.mixer.wake();
+        super.destroy();
+    }
+
+    /**
+     * Mixed players can not record.
+     *
+     * @param file              The name of the file
+     * @param options           The options passed to media.startRecord()
+     */
+    @Override
+    public void startRecording(String file, JSONObject options) {
+        LOG.d(LOG_TAG, "MixerPlayer Error: Can't record with a mixed player.");
+        sendErrorStatus(MEDIA_ERR_ABORTED);
+    }
+
+    /**
+     * Mixed players are loaded when they are created, so preloading only waits for the load to end.
+     */
+    @Override
+    public synchronized void preload(String file, Runnable listener) {
+        if (!this.addLoadListener(listener)) {
+            listener.run();
+        }
+    }
+
+    /**
+     * Start or resume playing.
+     *
+     * @param file              The name of the audio file.
+     */
+    @Override
+    public synchronized void startPlaying(final String file) {
+        if (this.deferUntilPrepared(new Runnable() {
+                public void run() {
+                    startPlaying(file);
+                }
+            })) {
+            return;
+        }
+        if (this.state == STATE.MEDIA_NONE) {
+            LOG.d(LOG_TAG, "MixerPlayer Error: startPlaying() called after the file failed to load");
+            sendErrorStatus(MEDIA_ERR_ABORTED);
+            return;
+        }
+        if (this.state != STATE.MEDIA_RUNNING) {
+            this.voice.play();
+            this.mixer.wake();
+            this.setState(STATE.MEDIA_RUNNING);
+        }
+    }
+
+    /**
+     * Seek or jump to a new time in the file.
+     */
+    @Override
+    public synchronized void seekToPlaying(final int milliseconds) {
+        if (this.deferUntilPrepared(new Runnable() {
+                public void run() {
+                    seekToPlaying(milliseconds);
+                }
+            })) {
+            return;
+        }
+        this.voice.seekTo(milliseconds);
+        this.mixer.wake();
+        sendStatusChange(MEDIA_POSITION, null, (milliseconds / 1000.0f));
+    }
+
+    /**
+     * Pause playing.
+     */
+    @Override
+    public synchronized void pausePlaying() {
+        if (this.state == STATE.MEDIA_RUNNING) {
+            this.voice.pause();
+            this.setState(STATE.MEDIA_PAUSED);
+        }
+        else {
+            LOG.d(LOG_TAG, "MixerPlayer Error: pausePlaying() called during invalid state: " + this.state.ordinal());
+            sendErrorStatus(MEDIA_ERR_NONE_ACTIVE);
+        }
+    }
+
+    /**
+     * Stop playing and rewind.
+     */
+    @Override
+    public synchronized void stopPlaying() {
+        if ((this.state == STATE.MEDIA_RUNNING) || (this.state == STATE.MEDIA_PAUSED)) {
+            this.rewind();
+            this.setState(STATE.MEDIA_STOPPED);
+        }
+        else {
+            LOG.d(LOG_TAG, "MixerPlayer Error: stopPlaying() called during invalid state: " + this.state.ordinal());
+            sendErrorStatus(MEDIA_ERR_NONE_ACTIVE);
+        }
+    }
+
+    /**
+     * Get current position of playback.
+     *
+     * @return                  position in msec or -1 if not playing
+     */
+    @Override
+    public synchronized long getCurrentPosition() {
+        if ((this.state == STATE.MEDIA_RUNNING) || (this.state == STATE.MEDIA_PAUSED)) {
+            return this.voice.getPosition();
+        }
+        return -1;
+    }
+
+    /**
+     * Get the duration of the file.
+     *
+     * @param file              The name of the audio file.
+     * @return                  The duration in seconds, -1 if not known yet
+     */
+    @Override
+    public synchronized float getDuration(String file) {
+        long duration = this.voice.getDuration();
+        return duration >= 0 ? duration / 1000.0f : -1;
+    }
+
+    /**
+     * Set the gain of the voice. It is applied smoothly by the mixer.
+     *
+     * @param volume            Volume to adjust to 0.0f - 1.0f
+     */
+    @Override
+    public void setVolume(float volume) {
+        this.voice.setVolume(volume);
+    }
+
+    @Override
+    void setFadeVolume(float volume) {
+        this.voice.setVolume(volume);
+    }
+
+    @Override
+    boolean canSetVolume() {
+        return true;
+    }
+
+    @Override
+    float getVolume() {
+        return this.voice.getVolume();
+    }
+
+    /**
+     * Set the position of the voice between the left and right speakers.
+     *
+     * @param pan               -1.0f (left) - 1.0f (right)
+     */
+    @Override
+    public void setPan(float pan) {
+        this.voice.setPan(pan);
+    }
+
+    /**
+     * Set the playback rate. The file is resampled, so the pitch changes with the rate.
+     *
+     * @param rate              Playback rate, 0.5f - 2.0f
+     * @param pitch             Ignored
+     */
+    @Override
+    public void setRate(float rate, float pitch) {
+        this.voice.setRate(Math.max(MIXER_MIN_RATE, Math.min(MIXER_MAX_RATE, rate)));
+    }
+
+    /**
+     * Called on the mixer's decoder thread when the file has been opened.
+     */
+    public void onLoaded(MixerVoice voice) {
+        this.handler.getMediaHandler().post(new Runnable() {
+            public void run() {
+                synchronized (MixerPlayer.this) {
+                    if (state != STATE.MEDIA_LOADING) {
+                        // destroyed while loading
+                        return;
+                    }
+                    // JavaScript was already told MEDIA_STARTING when loading began
+                    state = STATE.MEDIA_STARTING;
+                    sendStatusChange(MEDIA_DURATION, null, getDuration(audioFile));
+                    runPendingCommands();
+                    notifyLoadListeners();
+                }
+            }
+        });
+    }
+
+    /**
+     * Called on the mixer's decoder thread when the file can not be decoded.
+     */
+    public void onLoadFailed(MixerVoice voice, Exception e) {
+        this.handler.getMediaHandler().post(new Runnable() {
+            public void run() {
+                synchronized (MixerPlayer.this) {
+                    if (state == STATE.MEDIA_LOADING) {
+                        failLoading();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Called on the mixer's render thread when the voice has played to its end.
+     */
+    public void onCompletion(MixerVoice voice) {
+        this.handler.getMediaHandler().post(new Runnable() {
+            public void run() {
+                synchronized (MixerPlayer.this) {
+                    if (state != STATE.MEDIA_RUNNING) {
+                        return;
+                    }
+                    LOG.d(LOG_TAG, "on completion is calling stopped");
+                    rewind();
+                    setState(STATE.MEDIA_STOPPED);
+                }
+            }
+        });
+    }
+
+    /**
+     * Called on the mixer's render thread when the mixer failed. The voice is released,
+     * so the player can not play again.
+     */
+    public void onError(MixerVoice voice, Exception e) {
+        this.handler.getMediaHandler().post(new Runnable() {
+            public void run() {
+                synchronized (MixerPlayer.this) {
+                    if (state == STATE.MEDIA_LOADING) {
+                        failLoading();
+                        return;
+                    }
+                    if (state == STATE.MEDIA_NONE) {
+                        // destroyed
+                        return;
+                    }
+                    // no success callback, like a MediaPlayer error
+                    state = STATE.MEDIA_NONE;
+                    sendErrorStatus(MEDIA_ERR_ABORTED);
+                }
+            }
+        });
+    }
+
+    private void rewind() {
+        this.voice.pause();
+        this.voice.seekTo(0);
+        this.mixer.wake();
+    }
+}
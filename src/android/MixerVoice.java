@@ -0,0 +1,380 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.media;
+
+import android.content.Context;
+
+import org.apache.cordova.LOG;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+/**
+ * A sound played by the Mixer. The decoder thread of the mixer decodes the file
+ * into a lock-free FIFO of samples, and the render thread resamples them to the
+ * output rate and adds them to the mix with the voice's gain and pan.
+ *
+ * Each field is written by one thread only: the decoder fields by the decoder
+ * thread, the read position by the render thread, and the controls by the player.
+ * A seek is a request the decoder thread handles; the render thread leaves the
+ * voice out of the mix until it has been handled.
+ */
+public class MixerVoice {
+
+    private static final String LOG_TAG = "MixerVoice";
+
+    private static final int BUFFER_MS = 500;               // Decoded audio held ahead of the render thread
+    private static final int CHUNK_BYTES = 8 * 1024;        // Decoded at a time
+
+    /**
+     * Notified on the mixer threads. The calls must return quickly.
+     */
+    public interface Listener {
+        void onLoaded(MixerVoice voice);
+        void onLoadFailed(MixerVoice voice, Exception e);
+        void onCompletion(MixerVoice voice);
+        void onError(MixerVoice voice, Exception e);
+    }
+
+    private final Context context;
+    private final String file;
+    private final Listener listener;
+
+    // written by the decoder thread
+    private PcmDecoder decoder;
+    private ByteBuffer bytes;
+    private ShortBuffer shorts;             // View of bytes
+    private short[] chunk;
+    private short[] fifo;
+    private int mask;
+    private volatile int sampleRate = 0;
+    private volatile int channels = 0;
+    private volatile long durationUs = -1;
+    private volatile boolean loaded = false;
+    private volatile boolean failed = false;
+    private volatile long written = 0;      // Samples written to the FIFO
+    private volatile boolean decodeDone = false;
+    private volatile long baseFrame = 0;    // Position of the first sample after the last seek
+    private volatile long discardTo = 0;    // Samples before it were decoded before the last seek
+    private volatile int seeksHandled = 0;
+
+    // written by the render thread
+    private volatile long read = 0;         // Samples read from the FIFO
+    private volatile long position = 0;     // Frames played
+    private long consumed = 0;              // Frames played since the last seek
+    private float fraction = 0;             // Position between two frames
+    private float leftGain = 0;
+    private float rightGain = 0;
+    private int seeksSeen = 0;
+
+    // written by the player
+    private volatile boolean playing = false;
+    private volatile boolean released = false;
+    private volatile float volume = 1.0f;
+    private volatile float pan = 0.0f;
+    private volatile float rate = 1.0f;
+    private volatile long seekFrame = 0;
+    private volatile int seekRequests = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param context           Used to open /android_asset/ files
+     * @param file              The name of the audio file, as passed to AudioPlayer
+     * @param listener          Notified when the voice is loaded and when it completes
+     */
+    public MixerVoice(Context context, String file, Listener listener) {
+        this.context = context;
+        this.file = file;
+        this.listener = listener;
+    }
+
+    public void play() {
+        this.playing = true;
+    }
+
+    public void pause() {
+        this.playing = false;
+    }
+
+    public boolean isPlaying() {
+        return this.playing && !this.released;
+    }
+
+    /**
+     * Stop playing and let the decoder thread close the file.
+     */
+    public void release() {
+        this.playing = false;
+        this.released = true;
+    }
+
+    boolean isReleased() {
+        return this.released;
+    }
+
+    /**
+     * Move the position, the voice is left out of the mix until the decoder has moved too.
+     *
+     * @param milliseconds      The position in msec
+     */
+    public synchronized void seekTo(long milliseconds) {
+        this.seekFrame = Math.max(0, milliseconds) * this.sampleRate / 1000;
+        this.seekRequests++;
+    }
+
+    /**
+     * @param volume            The gain, 0.0f - 1.0f
+     */
+    public void setVolume(float volume) {
+        this.volume = Math.max(0.0f, Math.min(1.0f, volume));
+    }
+
+    public float getVolume() {
+        return this.volume;
+    }
+
+    /**
+     * @param pan               -1.0f (left) - 1.0f (right)
+     */
+    public void setPan(float pan) {
+        this.pan = Math.max(-1.0f, Math.min(1.0f, pan));
+    }
+
+    /**
+     * @param rate              The playback rate, the pitch changes with it
+     */
+    public void setRate(float rate) {
+        this.rate = rate;
+    }
+
+    /**
+     * @return                  The position in msec
+     */
+    public long getPosition() {
+        return this.sampleRate > 0 ? this.position * 1000 / this.sampleRate : 0;
+    }
+
+    /**
+     * @return                  The duration in msec, -1 if unknown
+     */
+    public long getDuration() {
+        return this.durationUs >= 0 ? this.durationUs / 1000 : -1;
+    }
+
+    /**
+     * Do the next step of decoding. Called in turn for every voice by the decoder thread.
+     *
+     * @return                  true if there was something to do
+     */
+    boolean decode() {
+        if (this.released) {
+            this.close();
+            return false;
+        }
+        if (this.failed) {
+            return false;
+        }
+        try {
+            if (!this.loaded) {
+                this.load();
+                return true;
+            }
+            int request = this.seekRequests;
+            if (request != this.seeksHandled) {
+                this.decoder.seekTo(this.seekFrame * 1000000L / this.sampleRate);
+                this.baseFrame = this.seekFrame;
+                this.discardTo = this.written;
+                this.decodeDone = false;
+                this.seeksHandled = request;
+                return true;
+            }
+            if (this.decodeDone) {
+                return false;
+            }
+            long used = this.written - Math.max(this.read, this.discardTo);
+            if (this.fifo.length - used < this.chunk.length) {
+                return false;
+            }
+            return this.fill();
+        } catch (IOException e) {
+            this.fail(e);
+            return false;
+        } catch (RuntimeException e) {
+            this.fail(e);
+            return false;
+        }
+    }
+
+    private void load() throws IOException {
+        this.decoder = PcmDecoder.open(this.context, this.file);
+        this.bytes = ByteBuffer.allocateDirect(CHUNK_BYTES).order(ByteOrder.nativeOrder());
+        this.shorts = this.bytes.asShortBuffer();
+        this.chunk = new short[CHUNK_BYTES / 2];
+        this.durationUs = this.decoder.getDurationUs();
+        // the format is only certain once samples have been decoded
+        int read = this.decoder.read(this.bytes);
+        if (this.decoder.getChannels() < 1 || this.decoder.getChannels() > 2) {
+            throw new IOException(this.file + " has " + this.decoder.getChannels() + " channels");
+        }
+        this.sampleRate = this.decoder.getSampleRate();
+        this.channels = this.decoder.getChannels();
+        int capacity = Integer.highestOneBit(Math.max(this.chunk.length,
+                this.sampleRate * this.channels * BUFFER_MS / 1000) - 1) << 1;
+        this.fifo = new short[capacity];
+        this.mask = capacity - 1;
+        if (read > 0) {
+            this.push(read);
+        } else if (read < 0) {
+            this.decodeDone = true;
+        }
+        this.loaded = true;
+        this.listener.onLoaded(this);
+    }
+
+    private boolean fill() throws IOException {
+        this.bytes.clear();
+        int read = this.decoder.read(this.bytes);
+        if (read < 0) {
+            this.decodeDone = true;
+            return true;
+        }
+        this.push(read);
+        return read > 0;
+    }
+
+    private void push(int byteCount) {
+        int count = byteCount / 2;
+        this.shorts.clear();
+        this.shorts.get(this.chunk, 0, count);
+        long written = this.written;
+        int start = (int) (written & this.mask);
+        int first = Math.min(count, this.fifo.length - start);
+        System.arraycopy(this.chunk, 0, this.fifo, start, first);
+        System.arraycopy(this.chunk, first, this.fifo, 0, count - first);
+        this.written = written + count;
+    }
+
+    private void fail(Exception e) {
+        LOG.e(LOG_TAG, "Failed to decode " + this.file, e);
+        this.failed = true;
+        this.playing = false;
+        if (this.loaded) {
+            this.listener.onCompletion(this);
+        } else {
+            this.listener.onLoadFailed(this, e);
+        }
+    }
+
+    /**
+     * Release the voice because the mixer failed, and report the error. Called by the mixer
+     * when its decoder thread is not running, so the file is closed here.
+     */
+    void abort(Exception e) {
+        this.failed = true;
+        this.release();
+        this.close();
+        if (this.loaded) {
+            this.listener.onError(this, e);
+        } else {
+            this.listener.onLoadFailed(this, e);
+        }
+    }
+
+    void close() {
+        if (this.decoder != null) {
+            this.decoder.release();
+            this.decoder = null;
+        }
+    }
+
+    /**
+     * Add the next frames to the mix. Called by the render thread.
+     * The gain moves from the last block's to the current one over the block, so volume changes don't click.
+     *
+     * @param mix               Interleaved stereo samples in 16 bit units
+     * @param frames            The number of frames to add
+     * @param outputRate        The sample rate of the mix
+     */
+    void mix(float[] mix, int frames, int outputRate) {
+        int seeks = this.seeksHandled;
+        if (!this.playing || this.released || !this.loaded || seeks != this.seekRequests) {
+            return;
+        }
+        long read = this.read;
+        if (seeks != this.seeksSeen) {
+            this.seeksSeen = seeks;
+            read = this.discardTo;
+            this.consumed = 0;
+            this.fraction = 0;
+        }
+        boolean done = this.decodeDone;
+        long written = this.written;
+        int channels = this.channels;
+        short[] fifo = this.fifo;
+        int mask = this.mask;
+        float step = this.sampleRate * this.rate / outputRate;
+        float pan = this.pan;
+        float left = this.volume * Math.min(1.0f, 1.0f - pan);
+        float right = this.volume * Math.min(1.0f, 1.0f + pan);
+        float leftStep = (left - this.leftGain) / frames;
+        float rightStep = (right - this.rightGain) / frames;
+        float leftGain = this.leftGain;
+        float rightGain = this.rightGain;
+        float fraction = this.fraction;
+        long consumed = this.consumed;
+
+        int i = 0;
+        for (; i < frames; i++) {
+            long available = (written - read) / channels;
+            if (available < 2 && !(available == 1 && done)) {
+                // underrun, or the end
+                break;
+            }
+            int a = (int) (read & mask);
+            int b = available >= 2 ? (int) ((read + channels) & mask) : a;
+            float l0 = fifo[a];
+            float l1 = fifo[b];
+            float r0 = channels == 2 ? fifo[(a + 1) & mask] : l0;
+            float r1 = channels == 2 ? fifo[(b + 1) & mask] : l1;
+            leftGain += leftStep;
+            rightGain += rightStep;
+            mix[2 * i] += (l0 + (l1 - l0) * fraction) * leftGain;
+            mix[2 * i + 1] += (r0 + (r1 - r0) * fraction) * rightGain;
+            fraction += step;
+            int advance = (int) fraction;
+            fraction -= advance;
+            read = Math.min(written, read + (long) advance * channels);
+            consumed += advance;
+        }
+
+        this.leftGain = left;
+        this.rightGain = right;
+        this.fraction = fraction;
+        this.consumed = consumed;
+        this.read = read;
+        this.position = this.baseFrame + consumed;
+        if (i < frames && done && written - read < channels) {
+            this.playing = false;
+            this.listener.onCompletion(this);
+        }
+    }
+}
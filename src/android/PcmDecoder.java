@@ -0,0 +1,265 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.media;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.os.Environment;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * This class decodes the first audio track of a file to 16 bit interleaved PCM with
+ * MediaExtractor and MediaCodec. The samples are pulled with read(), so the caller
+ * decides how much is held in memory. Requires API level 16.
+ *
+ * Files are resolved the same way as AudioPlayer resolves them for playback.
+ */
+public class PcmDecoder {
+
+    private static final long TIMEOUT_US = 10000;
+
+    private final MediaExtractor extractor;
+    private final MediaCodec codec;
+    private final MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+    private ByteBuffer[] inputBuffers;
+    private ByteBuffer[] outputBuffers;
+    private int sampleRate;
+    private int channels;
+    private long durationUs;
+    private ByteBuffer pending;             // Output buffer not fully read yet
+    private int pendingIndex = -1;
+    private boolean inputDone = false;
+    private boolean outputDone = false;
+
+    /**
+     * Open a file for decoding.
+     *
+     * @param context           Used to open /android_asset/ files
+     * @param file              The name of the audio file, as passed to AudioPlayer
+     */
+    public static PcmDecoder open(Context context, String file) throws IOException {
+        MediaExtractor extractor = new MediaExtractor();
+        try {
+            if (file.startsWith("/android_asset/")) {
+                AssetFileDescriptor fd = context.getAssets().openFd(file.substring(15));
+                try {
+                    extractor.setDataSource(fd.getFileDescriptor(), fd.getStartOffset(), fd.getLength());
+                } finally {
+                    fd.close();
+                }
+            }
+            else if (file.contains("://") || new File(file).exists()) {
+                extractor.setDataSource(file);
+            }
+            else {
+                extractor.setDataSource(Environment.getExternalStorageDirectory().getPath() + "/" + file);
+            }
+            return new PcmDecoder(extractor);
+        } catch (IOException e) {
+            extractor.release();
+            throw e;
+        } catch (RuntimeException e) {
+            extractor.release();
+            throw new IOException("Can not decode " + file, e);
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private PcmDecoder(MediaExtractor extractor) throws IOException {
+        this.extractor = extractor;
+        MediaFormat format = null;
+        for (int i = 0; i < extractor.getTrackCount(); i++) {
+            MediaFormat candidate = extractor.getTrackFormat(i);
+            String mime = candidate.getString(MediaFormat.KEY_MIME);
+            if (mime != null && mime.startsWith("audio/")) {
+                extractor.selectTrack(i);
+                format = candidate;
+                break;
+            }
+        }
+        if (format == null) {
+            throw new IOException("No audio track found");
+        }
+        this.readFormat(format);
+        this.durationUs = format.containsKey(MediaFormat.KEY_DURATION) ? format.getLong(MediaFormat.KEY_DURATION) : -1;
+        this.codec = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
+        try {
+            this.codec.configure(format, null, null, 0);
+            this.codec.start();
+            this.inputBuffers = this.codec.getInputBuffers();
+            this.outputBuffers = this.codec.getOutputBuffers();
+        } catch (RuntimeException e) {
+            // open() releases the extractor
+            this.codec.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Get the sample rate. It may change once the first samples have been read,
+     * as some decoders only report their output format then.
+     */
+    public int getSampleRate() {
+        return this.sampleRate;
+    }
+
+    /**
+     * Get the number of interleaved channels, see getSampleRate().
+     */
+    public int getChannels() {
+        return this.channels;
+    }
+
+    /**
+     * Get the duration of the track.
+     *
+     * @return                  The duration in microseconds, -1 if unknown
+     */
+    public long getDurationUs() {
+        return this.durationUs;
+    }
+
+    /**
+     * Decode samples into the buffer, from its position up to its limit.
+     * Whole samples are written as long as the remaining space is a multiple of the frame size.
+     *
+     * @param dst               The buffer to fill
+     * @return                  The number of bytes written, -1 at the end of the track
+     */
+    public int read(ByteBuffer dst) throws IOException {
+        int start = dst.position();
+        while (dst.hasRemaining()) {
+            if (this.pending == null && !this.nextOutput()) {
+                break;
+            }
+            int count = Math.min(dst.remaining(), this.pending.remaining());
+            int limit = this.pending.limit();
+            this.pending.limit(this.pending.position() + count);
+            dst.put(this.pending);
+            this.pending.limit(limit);
+            if (!this.pending.hasRemaining()) {
+                this.codec.releaseOutputBuffer(this.pendingIndex, false);
+                this.pending = null;
+                this.pendingIndex = -1;
+            }
+        }
+        int read = dst.position() - start;
+        return (read == 0 && this.outputDone && this.pending == null) ? -1 : read;
+    }
+
+    /**
+     * Continue decoding from a new position. Decoding resumes at the sync sample
+     * at or before it, which is the position itself for most audio formats.
+     *
+     * @param timeUs            The position in microseconds
+     */
+    public void seekTo(long timeUs) throws IOException {
+        try {
+            if (this.pending != null) {
+                this.codec.releaseOutputBuffer(this.pendingIndex, false);
+                this.pending = null;
+                this.pendingIndex = -1;
+            }
+            this.codec.flush();
+        } catch (IllegalStateException e) {
+            throw new IOException("Seeking failed", e);
+        }
+        this.extractor.seekTo(timeUs, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+        this.inputDone = false;
+        this.outputDone = false;
+    }
+
+    /**
+     * Release the codec and the extractor.
+     */
+    public void release() {
+        try {
+            this.codec.stop();
+        } catch (RuntimeException e) {
+            // already stopped after an error
+        }
+        this.codec.release();
+        this.extractor.release();
+        this.pending = null;
+    }
+
+    /**
+     * Feed the codec until it returns a buffer of samples.
+     *
+     * @return                  false at the end of the track
+     */
+    @SuppressWarnings("deprecation")
+    private boolean nextOutput() throws IOException {
+        try {
+            while (!this.outputDone) {
+                if (!this.inputDone) {
+                    this.feed();
+                }
+                int index = this.codec.dequeueOutputBuffer(this.info, TIMEOUT_US);
+                if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                    this.readFormat(this.codec.getOutputFormat());
+                } else if (index == MediaCodec.INFO_OUTPUT_BUFFERS_CHANGED) {
+                    this.outputBuffers = this.codec.getOutputBuffers();
+                } else if (index >= 0) {
+                    if ((this.info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                        this.outputDone = true;
+                    }
+                    if (this.info.size > 0) {
+                        ByteBuffer output = this.outputBuffers[index];
+                        output.limit(this.info.offset + this.info.size);
+                        output.position(this.info.offset);
+                        this.pending = output;
+                        this.pendingIndex = index;
+                        return true;
+                    }
+                    this.codec.releaseOutputBuffer(index, false);
+                }
+            }
+        } catch (IllegalStateException e) {
+            throw new IOException("Decoding failed", e);
+        }
+        return false;
+    }
+
+    private void feed() {
+        int index = this.codec.dequeueInputBuffer(0);
+        if (index < 0) {
+            return;
+        }
+        int size = this.extractor.readSampleData(this.inputBuffers[index], 0);
+        if (size < 0) {
+            this.codec.queueInputBuffer(index, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+            this.inputDone = true;
+        } else {
+            this.codec.queueInputBuffer(index, 0, size, this.extractor.getSampleTime(), 0);
+            this.extractor.advance();
+        }
+    }
+
+    private void readFormat(MediaFormat format) {
+        this.sampleRate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+        this.channels = format.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+    }
+}
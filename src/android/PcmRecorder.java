@@ -0,0 +1,350 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.media;
+
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.MediaRecorder;
+import android.os.Build;
+import android.os.Process;
+
+import org.apache.cordova.LOG;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+
+/**
+ * This class records 16 bit PCM from the microphone with AudioRecord.
+ *
+ * A capture thread publishes the frames to a ShortRingBuffer. An encoder thread
+ * reads them without ever losing a sample and passes them to a RecordingEncoder,
+ * while the amplitude and level meters read the same frames on demand.
+ *
+ * Pausing stops the capture without closing the output, so a paused and resumed
+ * recording is written to a single file.
+ */
+public class PcmRecorder {
+
+    private static final String LOG_TAG = "PcmRecorder";
+
+    private static final int BUFFER_SECONDS = 2;            // Audio held by the ring buffer
+    private static final long ENCODER_WAIT_NANOS = 20000000; // Longest wait of the encoder thread for frames
+    private static final int METER_FRAME = 1024;
+
+    /**
+     * Notified on the capture thread when recording fails,
+     * and on the encoder thread when speech starts or ends if voice activity is detected
+     * and when a chunk is complete if the recording is segmented.
+     */
+    public interface Listener extends VoiceActivityDetector.Listener, SegmentingEncoder.Listener {
+        void onRecordingError(Exception e);
+    }
+
+    private final RecordingEncoder encoder;
+    private final int sampleRate;
+    private final int channels;
+    private final Listener listener;
+
+    private AudioRecord audioRecord;
+    private ShortRingBuffer ring;           // Frames from the capture thread
+    private ShortRingBuffer.Reader meter;   // Reads the frames for getMaxAmplitude
+    private ShortRingBuffer.Reader levels;  // Reads the frames for readLevels
+    private final short[] meterFrame = new short[METER_FRAME];
+    private Thread captureThread;
+    private Thread encoderThread;
+    private volatile boolean running = false;
+    private volatile boolean paused = false;
+    private volatile boolean failed = false;
+    private volatile boolean captureDone = false;   // No more frames will be written to the ring buffer
+
+    /**
+     * Constructor.
+     *
+     * @param encoder           The encoder the samples are passed to
+     * @param sampleRate        The sample rate in Hz
+     * @param channels          1 for mono, 2 for stereo
+     * @param listener          Notified when recording fails
+     */
+    public PcmRecorder(RecordingEncoder encoder, int sampleRate, int channels, Listener listener) {
+        this.encoder = encoder;
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        this.listener = listener;
+    }
+
+    /**
+     * Determine if a startRecord format is recorded by this class.
+     *
+     * @param format            The format option, "wav" or "aac"
+     * @return                  T=recorded with AudioRecord, F=recorded with MediaRecorder
+     */
+    public static boolean isSupportedFormat(String format) {
+        return "wav".equals(format)
+                || ("aac".equals(format) && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2);
+    }
+
+    /**
+     * Create a recorder for the startRecord options.
+     *
+     * @param options           format, sampleRate, channels, bitRate (aac only), segment and vad
+     * @param listener          Notified when recording fails, when speech starts or ends and of chunks
+     */
+    public static PcmRecorder create(JSONObject options, Listener listener) {
+        RecordingEncoder encoder;
+        if ("aac".equals(options.optString("format"))) {
+            encoder = new AacEncoder(options.optInt("bitRate", 64000));
+        } else {
+            encoder = new WavEncoder();
+        }
+        JSONObject segment = options.optJSONObject("segment");
+        if (segment != null) {
+            SegmentingEncoder segmenter = SegmentingEncoder.create(encoder, segment, listener);
+            if (segmenter != null) {
+                encoder = segmenter;
+            }
+        }
+        Object vad = options.opt("vad");
+        if (vad instanceof JSONObject || Boolean.TRUE.equals(vad)) {
+            encoder = VoiceActivityDetector.create(encoder, options.optJSONObject("vad"), listener);
+        }
+        int channels = options.optInt("channels", 1) == 2 ? 2 : 1;
+        return new PcmRecorder(encoder, options.optInt("sampleRate", 44100), channels, listener);
+    }
+
+    /**
+     * Start recording to the specified file.
+     *
+     * @param path              The absolute path of the output file
+     */
+    public synchronized void start(String path) throws IOException {
+        int channelConfig = this.channels == 2 ? AudioFormat.CHANNEL_IN_STEREO : AudioFormat.CHANNEL_IN_MONO;
+        int minBufferSize = AudioRecord.getMinBufferSize(this.sampleRate, channelConfig, AudioFormat.ENCODING_PCM_16BIT);
+        if (minBufferSize <= 0) {
+            throw new IOException("Unsupported recording format: " + this.sampleRate + " Hz, " + this.channels + " channels");
+        }
+        this.audioRecord = new AudioRecord(MediaRecorder.AudioSource.MIC, this.sampleRate, channelConfig,
+                AudioFormat.ENCODING_PCM_16BIT, minBufferSize * 2);
+        if (this.audioRecord.getState() != AudioRecord.STATE_INITIALIZED) {
+            this.audioRecord.release();
+            this.audioRecord = null;
+            throw new IOException("AudioRecord could not be initialized");
+        }
+        boolean encoderStarted = false;
+        try {
+            this.encoder.start(path, this.sampleRate, this.channels);
+            encoderStarted = true;
+            this.audioRecord.startRecording();
+        } catch (Exception e) {
+            // nothing else will release them, as the caller drops a recorder that failed to start
+            if (encoderStarted) {
+                try {
+                    this.encoder.stop();
+                } catch (Exception stopError) {
+                    LOG.w(LOG_TAG, "Failed to close the output", stopError);
+                }
+            }
+            this.audioRecord.release();
+            this.audioRecord = null;
+            throw e instanceof IOException ? (IOException) e : new IOException("Recording could not be started", e);
+        }
+
+        final int frameSize = minBufferSize / 2;
+        this.ring = new ShortRingBuffer(this.sampleRate * this.channels * BUFFER_SECONDS);
+        final ShortRingBuffer.Reader encoderReader = this.ring.addReader(true);
+        this.meter = this.ring.addReader(false);
+        this.levels = this.ring.addReader(false);
+        this.running = true;
+        this.paused = false;
+        this.failed = false;
+        this.captureDone = false;
+
+        this.encoderThread = new Thread(new Runnable() {
+            public void run() {
+                encode(encoderReader, new short[frameSize]);
+            }
+        }, "CordovaPcmEncoder");
+        this.captureThread = new Thread(new Runnable() {
+            public void run() {
+                capture(new short[frameSize]);
+            }
+        }, "CordovaPcmRecorder");
+        this.encoderThread.start();
+        this.captureThread.start();
+    }
+
+    /**
+     * Stop capturing, keeping the output open.
+     */
+    public void pause() {
+        this.paused = true;
+    }
+
+    /**
+     * Continue capturing into the same output.
+     */
+    public void resume() {
+        synchronized (this) {
+            this.paused = false;
+            this.notifyAll();
+        }
+    }
+
+    /**
+     * Stop recording and close the output file.
+     * Blocks until the encoder has been flushed, so it should not be called on the bridge thread.
+     */
+    public void stop() throws IOException {
+        Thread capture;
+        Thread encoder;
+        synchronized (this) {
+            this.running = false;
+            this.notifyAll();
+            capture = this.captureThread;
+            encoder = this.encoderThread;
+            this.captureThread = null;
+            this.encoderThread = null;
+        }
+        // the encoder thread drains the ring buffer once the capture thread has ended
+        join(capture);
+        join(encoder);
+        if (this.ring != null && this.ring.getDropped() > 0) {
+            LOG.w(LOG_TAG, "Dropped " + this.ring.getDropped() + " samples, the encoder fell behind");
+        }
+        this.encoder.stop();
+    }
+
+    /**
+     * Get the peak amplitude since the last call, like MediaRecorder.getMaxAmplitude().
+     * Must be called from one thread at a time.
+     *
+     * @return                  peak amplitude, 0 - 32767
+     */
+    public int getMaxAmplitude() {
+        ShortRingBuffer.Reader meter = this.meter;
+        if (meter == null) {
+            return 0;
+        }
+        int peak = 0;
+        int read;
+        while ((read = meter.read(this.meterFrame, 0, this.meterFrame.length)) > 0) {
+            for (int i = 0; i < read; i++) {
+                int sample = Math.abs(this.meterFrame[i]);
+                if (sample > peak) {
+                    peak = sample;
+                }
+            }
+        }
+        return peak;
+    }
+
+    /**
+     * Add the frames captured since the last call to a level meter.
+     * Must be called from one thread at a time.
+     */
+    public void readLevels(LevelMeter levelMeter) {
+        ShortRingBuffer.Reader levels = this.levels;
+        if (levels != null) {
+            levelMeter.read(levels);
+        }
+    }
+
+    private static void join(Thread thread) {
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void capture(short[] frame) {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+        try {
+            while (this.running) {
+                if (this.paused && !this.waitWhilePaused()) {
+                    break;
+                }
+                int read = this.audioRecord.read(frame, 0, frame.length);
+                if (read < 0) {
+                    throw new IOException("AudioRecord read failed: " + read);
+                }
+                if (read > 0 && !this.paused) {
+                    this.ring.write(frame, 0, read);
+                }
+            }
+        } catch (Exception e) {
+            this.fail(e);
+        } finally {
+            this.audioRecord.stop();
+            this.audioRecord.release();
+            this.captureDone = true;
+        }
+    }
+
+    /**
+     * Pass the captured frames to the encoder until capture has ended and every frame is encoded.
+     */
+    private void encode(ShortRingBuffer.Reader reader, short[] frame) {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_AUDIO);
+        try {
+            while (!this.failed) {
+                int read = reader.read(frame, 0, frame.length);
+                if (read > 0) {
+                    this.encoder.encode(frame, 0, read);
+                } else if (!this.captureDone) {
+                    reader.await(ENCODER_WAIT_NANOS);
+                } else if (reader.available() == 0) {
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            this.fail(e);
+        }
+    }
+
+    private void fail(Exception e) {
+        if (!this.failed) {
+            this.failed = true;
+            this.running = false;
+            LOG.e(LOG_TAG, "Recording failed", e);
+            this.listener.onRecordingError(e);
+        }
+    }
+
+    /**
+     * Turn the microphone off until resumed or stopped.
+     *
+     * @return                  true if resumed, false if stopped
+     */
+    private boolean waitWhilePaused() throws InterruptedException {
+        this.audioRecord.stop();
+        synchronized (this) {
+            while (this.paused && this.running) {
+                this.wait();
+            }
+        }
+        if (!this.running) {
+            return false;
+        }
+        this.audioRecord.startRecording();
+        return true;
+    }
+}
@@ -0,0 +1,118 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.media;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * This class hands out blocks of a single direct ByteBuffer, allocated once.
+ * The slab is divided into fixed-size chunks and a block is a run of contiguous
+ * chunks, so a static AudioTrack can be filled from it with a single write.
+ *
+ * Blocks are freed back to the slab instead of being left to the garbage
+ * collector, so decoding and evicting clips allocates nothing.
+ */
+public class PcmSlab {
+
+    /**
+     * A run of chunks. The buffer spans the whole run, in native byte order.
+     */
+    public static class Block {
+        final int first;
+        final int count;
+        final ByteBuffer buffer;
+
+        Block(int first, int count, ByteBuffer buffer) {
+            this.first = first;
+            this.count = count;
+            this.buffer = buffer;
+        }
+    }
+
+    private final int chunkSize;
+    private final boolean[] used;
+    private ByteBuffer slab;                // Allocated on first use
+    private int usedChunks = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity          The size of the slab in bytes, rounded down to whole chunks
+     * @param chunkSize         The size of a chunk in bytes
+     */
+    public PcmSlab(long capacity, int chunkSize) {
+        this.chunkSize = chunkSize;
+        this.used = new boolean[(int) Math.max(1, capacity / chunkSize)];
+    }
+
+    public int capacity() {
+        return this.used.length * this.chunkSize;
+    }
+
+    /**
+     * @return                  The number of bytes in allocated blocks
+     */
+    public synchronized int usedBytes() {
+        return this.usedChunks * this.chunkSize;
+    }
+
+    /**
+     * Allocate a block, the first run of free chunks that is long enough.
+     *
+     * @param bytes             The minimum size of the block
+     * @return                  The block, or null if there is no long enough run
+     */
+    public synchronized Block allocate(int bytes) {
+        int count = Math.max(1, (bytes + this.chunkSize - 1) / this.chunkSize);
+        int run = 0;
+        for (int i = 0; i < this.used.length; i++) {
+            run = this.used[i] ? 0 : run + 1;
+            if (run == count) {
+                int first = i - count + 1;
+                for (int j = first; j <= i; j++) {
+                    this.used[j] = true;
+                }
+                this.usedChunks += count;
+                return new Block(first, count, this.slice(first, count));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Return a block to the slab. The block must not be used afterwards.
+     */
+    public synchronized void free(Block block) {
+        for (int i = block.first; i < block.first + block.count; i++) {
+            this.used[i] = false;
+        }
+        this.usedChunks -= block.count;
+    }
+
+    private ByteBuffer slice(int first, int count) {
+        if (this.slab == null) {
+            this.slab = ByteBuffer.allocateDirect(this.capacity());
+        }
+        ByteBuffer view = this.slab.duplicate();
+        view.position(first * this.chunkSize);
+        view.limit((first + count) * this.chunkSize);
+        return view.slice().order(ByteOrder.nativeOrder());
+    }
+}
@@ -0,0 +1,353 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.media;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.os.Environment;
+import android.os.SystemClock;
+
+import org.apache.cordova.LOG;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * This class computes the waveform of an audio file: the minimum and maximum
+ * sample of each of a fixed number of buckets, over all channels, from -1 to 1.
+ *
+ * The file is decoded through a fixed-size buffer into twice as many bins as
+ * buckets. When the bins are full, neighbouring bins are merged and the bins
+ * become twice as long, so memory stays the same for any length of file, even
+ * when its duration is not known up front.
+ *
+ * The result is cached in a .peaks file next to a local file, or in the app cache
+ * if that directory is not writable or the file is an asset. It is used again
+ * as long as the length and modification time of the file are unchanged.
+ */
+public class PeakExtractor {
+
+    private static final String LOG_TAG = "PeakExtractor";
+
+    public static final int MAX_BUCKETS = 65536;
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final long PROGRESS_INTERVAL = 100;      // Shortest interval of progress updates in msec
+    private static final String CACHE_SUFFIX = ".peaks";
+
+    /**
+     * Notified on the extracting thread while the file is decoded.
+     */
+    public interface Listener {
+        void onProgress(float fraction);
+    }
+
+    private final Context context;
+    private final String file;
+    private final int buckets;
+
+    private int[] mins;                     // Bins of samples, two per bucket
+    private int[] maxs;
+    private int used = 0;                   // Bins filled so far
+    private long binSamples;                // Samples per bin, over all channels
+    private long inBin = 0;                 // Samples added to the bin being filled
+    private int low = Short.MAX_VALUE;      // Extremes of the bin being filled
+    private int high = Short.MIN_VALUE;
+
+    /**
+     * Constructor.
+     *
+     * @param context           Used to read assets and to find the cache directory
+     * @param file              The name of the audio file, as passed to AudioPlayer
+     * @param buckets           The number of buckets, 1 - MAX_BUCKETS
+     */
+    public PeakExtractor(Context context, String file, int buckets) {
+        this.context = context;
+        this.file = file;
+        this.buckets = buckets;
+    }
+
+    /**
+     * Get the peaks, from the cache or by decoding the file.
+     * Decoding takes a while, so it must not be called on the bridge or the media worker thread.
+     * The thread may be interrupted to cancel it.
+     *
+     * @param listener          Notified of the progress
+     * @return                  { buckets, duration, peaks: [min0, max0, min1, max1, ...] }
+     */
+    public JSONObject extract(Listener listener) throws IOException {
+        String stamp = this.stamp();
+        File cached = stamp != null ? this.cacheFile() : null;
+        if (cached != null) {
+            JSONObject peaks = readCache(cached, stamp);
+            if (peaks != null) {
+                listener.onProgress(1.0f);
+                return peaks;
+            }
+        }
+        JSONObject peaks = this.decode(listener);
+        if (cached != null) {
+            writeCache(cached, stamp, peaks);
+        }
+        return peaks;
+    }
+
+    private JSONObject decode(Listener listener) throws IOException {
+        this.mins = new int[this.buckets * 2];
+        this.maxs = new int[this.buckets * 2];
+        PcmDecoder decoder = PcmDecoder.open(this.context, this.file);
+        try {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.nativeOrder());
+            long expected = -1;
+            long decoded = 0;
+            long lastProgress = 0;
+            int read;
+            while ((read = decoder.read(buffer)) >= 0) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedIOException("Cancelled");
+                }
+                if (expected < 0) {
+                    // the format is known once samples have been decoded
+                    long frames = decoder.getDurationUs() > 0
+                            ? decoder.getDurationUs() * decoder.getSampleRate() / 1000000L : 0;
+                    expected = frames * decoder.getChannels();
+                    this.binSamples = Math.max(1, frames / this.buckets) * decoder.getChannels();
+                }
+                buffer.flip();
+                this.add(buffer.asShortBuffer());
+                buffer.clear();
+                decoded += read / 2;
+
+                long now = SystemClock.uptimeMillis();
+                if (expected > 0 && now - lastProgress >= PROGRESS_INTERVAL) {
+                    lastProgress = now;
+                    listener.onProgress(Math.min(0.99f, (float) decoded / expected));
+                }
+            }
+            if (this.inBin > 0) {
+                this.closeBin();
+            }
+
+            JSONObject result = new JSONObject();
+            result.put("buckets", this.buckets);
+            result.put("duration", decoder.getSampleRate() > 0 && decoder.getChannels() > 0
+                    ? (double) decoded / decoder.getChannels() / decoder.getSampleRate() : 0);
+            result.put("peaks", this.toBuckets());
+            listener.onProgress(1.0f);
+            return result;
+        } catch (JSONException e) {
+            throw new IOException("Failed to create the peaks", e);
+        } catch (RuntimeException e) {
+            // MediaCodec reports most failures as IllegalStateException
+            throw new IOException("Can not decode " + this.file, e);
+        } finally {
+            decoder.release();
+        }
+    }
+
+    private void add(ShortBuffer samples) {
+        while (samples.hasRemaining()) {
+            int sample = samples.get();
+            if (sample < this.low) {
+                this.low = sample;
+            }
+            if (sample > this.high) {
+                this.high = sample;
+            }
+            if (++this.inBin >= this.binSamples) {
+                this.closeBin();
+            }
+        }
+    }
+
+    /**
+     * Store the bin being filled. When the bins are full, merge them pairwise
+     * instead, and keep filling the current bin up to the doubled bin length.
+     */
+    private void closeBin() {
+        if (this.used == this.mins.length) {
+            for (int i = 0; i < this.used / 2; i++) {
+                this.mins[i] = Math.min(this.mins[2 * i], this.mins[2 * i + 1]);
+                this.maxs[i] = Math.max(this.maxs[2 * i], this.maxs[2 * i + 1]);
+            }
+            this.used /= 2;
+            this.binSamples *= 2;
+            if (this.inBin < this.binSamples) {
+                return;
+            }
+        }
+        this.mins[this.used] = this.low;
+        this.maxs[this.used] = this.high;
+        this.used++;
+        this.inBin = 0;
+        this.low = Short.MAX_VALUE;
+        this.high = Short.MIN_VALUE;
+    }
+
+    /**
+     * Spread the filled bins over the buckets.
+     */
+    private JSONArray toBuckets() throws JSONException {
+        JSONArray peaks = new JSONArray();
+        for (int i = 0; i < this.buckets; i++) {
+            int min = 0;
+            int max = 0;
+            if (this.used > 0) {
+                int from = (int) ((long) i * this.used / this.buckets);
+                int to = Math.max(from + 1, (int) ((long) (i + 1) * this.used / this.buckets));
+                min = Short.MAX_VALUE;
+                max = Short.MIN_VALUE;
+                for (int j = from; j < to; j++) {
+                    min = Math.min(min, this.mins[j]);
+                    max = Math.max(max, this.maxs[j]);
+                }
+            }
+            peaks.put(round(min / 32768.0));
+            peaks.put(round(max / 32768.0));
+        }
+        return peaks;
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 10000) / 10000.0;
+    }
+
+    /**
+     * Identify the version of the file the cached peaks were computed from.
+     *
+     * @return                  The stamp, or null if the file can't be cached
+     */
+    private String stamp() {
+        if (this.file.startsWith("/android_asset/")) {
+            try {
+                return "app:" + this.context.getPackageManager()
+                        .getPackageInfo(this.context.getPackageName(), 0).lastUpdateTime;
+            } catch (PackageManager.NameNotFoundException e) {
+                return null;
+            }
+        }
+        File source = this.localFile();
+        if (source == null || !source.isFile()) {
+            return null;
+        }
+        return "file:" + source.length() + ":" + source.lastModified();
+    }
+
+    private File localFile() {
+        if (this.file.contains("://")) {
+            return null;
+        }
+        File source = new File(this.file);
+        if (!source.exists()) {
+            source = new File(Environment.getExternalStorageDirectory().getPath() + "/" + this.file);
+        }
+        return source;
+    }
+
+    /**
+     * The cache file: next to a local file if its directory is writable, in the app cache otherwise.
+     */
+    private File cacheFile() {
+        String name = this.buckets + CACHE_SUFFIX;
+        File source = this.localFile();
+        if (source != null && source.getParentFile() != null && source.getParentFile().canWrite()) {
+            return new File(source.getParentFile(), "." + source.getName() + "." + name);
+        }
+        File dir = new File(this.context.getCacheDir(), "cordova-media-peaks");
+        dir.mkdirs();
+        return new File(dir, hash(this.file) + "." + name);
+    }
+
+    private static JSONObject readCache(File cached, String stamp) {
+        if (!cached.isFile()) {
+            return null;
+        }
+        try {
+            byte[] data = new byte[(int) cached.length()];
+            FileInputStream in = new FileInputStream(cached);
+            try {
+                int offset = 0;
+                int read;
+                while (offset < data.length && (read = in.read(data, offset, data.length - offset)) > 0) {
+                    offset += read;
+                }
+            } finally {
+                in.close();
+            }
+            JSONObject entry = new JSONObject(new String(data, "UTF-8"));
+            if (stamp.equals(entry.optString("stamp"))) {
+                return entry.getJSONObject("result");
+            }
+        } catch (IOException e) {
+            LOG.d(LOG_TAG, "Ignoring unreadable peaks " + cached + ": " + e.getMessage());
+        } catch (JSONException e) {
+            LOG.d(LOG_TAG, "Ignoring invalid peaks " + cached + ": " + e.getMessage());
+        }
+        return null;
+    }
+
+    private static void writeCache(File cached, String stamp, JSONObject peaks) {
+        try {
+            JSONObject entry = new JSONObject();
+            entry.put("stamp", stamp);
+            entry.put("result", peaks);
+            File partial = new File(cached.getPath() + ".part");
+            FileOutputStream out = new FileOutputStream(partial);
+            try {
+                out.write(entry.toString().getBytes("UTF-8"));
+            } finally {
+                out.close();
+            }
+            if (!partial.renameTo(cached)) {
+                partial.delete();
+            }
+        } catch (IOException e) {
+            LOG.d(LOG_TAG, "Failed to cache the peaks in " + cached + ": " + e.getMessage());
+        } catch (JSONException e) {
+            LOG.e(LOG_TAG, "Failed to create the cached peaks", e);
+        }
+    }
+
+    private static String hash(String file) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(file.getBytes("UTF-8"));
+            StringBuilder key = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                key.append(String.format("%02x", b & 0xff));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return Integer.toHexString(file.hashCode());
+        } catch (IOException e) {
+            return Integer.toHexString(file.hashCode());
+        }
+    }
+}
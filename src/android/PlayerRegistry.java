@@ -0,0 +1,121 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.media;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class holds the players by id, for the bridge and the player callbacks at once.
+ *
+ * Lookups don't take a lock. Creating and removing players are serialized, so that the
+ * listener is told about the first player and the last one exactly once each, in turn,
+ * and a player is only created once however many threads ask for its id.
+ */
+public class PlayerRegistry<P> {
+
+    /**
+     * Creates a player for an id that has none. Called with the registry locked.
+     */
+    public interface Factory<P> {
+        P create(String id);
+    }
+
+    /**
+     * Notified with the registry locked, so the calls must not wait for other threads.
+     */
+    public interface Listener {
+        void onFirstAdded();
+        void onLastRemoved();
+    }
+
+    private final ConcurrentHashMap<String, P> players = new ConcurrentHashMap<String, P>();
+    private final Listener listener;
+
+    /**
+     * Constructor.
+     *
+     * @param listener          Told when the registry stops and starts being empty
+     */
+    public PlayerRegistry(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @return                  The player, null if there is none with the id
+     */
+    public P get(String id) {
+        return this.players.get(id);
+    }
+
+    /**
+     * Get the player with the id, creating it if there is none.
+     */
+    public P getOrCreate(String id, Factory<P> factory) {
+        P player = this.players.get(id);
+        if (player != null) {
+            return player;
+        }
+        synchronized (this) {
+            player = this.players.get(id);
+            if (player == null) {
+                if (this.players.isEmpty()) {
+                    this.listener.onFirstAdded();
+                }
+                player = factory.create(id);
+                this.players.put(id, player);
+            }
+            return player;
+        }
+    }
+
+    /**
+     * @return                  The removed player, null if there was none with the id
+     */
+    public synchronized P remove(String id) {
+        P player = this.players.remove(id);
+        if (player != null && this.players.isEmpty()) {
+            this.listener.onLastRemoved();
+        }
+        return player;
+    }
+
+    /**
+     * Remove every player.
+     *
+     * @return                  The removed players
+     */
+    public synchronized List<P> removeAll() {
+        List<P> removed = new ArrayList<P>(this.players.values());
+        this.players.clear();
+        if (!removed.isEmpty()) {
+            this.listener.onLastRemoved();
+        }
+        return removed;
+    }
+
+    /**
+     * @return                  A weakly consistent view of the players, safe to iterate while they change
+     */
+    public Collection<P> values() {
+        return this.players.values();
+    }
+}
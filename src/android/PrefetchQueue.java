@@ -0,0 +1,137 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.media;
+
+import java.util.HashMap;
+import java.util.PriorityQueue;
+
+/**
+ * This class preloads players in priority order, a limited number at a time.
+ *
+ * Requests with a higher priority are loaded first and requests of equal priority
+ * in the order they were made. Preloading a player that is already waiting changes
+ * the priority of its request. A loading slot is held until the player has been
+ * prepared or has failed to load.
+ */
+public class PrefetchQueue {
+
+    private final int concurrency;
+    private final PriorityQueue<Request> queue = new PriorityQueue<Request>();
+    private final HashMap<AudioPlayer, Request> waiting = new HashMap<AudioPlayer, Request>();
+    private int loading = 0;                // Requests holding a slot
+    private long sequence = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param concurrency       The number of players loaded at the same time
+     */
+    public PrefetchQueue(int concurrency) {
+        this.concurrency = Math.max(1, concurrency);
+    }
+
+    /**
+     * Queue a player to be preloaded.
+     *
+     * @param audio             The player
+     * @param file              The name of the audio file
+     * @param priority          Higher priorities are loaded first
+     */
+    public synchronized void add(AudioPlayer audio, String file, int priority) {
+        Request request = this.waiting.get(audio);
+        if (request != null) {
+            this.queue.remove(request);
+        }
+        request = new Request(audio, file, priority, this.sequence++);
+        this.waiting.put(audio, request);
+        this.queue.offer(request);
+        this.startNext();
+    }
+
+    /**
+     * Drop the waiting request of a player, e.g. when it is released.
+     */
+    public synchronized void remove(AudioPlayer audio) {
+        Request request = this.waiting.remove(audio);
+        if (request != null) {
+            this.queue.remove(request);
+        }
+    }
+
+    /**
+     * Drop every waiting request.
+     */
+    public synchronized void clear() {
+        this.waiting.clear();
+        this.queue.clear();
+    }
+
+    private synchronized void finished() {
+        this.loading--;
+        this.startNext();
+    }
+
+    private void startNext() {
+        while (this.loading < this.concurrency && !this.queue.isEmpty()) {
+            final Request request = this.queue.poll();
+            this.waiting.remove(request.audio);
+            this.loading++;
+            request.audio.commandQueue.execute(new Runnable() {
+                public void run() {
+                    request.audio.preload(request.file, request);
+                }
+            });
+        }
+    }
+
+    /**
+     * A player waiting to be preloaded. Run by the player once loading has ended.
+     */
+    private class Request implements Runnable, Comparable<Request> {
+        final AudioPlayer audio;
+        final String file;
+        final int priority;
+        final long sequence;
+        private boolean done = false;
+
+        Request(AudioPlayer audio, String file, int priority, long sequence) {
+            this.audio = audio;
+            this.file = file;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        public int compareTo(Request other) {
+            if (this.priority != other.priority) {
+                return this.priority > other.priority ? -1 : 1;
+            }
+            return this.sequence < other.sequence ? -1 : (this.sequence > other.sequence ? 1 : 0);
+        }
+
+        public void run() {
+            synchronized (this) {
+                if (this.done) {
+                    return;
+                }
+                this.done = true;
+            }
+            finished();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.media;
+
+import java.io.IOException;
+
+/**
+ * An encoder stage of the PCM recorder. It receives 16 bit interleaved PCM samples
+ * and writes them to a file. An encoder may be started again after it was stopped.
+ */
+public interface RecordingEncoder {
+
+    /**
+     * Open the output file.
+     *
+     * @param path              The absolute path of the output file
+     * @param sampleRate        The sample rate in Hz
+     * @param channels          The number of interleaved channels
+     */
+    void start(String path, int sampleRate, int channels) throws IOException;
+
+    /**
+     * Encode samples. Must not keep a reference to the array.
+     *
+     * @param samples           The interleaved samples
+     * @param offset            The index of the first sample
+     * @param length            The number of samples
+     */
+    void encode(short[] samples, int offset, int length) throws IOException;
+
+    /**
+     * Flush the encoder and close the output file.
+     */
+    void stop() throws IOException;
+}
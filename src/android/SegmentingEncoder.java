@@ -0,0 +1,160 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.media;
+
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * This encoder stage splits a recording into chunks, so that they can be uploaded
+ * while recording goes on. Each chunk is a complete file written by the next
+ * encoder, which is stopped and started again for the next chunk, so every chunk
+ * can be decoded on its own.
+ *
+ * The chunks of "memo.wav" are "memo-0.wav", "memo-1.wav" and so on. A chunk ends
+ * when it holds the given duration, or at the first check after its file reached
+ * the given size. Rotating runs on the encoder thread of the recorder.
+ */
+public class SegmentingEncoder implements RecordingEncoder {
+
+    private static final int SIZE_CHECK_MS = 100;           // Audio encoded between checks of the file size
+
+    /**
+     * Notified on the encoder thread, or the thread that stops the recording, when a chunk is complete.
+     */
+    public interface Listener {
+        /**
+         * @param path              The absolute path of the chunk
+         * @param index             The index of the chunk, from 0
+         * @param duration          The duration of the chunk in msec
+         * @param last              T=the recording stopped with this chunk
+         */
+        void onChunk(String path, int index, long duration, boolean last);
+    }
+
+    private final RecordingEncoder encoder;
+    private final Listener listener;
+    private final long durationMs;
+    private final long maxBytes;
+
+    private String prefix;                  // Path of the chunks up to the index
+    private String suffix;                  // Extension of the chunks
+    private int sampleRate;
+    private int channels;
+    private long chunkSamples;              // Samples in a full chunk, 0 if only the size limits it
+    private long checkSamples;              // Samples between checks of the file size
+    private int index;
+    private String path;                    // The chunk being written
+    private long written;                   // Samples written to it
+    private long unchecked;                 // Samples written since the last check of the size
+    private boolean full;
+
+    /**
+     * Constructor.
+     *
+     * @param encoder           The encoder of the chunks
+     * @param durationMs        The duration of a chunk in msec, 0 for no limit
+     * @param maxBytes          The size of a chunk in bytes, 0 for no limit
+     * @param listener          Notified of every chunk
+     */
+    public SegmentingEncoder(RecordingEncoder encoder, long durationMs, long maxBytes, Listener listener) {
+        this.encoder = encoder;
+        this.durationMs = Math.max(0, durationMs);
+        this.maxBytes = Math.max(0, maxBytes);
+        this.listener = listener;
+    }
+
+    /**
+     * Create a segmenter for the segment option of startRecord.
+     *
+     * @param encoder           The encoder of the chunks
+     * @param options           duration in seconds and bytes
+     * @param listener          Notified of every chunk
+     * @return                  The segmenter, null if the options set no limit
+     */
+    public static SegmentingEncoder create(RecordingEncoder encoder, JSONObject options, Listener listener) {
+        long durationMs = (long) (options.optDouble("duration", 0) * 1000);
+        long maxBytes = options.optLong("bytes", 0);
+        if (durationMs <= 0 && maxBytes <= 0) {
+            return null;
+        }
+        return new SegmentingEncoder(encoder, durationMs, maxBytes, listener);
+    }
+
+    public void start(String path, int sampleRate, int channels) throws IOException {
+        File file = new File(path);
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        this.suffix = dot > 0 ? name.substring(dot) : "";
+        this.prefix = new File(file.getParentFile(), base).getPath() + "-";
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        this.chunkSamples = this.durationMs * sampleRate / 1000 * channels;
+        this.checkSamples = (long) sampleRate * SIZE_CHECK_MS / 1000 * channels;
+        this.index = 0;
+        this.startChunk();
+    }
+
+    public void encode(short[] samples, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (this.full) {
+                // the next chunk starts with the next samples, so no chunk is ever empty
+                this.finishChunk(false);
+                this.index++;
+                this.startChunk();
+            }
+            int count = length;
+            if (this.chunkSamples > 0) {
+                count = (int) Math.min(count, this.chunkSamples - this.written);
+            }
+            this.encoder.encode(samples, offset, count);
+            this.written += count;
+            this.unchecked += count;
+            offset += count;
+            length -= count;
+            if (this.chunkSamples > 0 && this.written >= this.chunkSamples) {
+                this.full = true;
+            } else if (this.maxBytes > 0 && this.unchecked >= this.checkSamples) {
+                this.unchecked = 0;
+                this.full = new File(this.path).length() >= this.maxBytes;
+            }
+        }
+    }
+
+    public void stop() throws IOException {
+        this.finishChunk(true);
+    }
+
+    private void startChunk() throws IOException {
+        this.path = this.prefix + this.index + this.suffix;
+        this.written = 0;
+        this.unchecked = 0;
+        this.full = false;
+        this.encoder.start(this.path, this.sampleRate, this.channels);
+    }
+
+    private void finishChunk(boolean last) throws IOException {
+        this.encoder.stop();
+        long duration = this.written / this.channels * 1000L / this.sampleRate;
+        this.listener.onChunk(this.path, this.index, duration, last);
+    }
+}
@@ -0,0 +1,87 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.media;
+
+import org.apache.cordova.LOG;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * This class runs commands one at a time, in the order they were submitted, on a
+ * shared executor. It owns no thread: at most one of its commands is queued on or
+ * running in the executor, so many serial executors can share a small pool without
+ * one slow command holding back the others.
+ */
+public class SerialExecutor implements Executor {
+
+    private static final String LOG_TAG = "SerialExecutor";
+
+    private final Executor executor;
+    private final ArrayDeque<Runnable> commands = new ArrayDeque<Runnable>();
+    private Runnable active;                // Command handed to the executor, null when idle
+
+    /**
+     * Constructor.
+     *
+     * @param executor          The executor the commands run on
+     */
+    public SerialExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    public synchronized void execute(final Runnable command) {
+        this.commands.offer(new Runnable() {
+            public void run() {
+                try {
+                    command.run();
+                } catch (RuntimeException e) {
+                    LOG.e(LOG_TAG, "Command failed", e);
+                } finally {
+                    scheduleNext();
+                }
+            }
+        });
+        if (this.active == null) {
+            this.scheduleNext();
+        }
+    }
+
+    /**
+     * Drop the commands that have not started yet.
+     */
+    public synchronized void clear() {
+        this.commands.clear();
+    }
+
+    private synchronized void scheduleNext() {
+        this.active = this.commands.poll();
+        if (this.active != null) {
+            try {
+                this.executor.execute(this.active);
+            } catch (RejectedExecutionException e) {
+                // the executor has been shut down with the plugin
+                LOG.w(LOG_TAG, "Dropping " + (this.commands.size() + 1) + " commands, the executor is shut down");
+                this.commands.clear();
+                this.active = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,211 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.media;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A single producer, multiple consumer ring buffer of 16 bit samples.
+ *
+ * Neither side allocates or takes a lock once running. Samples are addressed by
+ * ever increasing sequence numbers; the producer publishes a write sequence and
+ * each reader owns a read sequence.
+ *
+ * A gating reader never loses samples: the producer refuses a write that would
+ * overwrite samples it has not read yet. A non-gating reader, e.g. a level meter,
+ * never holds the producer back and skips ahead when it falls a full buffer behind.
+ * Its copy is checked against the write sequence afterwards, which catches samples
+ * overwritten by a write that has completed, but not by one still in progress, and
+ * Java has no portable fences on the API levels we support to order such a check.
+ * So a non-gating reader may rarely get a torn chunk, part old and part new samples.
+ * That is fine for level meters; anything that needs every sample intact must gate.
+ */
+public class ShortRingBuffer {
+
+    private static final long PARK_NANOS = 2000000; // Longest wait of a reader between producer wake ups
+
+    private final short[] buffer;
+    private final int mask;
+    private final AtomicLong writeSequence = new AtomicLong(0);
+    private volatile Reader[] readers = new Reader[0];
+    private volatile long dropped = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param minCapacity       The minimum number of samples held, rounded up to a power of two
+     */
+    public ShortRingBuffer(int minCapacity) {
+        int capacity = Integer.highestOneBit(Math.max(2, minCapacity - 1)) << 1;
+        this.buffer = new short[capacity];
+        this.mask = capacity - 1;
+    }
+
+    public int capacity() {
+        return this.buffer.length;
+    }
+
+    /**
+     * Add a reader, starting at the current write position.
+     * Readers should be added before the producer starts writing.
+     *
+     * @param gating            true if the producer must wait for this reader
+     */
+    public synchronized Reader addReader(boolean gating) {
+        Reader reader = new Reader(gating, this.writeSequence.get());
+        Reader[] current = this.readers;
+        Reader[] next = new Reader[current.length + 1];
+        System.arraycopy(current, 0, next, 0, current.length);
+        next[current.length] = reader;
+        this.readers = next;
+        return reader;
+    }
+
+    /**
+     * Remove a reader, so it no longer holds the producer back.
+     */
+    public synchronized void removeReader(Reader reader) {
+        Reader[] current = this.readers;
+        int index = -1;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == reader) {
+                index = i;
+            }
+        }
+        if (index < 0) {
+            return;
+        }
+        Reader[] next = new Reader[current.length - 1];
+        System.arraycopy(current, 0, next, 0, index);
+        System.arraycopy(current, index + 1, next, index, current.length - index - 1);
+        this.readers = next;
+    }
+
+    /**
+     * Publish samples. Must only be called from the producer thread.
+     *
+     * @return                  false if a gating reader is too far behind; the samples are dropped
+     */
+    public boolean write(short[] samples, int offset, int length) {
+        Reader[] readers = this.readers;
+        long write = this.writeSequence.get();
+        long oldest = write;
+        for (Reader reader : readers) {
+            if (reader.gating) {
+                oldest = Math.min(oldest, reader.sequence.get());
+            }
+        }
+        if (write + length - oldest > this.buffer.length) {
+            this.dropped += length;
+            return false;
+        }
+
+        int start = (int) (write & this.mask);
+        int first = Math.min(length, this.buffer.length - start);
+        System.arraycopy(samples, offset, this.buffer, start, first);
+        System.arraycopy(samples, offset + first, this.buffer, 0, length - first);
+        this.writeSequence.lazySet(write + length);
+
+        for (Reader reader : readers) {
+            Thread waiter = reader.waiter;
+            if (waiter != null) {
+                LockSupport.unpark(waiter);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the number of samples dropped because a gating reader was too far behind.
+     */
+    public long getDropped() {
+        return this.dropped;
+    }
+
+    /**
+     * A consumer position in the buffer. Each reader must only be used from one thread.
+     */
+    public class Reader {
+        final boolean gating;
+        final AtomicLong sequence;
+        volatile Thread waiter;
+
+        Reader(boolean gating, long sequence) {
+            this.gating = gating;
+            this.sequence = new AtomicLong(sequence);
+        }
+
+        /**
+         * Get the number of samples written and not read yet.
+         */
+        public int available() {
+            return (int) Math.min(buffer.length, writeSequence.get() - this.sequence.get());
+        }
+
+        /**
+         * Copy the next samples without waiting.
+         *
+         * @return              The number of samples copied, 0 if none are available
+         */
+        public int read(short[] samples, int offset, int length) {
+            long read = this.sequence.get();
+            long write = writeSequence.get();
+            if (!this.gating && write - read > buffer.length) {
+                // lapped by the producer, skip to the oldest samples still held
+                read = write - buffer.length;
+            }
+            int count = (int) Math.min(length, write - read);
+            if (count <= 0) {
+                return 0;
+            }
+            int start = (int) (read & mask);
+            int first = Math.min(count, buffer.length - start);
+            System.arraycopy(buffer, start, samples, offset, first);
+            System.arraycopy(buffer, 0, samples, offset + first, count - first);
+            if (!this.gating && writeSequence.get() - read > buffer.length) {
+                // overwritten while copying, so the copy is torn; report the newest samples next time.
+                // A write still in progress is not seen here, see the class comment.
+                this.sequence.lazySet(writeSequence.get() - buffer.length);
+                return 0;
+            }
+            this.sequence.lazySet(read + count);
+            return count;
+        }
+
+        /**
+         * Wait until samples are available, the timeout expires or the thread is interrupted.
+         *
+         * @param timeoutNanos  The longest time to wait
+         */
+        public void await(long timeoutNanos) {
+            long deadline = System.nanoTime() + timeoutNanos;
+            this.waiter = Thread.currentThread();
+            try {
+                long remaining;
+                while (this.available() == 0 && (remaining = deadline - System.nanoTime()) > 0
+                        && !Thread.currentThread().isInterrupted()) {
+                    LockSupport.parkNanos(this, Math.min(remaining, PARK_NANOS));
+                }
+            } finally {
+                this.waiter = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,524 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.media;
+
+import android.media.MediaDataSource;
+import android.media.MediaPlayer;
+import android.os.Build;
+
+import org.apache.cordova.LOG;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * This class keeps streamed http and https sources on disk, so a clip that is played
+ * again is not downloaded again.
+ *
+ * Entries are keyed by URL and validated with the ETag of the response: a cached clip
+ * is played after the server answered a conditional request with 304 Not Modified, or
+ * when the server cannot be reached. The least recently played entries are evicted
+ * once the cache grows beyond its size budget.
+ *
+ * A clip that is not cached yet is downloaded to the cache while it plays, through a
+ * MediaDataSource that reads the bytes as they arrive. MediaDataSource requires API
+ * level 23; on older devices and for responses without an ETag or a Content-Length
+ * (e.g. live streams) the URL is played directly, as without the cache.
+ */
+public class StreamCache {
+
+    private static final String LOG_TAG = "StreamCache";
+
+    private static final int TIMEOUT = 15000;           // Connect and read timeout in msec
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final String DATA_SUFFIX = ".data";
+    private static final String META_SUFFIX = ".meta";
+    private static final String PARTIAL_SUFFIX = ".part";
+
+    private final File dir;
+    private final long maxBytes;
+    private final Executor executor;
+
+    private LinkedHashMap<String, Entry> entries;    // Least recently used first, loaded on first use
+    private final HashSet<String> downloading = new HashSet<String>();
+    private long totalBytes = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param dir               The directory of the cached files
+     * @param maxBytes          The size budget of the cache
+     * @param executor          Runs the downloads
+     */
+    public StreamCache(File dir, long maxBytes, Executor executor) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        this.executor = executor;
+    }
+
+    /**
+     * Determine if a source can be played through the cache.
+     */
+    public static boolean isCacheable(String url) {
+        return url.startsWith("http://") || url.startsWith("https://");
+    }
+
+    /**
+     * Get a cached source for the URL. Makes a network request, so it must not be
+     * called on the bridge or the media worker thread.
+     *
+     * @param url               The http or https URL of the clip
+     * @return                  The source to play, or null to play the URL directly
+     */
+    public Source open(String url) {
+        String key = keyFor(url);
+        Entry cached;
+        synchronized (this) {
+            this.load();
+            cached = this.entries.get(key);
+            if (cached == null && this.downloading.contains(key)) {
+                // another player is downloading it right now
+                return null;
+            }
+        }
+
+        HttpURLConnection connection = null;
+        try {
+            connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setConnectTimeout(TIMEOUT);
+            connection.setReadTimeout(TIMEOUT);
+            // a transparently decompressed response has no usable Content-Length
+            connection.setRequestProperty("Accept-Encoding", "identity");
+            if (cached != null) {
+                connection.setRequestProperty("If-None-Match", cached.etag);
+            }
+            int code = connection.getResponseCode();
+            if (cached != null && code == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                connection.disconnect();
+                return this.hit(cached);
+            }
+            if (code != HttpURLConnection.HTTP_OK) {
+                connection.disconnect();
+                return null;
+            }
+            String etag = connection.getHeaderField("ETag");
+            long length = parseLength(connection.getHeaderField("Content-Length"));
+            if (etag == null || length <= 0 || length > this.maxBytes / 2
+                    || Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+                connection.disconnect();
+                return null;
+            }
+            synchronized (this) {
+                if (!this.downloading.add(key)) {
+                    connection.disconnect();
+                    return null;
+                }
+                if (cached != null) {
+                    // changed on the server
+                    this.remove(cached);
+                }
+            }
+            Download download = new Download(new Entry(key, url, etag, length), connection);
+            this.executor.execute(download);
+            return new Source(download);
+        } catch (IOException e) {
+            if (connection != null) {
+                connection.disconnect();
+            }
+            if (cached != null) {
+                LOG.d(LOG_TAG, "Playing the cached copy of " + url + ", it could not be validated: " + e.getMessage());
+                return this.hit(cached);
+            }
+            LOG.d(LOG_TAG, "Not caching " + url + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private synchronized Source hit(Entry entry) {
+        File data = entry.data();
+        if (this.entries.get(entry.key) != entry || !data.exists()) {
+            return null;
+        }
+        data.setLastModified(System.currentTimeMillis());
+        return new Source(data);
+    }
+
+    /**
+     * Read the index from the entries on disk, oldest first.
+     */
+    private void load() {
+        if (this.entries != null) {
+            return;
+        }
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+        this.dir.mkdirs();
+        File[] files = this.dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        ArrayList<File> data = new ArrayList<File>();
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(PARTIAL_SUFFIX)) {
+                // left behind by a download that did not finish
+                file.delete();
+            } else if (name.endsWith(DATA_SUFFIX)) {
+                data.add(file);
+            }
+        }
+        File[] sorted = data.toArray(new File[data.size()]);
+        Arrays.sort(sorted, new Comparator<File>() {
+            public int compare(File a, File b) {
+                long diff = a.lastModified() - b.lastModified();
+                return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+            }
+        });
+        for (File file : sorted) {
+            String key = file.getName().substring(0, file.getName().length() - DATA_SUFFIX.length());
+            Entry entry = this.readEntry(key);
+            if (entry == null || entry.length != file.length()) {
+                file.delete();
+                new File(this.dir, key + META_SUFFIX).delete();
+                continue;
+            }
+            this.entries.put(key, entry);
+            this.totalBytes += entry.length;
+        }
+        this.trim();
+    }
+
+    private synchronized void commit(Entry entry, File partial) {
+        this.downloading.remove(entry.key);
+        if (!partial.renameTo(entry.data()) || !entry.write()) {
+            partial.delete();
+            entry.data().delete();
+            return;
+        }
+        this.entries.put(entry.key, entry);
+        this.totalBytes += entry.length;
+        this.trim();
+    }
+
+    private synchronized void abandon(Entry entry, File partial) {
+        this.downloading.remove(entry.key);
+        partial.delete();
+    }
+
+    private void remove(Entry entry) {
+        if (this.entries.remove(entry.key) != null) {
+            this.totalBytes -= entry.length;
+        }
+        entry.data().delete();
+        entry.meta().delete();
+    }
+
+    /**
+     * Evict the least recently used entries until the cache fits its budget.
+     */
+    private void trim() {
+        Iterator<Entry> it = this.entries.values().iterator();
+        while (this.totalBytes > this.maxBytes && it.hasNext()) {
+            Entry entry = it.next();
+            it.remove();
+            this.totalBytes -= entry.length;
+            entry.data().delete();
+            entry.meta().delete();
+        }
+    }
+
+    private Entry readEntry(String key) {
+        File file = new File(this.dir, key + META_SUFFIX);
+        byte[] bytes = new byte[(int) Math.min(file.length(), 64 * 1024)];
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            int length = 0;
+            int read;
+            while (length < bytes.length && (read = in.read(bytes, length, bytes.length - length)) != -1) {
+                length += read;
+            }
+            JSONObject meta = new JSONObject(new String(bytes, 0, length, "UTF-8"));
+            return new Entry(key, meta.getString("url"), meta.getString("etag"), meta.getLong("length"));
+        } catch (IOException e) {
+            return null;
+        } catch (JSONException e) {
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private static long parseLength(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String keyFor(String url) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(url.getBytes("UTF-8"));
+            StringBuilder key = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                key.append(String.format("%02x", b & 0xff));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return Integer.toHexString(url.hashCode());
+        } catch (IOException e) {
+            return Integer.toHexString(url.hashCode());
+        }
+    }
+
+    private static void closeQuietly(java.io.Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // nothing left to do with it
+            }
+        }
+    }
+
+    /**
+     * What the player plays: a complete cached file, or a clip being downloaded.
+     */
+    public static class Source {
+        private final File file;
+        private final Download download;
+
+        Source(File file) {
+            this.file = file;
+            this.download = null;
+        }
+
+        Source(Download download) {
+            this.file = null;
+            this.download = download;
+        }
+
+        /**
+         * Set the source as the data source of the player.
+         */
+        public void setDataSourceOf(MediaPlayer player) throws IOException {
+            if (this.file != null) {
+                FileInputStream fileInputStream = new FileInputStream(this.file);
+                try {
+                    player.setDataSource(fileInputStream.getFD());
+                } finally {
+                    fileInputStream.close();
+                }
+            } else {
+                player.setDataSource(this.download);
+            }
+        }
+
+        /**
+         * Release the source if it is not going to be played.
+         */
+        public void close() {
+            if (this.download != null) {
+                closeQuietly(this.download);
+            }
+        }
+    }
+
+    /**
+     * Downloads a clip to a partial file and serves the bytes that have arrived to
+     * the player. Reads past the downloaded bytes wait for them. Closing the source
+     * before the download has finished cancels it.
+     */
+    private class Download extends MediaDataSource implements Runnable {
+        private final Entry entry;
+        private final HttpURLConnection connection;
+        private final File partial;
+        private RandomAccessFile reader;
+        private long received = 0;
+        private boolean finished = false;
+        private boolean closed = false;
+        private IOException error;
+
+        Download(Entry entry, HttpURLConnection connection) {
+            this.entry = entry;
+            this.connection = connection;
+            this.partial = new File(dir, entry.key + PARTIAL_SUFFIX);
+        }
+
+        public void run() {
+            InputStream in = null;
+            FileOutputStream out = null;
+            try {
+                in = this.connection.getInputStream();
+                out = new FileOutputStream(this.partial);
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                    synchronized (this) {
+                        if (this.closed) {
+                            throw new IOException("Cancelled");
+                        }
+                        this.received += read;
+                        this.notifyAll();
+                    }
+                }
+                out.getFD().sync();
+                if (this.received != this.entry.length) {
+                    throw new IOException("Received " + this.received + " of " + this.entry.length + " bytes");
+                }
+            } catch (IOException e) {
+                synchronized (this) {
+                    this.error = e;
+                    this.notifyAll();
+                }
+            } finally {
+                closeQuietly(out);
+                closeQuietly(in);
+                this.connection.disconnect();
+            }
+            synchronized (this) {
+                this.finished = true;
+                this.notifyAll();
+                if (this.error == null) {
+                    commit(this.entry, this.partial);
+                } else if (this.closed) {
+                    abandon(this.entry, this.partial);
+                } else {
+                    LOG.e(LOG_TAG, "Failed to download " + this.entry.url, this.error);
+                    // the player may still be reading what did arrive, so the file is deleted on close
+                }
+            }
+        }
+
+        public long getSize() {
+            return this.entry.length;
+        }
+
+        public int readAt(long position, byte[] buffer, int offset, int size) throws IOException {
+            if (position >= this.entry.length) {
+                return -1;
+            }
+            synchronized (this) {
+                while (this.received <= position && this.error == null && !this.closed) {
+                    try {
+                        this.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted");
+                    }
+                }
+                if (this.closed) {
+                    throw new IOException("Closed");
+                }
+                if (this.received <= position) {
+                    throw this.error;
+                }
+                size = (int) Math.min(size, this.received - position);
+                if (this.reader == null) {
+                    // the committed file is the same file, renamed
+                    this.reader = new RandomAccessFile(this.finished && this.error == null ? this.entry.data() : this.partial, "r");
+                }
+                this.reader.seek(position);
+                return this.reader.read(buffer, offset, size);
+            }
+        }
+
+        public void close() {
+            synchronized (this) {
+                if (this.closed) {
+                    return;
+                }
+                this.closed = true;
+                closeQuietly(this.reader);
+                this.reader = null;
+                this.notifyAll();
+                if (this.finished && this.error != null) {
+                    abandon(this.entry, this.partial);
+                }
+            }
+        }
+    }
+
+    /**
+     * A cached clip: its URL, the ETag it was validated with and its length.
+     */
+    private class Entry {
+        final String key;
+        final String url;
+        final String etag;
+        final long length;
+
+        Entry(String key, String url, String etag, long length) {
+            this.key = key;
+            this.url = url;
+            this.etag = etag;
+            this.length = length;
+        }
+
+        File data() {
+            return new File(dir, this.key + DATA_SUFFIX);
+        }
+
+        File meta() {
+            return new File(dir, this.key + META_SUFFIX);
+        }
+
+        boolean write() {
+            FileOutputStream out = null;
+            try {
+                JSONObject meta = new JSONObject();
+                meta.put("url", this.url);
+                meta.put("etag", this.etag);
+                meta.put("length", this.length);
+                out = new FileOutputStream(this.meta());
+                out.write(meta.toString().getBytes("UTF-8"));
+                return true;
+            } catch (JSONException e) {
+                return false;
+            } catch (IOException e) {
+                LOG.e(LOG_TAG, "Failed to write the cache entry of " + this.url, e);
+                return false;
+            } finally {
+                closeQuietly(out);
+            }
+        }
+    }
+}
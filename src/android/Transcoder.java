@@ -0,0 +1,126 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.media;
+
+import android.content.Context;
+import android.os.SystemClock;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+/**
+ * This class converts an audio file, e.g. an AMR recording of AudioPlayer, to another
+ * format. The file is decoded by a PcmDecoder and the samples are passed on to a
+ * RecordingEncoder through a fixed-size buffer, at the rate and channels of the file.
+ */
+public class Transcoder {
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final long PROGRESS_INTERVAL = 100;      // Shortest interval of progress updates in msec
+
+    /**
+     * Notified on the transcoding thread while the file is converted.
+     */
+    public interface Listener {
+        void onProgress(float fraction);
+    }
+
+    private final Context context;
+    private final String file;
+
+    /**
+     * Constructor.
+     *
+     * @param context           Used to read assets
+     * @param file              The name of the audio file, as passed to AudioPlayer
+     */
+    public Transcoder(Context context, String file) {
+        this.context = context;
+        this.file = file;
+    }
+
+    /**
+     * Convert the file. This takes a while, so it must not be called on the bridge or
+     * the media worker thread. The thread may be interrupted to cancel it, the partial
+     * output is deleted then.
+     *
+     * @param path              The absolute path of the output file
+     * @param encoder           The encoder of the output
+     * @param listener          Notified of the progress
+     * @return                  The duration of the output in seconds
+     */
+    public double transcode(String path, RecordingEncoder encoder, Listener listener) throws IOException {
+        boolean finished = false;
+        PcmDecoder decoder = PcmDecoder.open(this.context, this.file);
+        try {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.nativeOrder());
+            ShortBuffer shorts = buffer.asShortBuffer();
+            short[] samples = new short[BUFFER_SIZE / 2];
+            // the format is only certain once samples have been decoded
+            int read = decoder.read(buffer);
+            if (decoder.getSampleRate() <= 0 || decoder.getChannels() < 1 || decoder.getChannels() > 2) {
+                throw new IOException("Unsupported format of " + this.file);
+            }
+            long expected = decoder.getDurationUs() > 0
+                    ? decoder.getDurationUs() * decoder.getSampleRate() / 1000000L * decoder.getChannels() : 0;
+            long encoded = 0;
+            long lastProgress = 0;
+
+            encoder.start(path, decoder.getSampleRate(), decoder.getChannels());
+            try {
+                while (read >= 0) {
+                    if (Thread.interrupted()) {
+                        throw new InterruptedIOException("Cancelled");
+                    }
+                    if (read > 0) {
+                        shorts.clear();
+                        shorts.get(samples, 0, read / 2);
+                        encoder.encode(samples, 0, read / 2);
+                        encoded += read / 2;
+                    }
+
+                    long now = SystemClock.uptimeMillis();
+                    if (expected > 0 && now - lastProgress >= PROGRESS_INTERVAL) {
+                        lastProgress = now;
+                        listener.onProgress(Math.min(0.99f, (float) encoded / expected));
+                    }
+                    buffer.clear();
+                    read = decoder.read(buffer);
+                }
+            } finally {
+                encoder.stop();
+            }
+            finished = true;
+            listener.onProgress(1.0f);
+            return (double) encoded / decoder.getChannels() / decoder.getSampleRate();
+        } catch (RuntimeException e) {
+            // MediaCodec reports most failures as IllegalStateException
+            throw new IOException("Can not transcode " + this.file, e);
+        } finally {
+            decoder.release();
+            if (!finished) {
+                new File(path).delete();
+            }
+        }
+    }
+}
@@ -0,0 +1,306 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.media;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+
+/**
+ * This encoder stage detects speech by the energy of short windows of samples,
+ * and can leave silence out before passing the samples on to the next encoder.
+ *
+ * Speech starts with a window above the threshold and ends once the level has
+ * stayed below it for the hangover time. Silence is held back in a ring of one
+ * hangover long until it is known whether speech resumes:
+ * - with autoPause, silence between speech is left out, except for the padding
+ *   after the speech and before the next one;
+ * - with trim, the silence before the first speech and after the last one is
+ *   left out, except for the padding. A long pause in the middle keeps its
+ *   length but is written as digital silence, as the recorder can't hold it
+ *   back until it knows whether it is the trailing silence.
+ *
+ * All buffers are allocated by start(), so the encoder thread allocates nothing per frame.
+ */
+public class VoiceActivityDetector implements RecordingEncoder {
+
+    private static final int WINDOW_MS = 20;
+    private static final int ZERO_CHUNK = 1024;
+
+    /**
+     * Notified on the encoder thread when speech starts or ends.
+     */
+    public interface Listener {
+        /**
+         * @param speaking          T=speech started, F=speech ended
+         * @param position          Time in the recording in msec, pauses excluded
+         */
+        void onSpeech(boolean speaking, long position);
+    }
+
+    private enum Silence { KEEP, REMOVE, ZERO }
+
+    private final RecordingEncoder encoder;
+    private final Listener listener;
+    private final float threshold;          // RMS level of speech, 0 - 1
+    private final int hangoverMs;
+    private final int paddingMs;
+    private final boolean autoPause;
+    private final boolean trim;
+
+    private int sampleRate;
+    private int channels;
+    private short[] window;                 // Samples of the window being filled
+    private int windowFill;
+    private double thresholdSquares;        // Sum of squares of a full window at the threshold
+    private short[] held;                   // Silence held back, a ring of one hangover
+    private int heldStart;
+    private int heldCount;
+    private final short[] zeros = new short[ZERO_CHUNK];
+    private long hangover;                  // In samples, over all channels
+    private long padding;
+    private long silentRun;                 // Samples since the end of the last speech window
+    private long pendingZeros;              // Silence to write as zeros if speech resumes
+    private long captured;                  // Samples received
+    private boolean speaking;
+    private boolean spoken;                 // Speech was detected since start()
+
+    /**
+     * Constructor.
+     *
+     * @param encoder           The encoder the samples are passed to
+     * @param threshold         The RMS level of speech, 0 - 1
+     * @param hangoverMs        How long the level must stay below the threshold to end speech
+     * @param paddingMs         The silence kept before and after speech, at most the hangover
+     * @param autoPause         T=leave out the silence between speech
+     * @param trim              T=leave out the silence before the first and after the last speech
+     * @param listener          Notified when speech starts or ends
+     */
+    public VoiceActivityDetector(RecordingEncoder encoder, float threshold, int hangoverMs, int paddingMs,
+            boolean autoPause, boolean trim, Listener listener) {
+        this.encoder = encoder;
+        this.threshold = threshold;
+        this.hangoverMs = Math.max(2 * WINDOW_MS, hangoverMs);
+        this.paddingMs = Math.max(0, Math.min(this.hangoverMs, paddingMs));
+        this.autoPause = autoPause;
+        this.trim = trim;
+        this.listener = listener;
+    }
+
+    /**
+     * Create a detector for the vad option of startRecord.
+     *
+     * @param encoder           The encoder the samples are passed to
+     * @param options           true, or threshold, hangover, padding, autoPause and trim
+     * @param listener          Notified when speech starts or ends
+     */
+    public static VoiceActivityDetector create(RecordingEncoder encoder, JSONObject options, Listener listener) {
+        if (options == null) {
+            options = new JSONObject();
+        }
+        return new VoiceActivityDetector(encoder, (float) options.optDouble("threshold", 0.02),
+                options.optInt("hangover", 500), options.optInt("padding", 200),
+                options.optBoolean("autoPause", false), options.optBoolean("trim", false), listener);
+    }
+
+    public void start(String path, int sampleRate, int channels) throws IOException {
+        this.encoder.start(path, sampleRate, channels);
+        int windowLength = sampleRate * WINDOW_MS / 1000 * channels;
+        this.hangover = (long) sampleRate * this.hangoverMs / 1000 * channels;
+        this.padding = (long) sampleRate * this.paddingMs / 1000 * channels;
+        if (this.window == null || this.sampleRate != sampleRate || this.channels != channels) {
+            this.window = new short[windowLength];
+            this.held = new short[(int) this.hangover];
+        }
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        double level = this.threshold * 32768.0;
+        this.thresholdSquares = level * level * windowLength;
+        this.windowFill = 0;
+        this.heldStart = 0;
+        this.heldCount = 0;
+        this.silentRun = 0;
+        this.pendingZeros = 0;
+        this.captured = 0;
+        this.speaking = false;
+        this.spoken = false;
+    }
+
+    public void encode(short[] samples, int offset, int length) throws IOException {
+        while (length > 0) {
+            int count = Math.min(length, this.window.length - this.windowFill);
+            System.arraycopy(samples, offset, this.window, this.windowFill, count);
+            this.windowFill += count;
+            offset += count;
+            length -= count;
+            if (this.windowFill == this.window.length) {
+                this.process(this.window.length);
+            }
+        }
+    }
+
+    /**
+     * Write the last window and the silence to keep after the last speech, then close the output.
+     */
+    public void stop() throws IOException {
+        try {
+            if (this.windowFill > 0) {
+                this.process(this.windowFill);
+            }
+            if (this.speaking) {
+                this.speaking = false;
+                this.listener.onSpeech(false, this.toMillis(this.captured - this.silentRun));
+            }
+            if (this.spoken && this.policy() != Silence.KEEP) {
+                if (this.trim || this.silentRun >= this.hangover) {
+                    this.writeHeld(this.padding, Long.MAX_VALUE);
+                } else {
+                    this.writeHeld(Long.MAX_VALUE, 0);
+                }
+            }
+            this.heldCount = 0;
+        } finally {
+            this.encoder.stop();
+        }
+    }
+
+    /**
+     * What happens to the silence being received.
+     */
+    private Silence policy() {
+        if (!this.spoken) {
+            return this.trim || this.autoPause ? Silence.REMOVE : Silence.KEEP;
+        }
+        if (this.autoPause) {
+            return Silence.REMOVE;
+        }
+        return this.trim ? Silence.ZERO : Silence.KEEP;
+    }
+
+    private void process(int length) throws IOException {
+        double squares = 0;
+        for (int i = 0; i < length; i++) {
+            int sample = this.window[i];
+            squares += sample * sample;
+        }
+        this.windowFill = 0;
+        boolean voiced = squares > this.thresholdSquares * length / this.window.length;
+        if (voiced) {
+            if (!this.speaking) {
+                this.speaking = true;
+                this.listener.onSpeech(true, this.toMillis(this.captured));
+            }
+            this.resumeAfterSilence();
+            this.encoder.encode(this.window, 0, length);
+            this.silentRun = 0;
+            this.spoken = true;
+        } else {
+            if (this.policy() == Silence.KEEP) {
+                this.encoder.encode(this.window, 0, length);
+            } else {
+                this.hold(length);
+            }
+            this.silentRun += length;
+            if (this.speaking && this.silentRun >= this.hangover) {
+                this.speaking = false;
+                this.listener.onSpeech(false, this.toMillis(this.captured + length - this.silentRun));
+            }
+        }
+        this.captured += length;
+    }
+
+    /**
+     * Write the silence held back before speech that follows it.
+     */
+    private void resumeAfterSilence() throws IOException {
+        if (this.heldCount == 0) {
+            return;
+        }
+        Silence policy = this.policy();
+        if (!this.spoken) {
+            this.writeHeld(0, this.silentRun - this.padding);
+        } else if (this.silentRun < this.hangover || policy == Silence.ZERO) {
+            // speech did not end, or the pause keeps its length
+            this.writeZeros(this.pendingZeros);
+            this.writeHeld(Long.MAX_VALUE, 0);
+        } else {
+            this.writeHeld(this.padding, this.silentRun - this.padding);
+        }
+        this.pendingZeros = 0;
+    }
+
+    /**
+     * Add the window to the held silence. The oldest held samples make room:
+     * the padding after speech is written, the rest is left out or counted as zeros.
+     */
+    private void hold(int length) throws IOException {
+        int overflow = this.heldCount + length - this.held.length;
+        if (overflow > 0) {
+            long first = this.silentRun - this.heldCount;     // Run index of the oldest held sample
+            int tail = this.spoken ? (int) Math.max(0, Math.min(overflow, this.padding - first)) : 0;
+            this.writeRing(this.heldStart, tail);
+            if (this.policy() == Silence.ZERO) {
+                this.pendingZeros += overflow - tail;
+            }
+            this.heldStart = (this.heldStart + overflow) % this.held.length;
+            this.heldCount -= overflow;
+        }
+        int end = (this.heldStart + this.heldCount) % this.held.length;
+        int first = Math.min(length, this.held.length - end);
+        System.arraycopy(this.window, 0, this.held, end, first);
+        System.arraycopy(this.window, first, this.held, 0, length - first);
+        this.heldCount += length;
+    }
+
+    /**
+     * Write the held samples whose index in the silence is below keepBefore or at least keepFrom,
+     * and empty the ring.
+     */
+    private void writeHeld(long keepBefore, long keepFrom) throws IOException {
+        long first = this.silentRun - this.heldCount;
+        long head = Math.max(0, Math.min(this.heldCount, keepBefore - first));
+        long from = Math.max(head, Math.min(this.heldCount, keepFrom - first));
+        this.writeRing(this.heldStart, (int) head);
+        this.writeRing((int) ((this.heldStart + from) % this.held.length), (int) (this.heldCount - from));
+        this.heldStart = 0;
+        this.heldCount = 0;
+    }
+
+    private void writeRing(int start, int count) throws IOException {
+        int first = Math.min(count, this.held.length - start);
+        if (first > 0) {
+            this.encoder.encode(this.held, start, first);
+        }
+        if (count > first) {
+            this.encoder.encode(this.held, 0, count - first);
+        }
+    }
+
+    private void writeZeros(long count) throws IOException {
+        while (count > 0) {
+            int chunk = (int) Math.min(count, ZERO_CHUNK);
+            this.encoder.encode(this.zeros, 0, chunk);
+            count -= chunk;
+        }
+    }
+
+    private long toMillis(long samples) {
+        return samples / this.channels * 1000L / this.sampleRate;
+    }
+}
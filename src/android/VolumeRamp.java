@@ -0,0 +1,110 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.media;
+
+/**
+ * The volume of a fade over time. The player steps its volume along the ramp.
+ */
+public class VolumeRamp {
+
+    private static final float SILENCE = 0.001f;            // -60 dB, where exponential fades start and end
+
+    /**
+     * The shape of a fade.
+     * LINEAR changes the gain evenly, EXPONENTIAL changes the level evenly in dB,
+     * and EQUAL_POWER follows a quarter sine, so a fade in and a fade out of the same
+     * length keep the power of a crossfade constant.
+     */
+    public enum Curve {
+        LINEAR, EXPONENTIAL, EQUAL_POWER;
+
+        /**
+         * @param name              "linear", "exponential" or "equal-power"
+         * @return                  The curve, LINEAR for unknown names
+         */
+        public static Curve forName(String name) {
+            if ("exponential".equals(name)) {
+                return EXPONENTIAL;
+            }
+            if ("equal-power".equals(name)) {
+                return EQUAL_POWER;
+            }
+            return LINEAR;
+        }
+    }
+
+    private final float from;
+    private final float to;
+    private final long start;
+    private final long duration;
+    private final Curve curve;
+
+    /**
+     * Constructor.
+     *
+     * @param from              The volume at the start, 0.0f - 1.0f
+     * @param to                The volume at the end, 0.0f - 1.0f
+     * @param start             The start in msec of SystemClock.uptimeMillis()
+     * @param duration          The duration in msec
+     * @param curve             The shape of the fade
+     */
+    public VolumeRamp(float from, float to, long start, long duration, Curve curve) {
+        this.from = from;
+        this.to = to;
+        this.start = start;
+        this.duration = Math.max(0, duration);
+        this.curve = curve;
+    }
+
+    public float getTarget() {
+        return this.to;
+    }
+
+    /**
+     * @param now               The time in msec of SystemClock.uptimeMillis()
+     * @return                  T=the ramp has reached its target
+     */
+    public boolean isDone(long now) {
+        return now - this.start >= this.duration;
+    }
+
+    /**
+     * @param now               The time in msec of SystemClock.uptimeMillis()
+     * @return                  The volume at that time, 0.0f - 1.0f
+     */
+    public float getVolume(long now) {
+        if (this.isDone(now)) {
+            return this.to;
+        }
+        float t = Math.max(0, (float) (now - this.start) / this.duration);
+        switch (this.curve) {
+        case EXPONENTIAL:
+            float a = Math.max(SILENCE, this.from);
+            float b = Math.max(SILENCE, this.to);
+            return (float) (a * Math.pow(b / a, t));
+        case EQUAL_POWER:
+            if (this.to >= this.from) {
+                return this.from + (this.to - this.from) * (float) Math.sin(t * Math.PI / 2);
+            }
+            return this.to + (this.from - this.to) * (float) Math.cos(t * Math.PI / 2);
+        default:
+            return this.from + (this.to - this.from) * t;
+        }
+    }
+}
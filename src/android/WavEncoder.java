@@ -0,0 +1,104 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.media;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * This class writes 16 bit PCM samples to a WAV file.
+ * The sizes in the header are filled in when the encoder is stopped.
+ */
+public class WavEncoder implements RecordingEncoder {
+
+    private static final int HEADER_LENGTH = 44;
+    private static final int BUFFER_SIZE = 8192;
+
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private RandomAccessFile file;
+    private FileChannel channel;
+    private int sampleRate;
+    private int channels;
+    private long dataLength;
+
+    public void start(String path, int sampleRate, int channels) throws IOException {
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        this.dataLength = 0;
+        this.file = new RandomAccessFile(path, "rw");
+        this.file.setLength(0);
+        this.channel = this.file.getChannel();
+        this.writeHeader();
+    }
+
+    public void encode(short[] samples, int offset, int length) throws IOException {
+        while (length > 0) {
+            int count = Math.min(length, BUFFER_SIZE / 2);
+            this.buffer.clear();
+            this.buffer.asShortBuffer().put(samples, offset, count);
+            this.buffer.limit(count * 2);
+            while (this.buffer.hasRemaining()) {
+                this.channel.write(this.buffer);
+            }
+            this.dataLength += count * 2;
+            offset += count;
+            length -= count;
+        }
+    }
+
+    public void stop() throws IOException {
+        if (this.file == null) {
+            return;
+        }
+        try {
+            this.channel.position(0);
+            this.writeHeader();
+        } finally {
+            this.file.close();
+            this.file = null;
+            this.channel = null;
+        }
+    }
+
+    private void writeHeader() throws IOException {
+        int blockAlign = this.channels * 2;
+        ByteBuffer header = this.buffer;
+        header.clear();
+        header.put((byte) 'R').put((byte) 'I').put((byte) 'F').put((byte) 'F');
+        header.putInt((int) (36 + this.dataLength));
+        header.put((byte) 'W').put((byte) 'A').put((byte) 'V').put((byte) 'E');
+        header.put((byte) 'f').put((byte) 'm').put((byte) 't').put((byte) ' ');
+        header.putInt(16);                              // fmt chunk size
+        header.putShort((short) 1);                     // PCM
+        header.putShort((short) this.channels);
+        header.putInt(this.sampleRate);
+        header.putInt(this.sampleRate * blockAlign);    // byte rate
+        header.putShort((short) blockAlign);
+        header.putShort((short) 16);                    // bits per sample
+        header.put((byte) 'd').put((byte) 'a').put((byte) 't').put((byte) 'a');
+        header.putInt((int) this.dataLength);
+        header.flip();
+        while (header.hasRemaining()) {
+            this.channel.write(header);
+        }
+    }
+}
@@ -0,0 +1,267 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.media;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Plain JUnit tests of PlayerRegistry and SerialExecutor, which AudioHandler uses to
+ * drive players from the bridge and the player callbacks at once.
+ *
+ * The stress test stands in for AudioHandler with fake players: bridge threads create,
+ * look up and release players and queue commands for them, like execute() does, while
+ * a shared pool runs the commands.
+ */
+public class PlayerRegistryTest {
+
+    private static final int BRIDGE_THREADS = 8;
+    private static final int COMMAND_THREADS = 4;
+    private static final int OPERATIONS = 20000;            // Per bridge thread
+    private static final int IDS = 16;
+
+    private static final AtomicInteger pending = new AtomicInteger();   // Commands queued and not run yet
+
+    /**
+     * Checks that the first and last player notifications alternate.
+     */
+    private static class CountingListener implements PlayerRegistry.Listener {
+        final AtomicInteger first = new AtomicInteger();
+        final AtomicInteger last = new AtomicInteger();
+        volatile String error;
+
+        public void onFirstAdded() {
+            if (this.first.incrementAndGet() != this.last.get() + 1) {
+                this.error = "onFirstAdded without onLastRemoved";
+            }
+        }
+
+        public void onLastRemoved() {
+            if (this.last.incrementAndGet() != this.first.get()) {
+                this.error = "onLastRemoved without onFirstAdded";
+            }
+        }
+    }
+
+    /**
+     * A player with a command queue, like AudioPlayer.
+     */
+    private static class FakePlayer {
+        final String id;
+        final SerialExecutor commandQueue;
+        final AtomicInteger running = new AtomicInteger();
+        final ConcurrentHashMap<Integer, Integer> lastCommand = new ConcurrentHashMap<Integer, Integer>();
+        volatile boolean overlapped = false;
+        volatile boolean reordered = false;
+        volatile boolean destroyed = false;
+
+        FakePlayer(String id, ExecutorService executor) {
+            this.id = id;
+            this.commandQueue = new SerialExecutor(executor);
+        }
+
+        /**
+         * Queue a command of a bridge thread. The commands of each thread must run in order, one at a time.
+         */
+        void queue(final int thread, final int sequence) {
+            pending.incrementAndGet();
+            this.commandQueue.execute(new Runnable() {
+                public void run() {
+                    if (running.incrementAndGet() != 1) {
+                        overlapped = true;
+                    }
+                    Integer previous = lastCommand.put(thread, sequence);
+                    if (previous != null && previous >= sequence) {
+                        reordered = true;
+                    }
+                    running.decrementAndGet();
+                    pending.decrementAndGet();
+                }
+            });
+        }
+    }
+
+    @Test
+    public void notifiesFirstAndLastPlayer() {
+        CountingListener listener = new CountingListener();
+        PlayerRegistry<String> registry = new PlayerRegistry<String>(listener);
+        PlayerRegistry.Factory<String> factory = new PlayerRegistry.Factory<String>() {
+            public String create(String id) {
+                return "player " + id;
+            }
+        };
+
+        assertEquals("player a", registry.getOrCreate("a", factory));
+        assertEquals("player b", registry.getOrCreate("b", factory));
+        assertSame(registry.get("a"), registry.getOrCreate("a", factory));
+        assertEquals(1, listener.first.get());
+
+        assertEquals("player a", registry.remove("a"));
+        assertNull(registry.remove("a"));
+        assertEquals(0, listener.last.get());
+        assertEquals("player b", registry.remove("b"));
+        assertEquals(1, listener.last.get());
+
+        assertTrue(registry.removeAll().isEmpty());
+        assertEquals(1, listener.last.get());
+        assertNull(listener.error);
+    }
+
+    @Test(timeout = 60000)
+    public void createsEachPlayerOnce() throws Exception {
+        final PlayerRegistry<Object> registry = new PlayerRegistry<Object>(new CountingListener());
+        final AtomicInteger created = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService bridge = Executors.newFixedThreadPool(BRIDGE_THREADS);
+        try {
+            List<Future<Object>> results = new ArrayList<Future<Object>>();
+            for (int i = 0; i < BRIDGE_THREADS; i++) {
+                results.add(bridge.submit(new Callable<Object>() {
+                    public Object call() throws Exception {
+                        start.await();
+                        return registry.getOrCreate("same", new PlayerRegistry.Factory<Object>() {
+                            public Object create(String id) {
+                                created.incrementAndGet();
+                                return new Object();
+                            }
+                        });
+                    }
+                }));
+            }
+            start.countDown();
+            Object player = results.get(0).get();
+            for (Future<Object> result : results) {
+                assertSame(player, result.get());
+            }
+            assertEquals(1, created.get());
+        } finally {
+            bridge.shutdownNow();
+        }
+    }
+
+    @Test(timeout = 120000)
+    public void createReleaseAndLookUpFromManyThreads() throws Exception {
+        final CountingListener listener = new CountingListener();
+        final PlayerRegistry<FakePlayer> registry = new PlayerRegistry<FakePlayer>(listener);
+        final ExecutorService commands = Executors.newFixedThreadPool(COMMAND_THREADS);
+        final List<FakePlayer> all = new ArrayList<FakePlayer>();
+        final PlayerRegistry.Factory<FakePlayer> factory = new PlayerRegistry.Factory<FakePlayer>() {
+            public FakePlayer create(String id) {
+                FakePlayer player = new FakePlayer(id, commands);
+                synchronized (all) {
+                    all.add(player);
+                }
+                return player;
+            }
+        };
+        ExecutorService bridge = Executors.newFixedThreadPool(BRIDGE_THREADS + 1);
+        try {
+            List<Future<?>> results = new ArrayList<Future<?>>();
+            for (int i = 0; i < BRIDGE_THREADS; i++) {
+                final int thread = i;
+                results.add(bridge.submit(new Callable<Void>() {
+                    public Void call() {
+                        Random random = new Random(thread);
+                        for (int sequence = 0; sequence < OPERATIONS; sequence++) {
+                            String id = "player" + random.nextInt(IDS);
+                            int operation = random.nextInt(10);
+                            if (operation < 4) {
+                                registry.getOrCreate(id, factory).queue(thread, sequence);
+                            } else if (operation < 8) {
+                                FakePlayer player = registry.get(id);
+                                if (player != null) {
+                                    player.queue(thread, sequence);
+                                }
+                            } else {
+                                final FakePlayer player = registry.remove(id);
+                                if (player != null) {
+                                    assertEquals(id, player.id);
+                                    // destroyed after the commands already queued for it, like AudioHandler.release
+                                    pending.incrementAndGet();
+                                    player.commandQueue.execute(new Runnable() {
+                                        public void run() {
+                                            player.destroyed = true;
+                                            pending.decrementAndGet();
+                                        }
+                                    });
+                                }
+                            }
+                        }
+                        return null;
+                    }
+                }));
+            }
+            // a focus change iterates the players meanwhile
+            final AtomicInteger bridgeDone = new AtomicInteger();
+            results.add(bridge.submit(new Callable<Void>() {
+                public Void call() {
+                    while (bridgeDone.get() == 0) {
+                        for (FakePlayer player : registry.values()) {
+                            assertFalse(player.id.isEmpty());
+                        }
+                    }
+                    return null;
+                }
+            }));
+            for (int i = 0; i < BRIDGE_THREADS; i++) {
+                results.get(i).get();
+            }
+            bridgeDone.set(1);
+            results.get(BRIDGE_THREADS).get();
+
+            List<FakePlayer> remaining = registry.removeAll();
+            // a serial executor drops its commands once the pool is shut down, so let them all run first
+            while (pending.get() > 0) {
+                Thread.sleep(10);
+            }
+            commands.shutdown();
+            assertTrue(commands.awaitTermination(30, TimeUnit.SECONDS));
+
+            assertNull(listener.error);
+            assertEquals(listener.first.get(), listener.last.get());
+            assertTrue(listener.first.get() > 0);
+            assertTrue(registry.values().isEmpty());
+            for (FakePlayer player : all) {
+                assertFalse("overlapping commands of " + player.id, player.overlapped);
+                assertFalse("reordered commands of " + player.id, player.reordered);
+                assertTrue(player.destroyed || remaining.contains(player));
+            }
+        } finally {
+            bridge.shutdownNow();
+            commands.shutdownNow();
+        }
+    }
+}
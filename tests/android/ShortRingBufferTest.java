@@ -0,0 +1,205 @@
+/*
+       Licensed to the Apache Software Foundation (ASF) under one
+       or more contributor license agreements.  See the NOTICE file
+       distributed with this work for additional information
+       regarding copyright ownership.  The ASF licenses this file
+       to you under the Apache License, Version 2.0 (the
+       "License"); you may not use this file except in compliance
+       with the License.  You may obtain a copy of the License at
+
+         http://www.apache.org/licenses/LICENSE-2.0
+
+       Unless required by applicable law or agreed to in writing,
+       software distributed under the License is distributed on an
+       "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+       KIND, either express or implied.  See the License for the
+       specific language governing permissions and limitations
+       under the License.
+*/
+package org.apache.cordova.media;
+
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Plain JUnit tests of ShortRingBuffer, which has no Android dependencies.
+ *
+ * The stress test writes 48 kHz stereo in 10 msec buffers, as PcmRecorder does, but
+ * as fast as the gating reader allows. Frame f holds (short) f on the left and
+ * (short) ~f on the right, so every sample read can be checked. The gating reader
+ * must get every sample intact; the non-gating readers may rarely get a torn chunk
+ * from a write in progress, as ShortRingBuffer documents.
+ */
+public class ShortRingBufferTest {
+
+    private static final int SAMPLE_RATE = 48000;
+    private static final int CHANNELS = 2;
+    private static final int BUFFER_SAMPLES = SAMPLE_RATE / 100 * CHANNELS;     // 10 msec
+    private static final int CAPACITY = SAMPLE_RATE / 5 * CHANNELS;             // 200 msec
+    private static final long TOTAL_SAMPLES = 60L * SAMPLE_RATE * CHANNELS;     // 60 sec
+    private static final long AWAIT_NANOS = 1000000;
+
+    private static short sampleAt(long sequence) {
+        long frame = sequence / CHANNELS;
+        return (short) (sequence % CHANNELS == 0 ? frame : ~frame);
+    }
+
+    @Test
+    public void capacityIsRoundedUpToPowerOfTwo() {
+        assertEquals(16384, new ShortRingBuffer(9600).capacity());
+        assertEquals(16384, new ShortRingBuffer(16384).capacity());
+    }
+
+    @Test
+    public void gatingReaderHoldsProducerBack() {
+        ShortRingBuffer ring = new ShortRingBuffer(8);
+        ShortRingBuffer.Reader reader = ring.addReader(true);
+        short[] samples = new short[8];
+
+        assertTrue(ring.write(samples, 0, 8));
+        assertFalse(ring.write(samples, 0, 1));
+        assertEquals(1, ring.getDropped());
+
+        assertEquals(4, reader.read(samples, 0, 4));
+        assertTrue(ring.write(samples, 0, 4));
+        assertEquals(8, reader.available());
+    }
+
+    @Test
+    public void nonGatingReaderSkipsAheadWhenLapped() {
+        ShortRingBuffer ring = new ShortRingBuffer(8);
+        ShortRingBuffer.Reader reader = ring.addReader(false);
+        short[] samples = new short[4];
+        for (int i = 0; i < 5; i++) {
+            for (int j = 0; j < samples.length; j++) {
+                samples[j] = (short) (i * samples.length + j);
+            }
+            assertTrue(ring.write(samples, 0, samples.length));
+        }
+
+        short[] read = new short[8];
+        assertEquals(8, reader.read(read, 0, read.length));
+        for (int j = 0; j < read.length; j++) {
+            assertEquals(12 + j, read[j]);
+        }
+        assertEquals(0, reader.available());
+    }
+
+    @Test(timeout = 60000)
+    public void stereoWriterWithGatingAndNonGatingReaders() throws Exception {
+        final ShortRingBuffer ring = new ShortRingBuffer(CAPACITY);
+        final ShortRingBuffer.Reader gating = ring.addReader(true);
+        final ShortRingBuffer.Reader meter = ring.addReader(false);
+        final ShortRingBuffer.Reader level = ring.addReader(false);
+        final boolean[] finished = new boolean[1];
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            Future<Long> encoded = executor.submit(new Callable<Long>() {
+                public Long call() {
+                    short[] samples = new short[BUFFER_SAMPLES];
+                    long sequence = 0;
+                    while (sequence < TOTAL_SAMPLES) {
+                        int count = gating.read(samples, 0, samples.length);
+                        if (count == 0) {
+                            if (isFinished(finished) && gating.available() == 0) {
+                                break;
+                            }
+                            gating.await(AWAIT_NANOS);
+                        }
+                        for (int i = 0; i < count; i++, sequence++) {
+                            assertEquals("sample " + sequence, sampleAt(sequence), samples[i]);
+                        }
+                    }
+                    return sequence;
+                }
+            });
+            Future<long[]> metered = executor.submit(new NonGatingReader(meter, ring.capacity(), finished));
+            Future<long[]> leveled = executor.submit(new NonGatingReader(level, BUFFER_SAMPLES / 2, finished));
+
+            short[] samples = new short[BUFFER_SAMPLES];
+            for (long sequence = 0; sequence < TOTAL_SAMPLES; sequence += samples.length) {
+                for (int i = 0; i < samples.length; i++) {
+                    samples[i] = sampleAt(sequence + i);
+                }
+                while (!ring.write(samples, 0, samples.length)) {
+                    Thread.yield();
+                }
+            }
+            synchronized (finished) {
+                finished[0] = true;
+            }
+
+            assertEquals(TOTAL_SAMPLES, encoded.get().longValue());
+            assertMostlyWhole(metered.get());
+            assertMostlyWhole(leveled.get());
+            assertEquals(0, gating.available());
+        } finally {
+            executor.shutdownNow();
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+
+    private static boolean isFinished(boolean[] finished) {
+        synchronized (finished) {
+            return finished[0];
+        }
+    }
+
+    /**
+     * @param chunks            The chunks read and the torn ones among them
+     */
+    private static void assertMostlyWhole(long[] chunks) {
+        assertTrue(chunks[0] > 0);
+        assertTrue("torn " + chunks[1] + " of " + chunks[0] + " chunks", chunks[1] * 10 < chunks[0]);
+    }
+
+    /**
+     * Reads like the meter of a recording: it never holds the producer back, so it may
+     * skip samples. It counts the chunks that are not whole consecutive frames.
+     */
+    private static class NonGatingReader implements Callable<long[]> {
+        private final ShortRingBuffer.Reader reader;
+        private final short[] samples;
+        private final boolean[] finished;
+
+        NonGatingReader(ShortRingBuffer.Reader reader, int length, boolean[] finished) {
+            this.reader = reader;
+            this.samples = new short[length];
+            this.finished = finished;
+        }
+
+        public long[] call() {
+            long chunks = 0;
+            long torn = 0;
+            while (true) {
+                int count = this.reader.read(this.samples, 0, this.samples.length);
+                if (count == 0) {
+                    if (isFinished(this.finished) && this.reader.available() == 0) {
+                        return new long[] { chunks, torn };
+                    }
+                    this.reader.await(AWAIT_NANOS);
+                    continue;
+                }
+                assertEquals(0, count % CHANNELS);
+                short first = this.samples[0];
+                for (int i = 0; i < count; i += CHANNELS) {
+                    short left = (short) (first + i / CHANNELS);
+                    if (this.samples[i] != left || this.samples[i + 1] != (short) ~left) {
+                        torn++;
+                        break;
+                    }
+                }
+                chunks++;
+            }
+        }
+    }
+}
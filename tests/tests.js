@@ -374,7 +374,7 @@ exports.defineAutoTests = function () {
         });
 
         it("media.spec.24 playback rate should be set properly using setRate", function (done) {
-            if (cordova.platformId !== 'ios') {
+            if (cordova.platformId !== 'ios' && cordova.platformId !== 'android') {
                 expect(true).toFailWithMessage('Platform does not supported this feature');
                 pending();
             }
@@ -513,6 +513,176 @@ exports.defineAutoTests = function () {
             media.play();
         });
 
+        it("media.spec.28 should contain startPositionUpdates and stopPositionUpdates functions", function () {
+            var media1 = new Media("dummy");
+            expect(media1.startPositionUpdates).toBeDefined();
+            expect(typeof media1.startPositionUpdates).toBe('function');
+            expect(media1.stopPositionUpdates).toBeDefined();
+            expect(typeof media1.stopPositionUpdates).toBe('function');
+            media1.release();
+        });
+
+        it("media.spec.29 should contain a preload function", function () {
+            var media1 = new Media("dummy");
+            expect(media1.preload).toBeDefined();
+            expect(typeof media1.preload).toBe('function');
+            media1.release();
+        });
+
+        it("media.spec.30 should contain a setNext function", function () {
+            var media1 = new Media("dummy");
+            expect(media1.setNext).toBeDefined();
+            expect(typeof media1.setNext).toBe('function');
+            media1.release();
+        });
+
+        it("media.spec.31 should contain a getPeaks function", function () {
+            var media1 = new Media("dummy");
+            expect(media1.getPeaks).toBeDefined();
+            expect(typeof media1.getPeaks).toBe('function');
+            media1.release();
+        });
+
+        it("media.spec.32 should contain startLevelUpdates and stopLevelUpdates functions", function () {
+            var media1 = new Media("dummy");
+            expect(typeof media1.startLevelUpdates).toBe('function');
+            expect(typeof media1.stopLevelUpdates).toBe('function');
+            media1.release();
+        });
+
+        it("media.spec.33 should contain a setPan function", function () {
+            var media1 = new Media("dummy");
+            expect(media1.setPan).toBeDefined();
+            expect(typeof media1.setPan).toBe('function');
+            media1.release();
+        });
+
+        it("media.spec.34 should contain a mixdown function", function () {
+            var media1 = new Media("dummy");
+            expect(media1.mixdown).toBeDefined();
+            expect(typeof media1.mixdown).toBe('function');
+            media1.release();
+        });
+
+        it("media.spec.35 should contain transcode and cancelJob functions", function () {
+            var media1 = new Media("dummy");
+            expect(typeof media1.transcode).toBe('function');
+            expect(typeof media1.cancelJob).toBe('function');
+            media1.release();
+        });
+
+        it("media.spec.36 should contain a fadeTo function", function () {
+            var media1 = new Media("dummy");
+            expect(media1.fadeTo).toBeDefined();
+            expect(typeof media1.fadeTo).toBe('function');
+            media1.release();
+        });
+
+        it("media.spec.37 mixdown should call the error callback when there are no sources", function (done) {
+            if (cordova.platformId !== 'android' && cordova.platformId !== 'amazon-fireos') {
+                pending();
+            }
+
+            var context = this;
+            var media1 = new Media("mixdown.wav");
+            media1.mixdown([], { format: "wav" }, succeed.bind(null, done, 'media1.mixdown - Unexpected success callback, it should not mix without sources', context), function (error) {
+                if (context.done) return;
+                context.done = true;
+                expect(error).toBeDefined();
+                expect(error.code).toBe(MediaError.MEDIA_ERR_ABORTED);
+                media1.release();
+                done();
+            });
+        });
+
+        it("media.spec.38 a cancelled job should report MEDIA_ERR_ABORTED", function (done) {
+            if (cordova.platformId !== 'android' && cordova.platformId !== 'amazon-fireos') {
+                pending();
+            }
+
+            var context = this;
+            var media1 = new Media(WEB_MP3_FILE);
+            media1.transcode("cancelled.m4a", null, succeed.bind(null, done, 'media1.transcode - Unexpected success callback, the job was cancelled', context), function (error) {
+                if (context.done) return;
+                context.done = true;
+                expect(error).toBeDefined();
+                expect(error.code).toBe(MediaError.MEDIA_ERR_ABORTED);
+                media1.release();
+                done();
+            });
+            media1.cancelJob();
+        }, ACTUAL_PLAYBACK_TEST_TIMEOUT);
+
+        it("media.spec.39 fadeTo should call its callback with the target volume", function (done) {
+            if (cordova.platformId !== 'android' && cordova.platformId !== 'amazon-fireos') {
+                pending();
+            }
+
+            // no audio hardware available
+            if (!isAudioSupported) {
+                pending();
+            }
+
+            var mediaFile = WEB_MP3_FILE,
+                successCallback,
+                context = this,
+                flag = true,
+                statusChange = function (statusCode) {
+                    if (statusCode == Media.MEDIA_RUNNING && flag) {
+                        flag = false;
+                        media1.fadeTo(0.2, 500, "linear", function (volume) {
+                            if (context.done) return;
+                            context.done = true;
+                            expect(Number(volume)).toBeCloseTo(0.2, 2);
+                            media1.stop();
+                            media1.release();
+                            done();
+                        });
+                    }
+                };
+
+            var media1 = new Media(mediaFile, successCallback, failed.bind(null, done, 'media1 = new Media - Error creating Media object. Media file: ' + mediaFile, context), statusChange); // jshint ignore:line
+            media1.play();
+        }, ACTUAL_PLAYBACK_TEST_TIMEOUT);
+
+        it("media.spec.40 should record with position updates subscribed", function (done) {
+            if (cordova.platformId !== 'android' && cordova.platformId !== 'amazon-fireos') {
+                pending();
+            }
+
+            // no audio hardware available
+            if (!isAudioSupported) {
+                pending();
+            }
+
+            var mediaFile = "position-updates.amr",
+                context = this,
+                flag = true,
+                positions = 0,
+                successCallback = function () {
+                    if (context.done) return;
+                    context.done = true;
+                    // a recording has no playback position to push
+                    expect(positions).toBe(0);
+                    media1.release();
+                    done();
+                },
+                statusChange = function (statusCode) {
+                    if (statusCode == Media.MEDIA_RUNNING && flag) {
+                        flag = false;
+                        setTimeout(function () {
+                            media1.stopRecord();
+                        }, 1000);
+                    }
+                };
+
+            var media1 = new Media(mediaFile, successCallback, failed.bind(null, done, 'media1 = new Media - Error recording. Media file: ' + mediaFile, context), statusChange); // jshint ignore:line
+            media1.startPositionUpdates(50, function () {
+                positions++;
+            });
+            media1.startRecord();
+        }, ACTUAL_PLAYBACK_TEST_TIMEOUT);
+
     });
 };
 
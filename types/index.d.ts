@@ -11,7 +11,8 @@ declare var Media: {
         src: string,
         mediaSuccess: () => void,
         mediaError?: (error: MediaError) => any,
-        mediaStatus?: (status: number) => void): Media;
+        mediaStatus?: (status: number) => void,
+        options?: MediaOptions): Media;
         //Media statuses
         MEDIA_NONE: number;
         MEDIA_STARTING: number;
@@ -37,11 +38,65 @@ interface Media {
         mediaError?: (error: MediaError) => void): void;
     /** Returns the duration of an audio file in seconds. If the duration is unknown, it returns a value of -1. */
     getDuration(): number;
+    /**
+     * Computes the waveform of the audio file. The result is cached on the device.
+     * Supported on Android.
+     * @param buckets  The number of min/max pairs.
+     * @param success  The callback that is passed the peaks.
+     * @param error    The callback to execute if an error occurs.
+     * @param progress The callback that is passed the progress, from 0 to 1.
+     */
+    getPeaks(
+        buckets: number,
+        success: (peaks: MediaPeaks) => void,
+        error?: (error: MediaError) => void,
+        progress?: (fraction: number) => void): void;
+    /**
+     * Mixes audio files into the file of this Media, which is resolved like a recording.
+     * Supported on Android.
+     * @param sources  The files to mix, each with its offset and gain.
+     * @param options  The format of the output.
+     * @param success  The callback that is passed the duration of the mix in seconds.
+     * @param error    The callback to execute if an error occurs.
+     * @param progress The callback that is passed the progress, from 0 to 1.
+     */
+    mixdown(
+        sources: MixdownSource[],
+        options: MixdownOptions | null,
+        success: (duration: number) => void,
+        error?: (error: MediaError) => void,
+        progress?: (fraction: number) => void): void;
+    /**
+     * Converts the audio file, e.g. an AMR recording, to AAC in an MPEG-4 file.
+     * Supported on Android 4.3 and later.
+     * @param output   The output file, resolved like a recording.
+     * @param options  The bit rate of the output.
+     * @param success  The callback that is passed the path and duration of the output.
+     * @param error    The callback to execute if an error occurs.
+     * @param progress The callback that is passed the progress, from 0 to 1.
+     */
+    transcode(
+        output: string,
+        options: TranscodeOptions | null,
+        success: (result: TranscodeResult) => void,
+        error?: (error: MediaError) => void,
+        progress?: (fraction: number) => void): void;
+    /**
+     * Cancels the running getPeaks, mixdown or transcode. Its error callback is passed MEDIA_ERR_ABORTED.
+     * Supported on Android.
+     */
+    cancelJob(): void;
     /** 
      * Starts or resumes playing an audio file.
      * @param iosPlayOptions: iOS options quirks
      */
     play(iosPlayOptions?: IosPlayOptions): void;
+    /**
+     * Prepares the audio file without playing it, so that play starts right away.
+     * Supported on Android.
+     * @param options The priority of the preload; higher priorities load first.
+     */
+    preload(options?: PreloadOptions): void;
     /** Pauses playing an audio file. */
     pause(): void;
     /**
@@ -55,13 +110,67 @@ interface Media {
      * @param position Position in milliseconds.
      */
     seekTo(position: number): void;
+    /**
+     * Set the playback rate.
+     * @param rate The playback speed, 1.0 is normal speed.
+     * @param pitch Android: the pitch, 1.0 (the default) keeps the original pitch at any speed.
+     */
+    setRate(rate: number, pitch?: number): void;
+    /**
+     * Fades the volume natively, instead of calling setVolume on a timer.
+     * Supported on Android.
+     * @param volume   The target volume, from 0.0 to 1.0.
+     * @param duration The duration of the fade in milliseconds.
+     * @param curve    The shape of the fade, "linear" by default.
+     * @param callback The callback that is passed the target volume once it is reached.
+     */
+    fadeTo(volume: number, duration: number, curve?: 'linear' | 'exponential' | 'equal-power',
+        callback?: (volume: number) => void): void;
+    /**
+     * Set the position between the left and right speakers.
+     * Supported on Android.
+     * @param pan -1.0 (left) to 1.0 (right), 0.0 is the center.
+     */
+    setPan(pan: number): void;
     /**
      * Set the volume for an audio file.
      * @param volume The volume to set for playback. The value must be within the range of 0.0 to 1.0.
      */
     setVolume(volume: number): void;
-    /** Starts recording an audio file. */
-    startRecord(): void;
+    /**
+     * Plays another Media object without a gap when this one completes.
+     * Supported on Android.
+     * @param next The Media to play next, or null to stop chaining.
+     * @param trackChangeCallback The callback that is passed the next Media when it takes over.
+     */
+    setNext(next: Media | null, trackChangeCallback?: (next: Media) => void): void;
+    /**
+     * Receives the playback position at a fixed interval while playing, instead of polling getCurrentPosition.
+     * Supported on Android.
+     * @param interval The update interval in milliseconds.
+     * @param callback The callback that is passed the position in seconds.
+     */
+    startPositionUpdates(interval: number, callback?: (position: number) => void): void;
+    /** Stops the position updates started by startPositionUpdates. */
+    stopPositionUpdates(): void;
+    /**
+     * Receives the level of the recording at a fixed interval while recording, instead of polling getCurrentAmplitude.
+     * Supported on Android.
+     * @param interval The update interval in milliseconds.
+     * @param callback The callback that is passed the RMS and peak level.
+     * @param options decay: time in milliseconds for the levels to fall to 1/e, to smooth a meter.
+     */
+    startLevelUpdates(interval: number, callback: (level: MediaLevel) => void, options?: { decay?: number }): void;
+    /** Stops the level updates started by startLevelUpdates. */
+    stopLevelUpdates(): void;
+    /**
+     * Starts recording an audio file.
+     * @param options Android options selecting the recording format.
+     * @param speechCallback Android: the callback that is passed the speech events when options.vad is set.
+     * @param chunkCallback Android: the callback that is passed each complete chunk when options.segment is set.
+     */
+    startRecord(options?: RecordOptions, speechCallback?: (speech: MediaSpeech) => void,
+        chunkCallback?: (chunk: MediaChunk) => void): void;
     /** Stops recording an audio file. */
     stopRecord(): void;
     /** Stops playing an audio file. */
@@ -74,6 +183,146 @@ interface Media {
     /** The duration of the media, in seconds. */
     duration: number;
 }
+/**
+ *  Optional parameters for the Media constructor
+ */
+interface MediaOptions {
+    /**
+     * Android: "effect" plays the file as a low latency, overlapping sound effect,
+     * "mixed" plays it through a software mixer shared by many sounds.
+     */
+    type?: string;
+}
+/**
+ *  Level passed to the callback of media.startLevelUpdates
+ */
+interface MediaLevel {
+    /** The RMS level, from 0 to 1. 0 for the default Android recording format, which only reports its peak. */
+    rms: number;
+    /** The peak level, from 0 to 1. */
+    peak: number;
+}
+/**
+ *  Waveform passed to the success callback of media.getPeaks
+ */
+interface MediaPeaks {
+    /** The number of min/max pairs. */
+    buckets: number;
+    /** The duration of the file in seconds. */
+    duration: number;
+    /** The minimum and maximum sample of each bucket, from -1 to 1: [min0, max0, min1, max1, ...]. */
+    peaks: number[];
+}
+/**
+ *  A file mixed by media.mixdown
+ */
+interface MixdownSource {
+    /** The audio file. */
+    src: string;
+    /** Where the file starts in the mix in milliseconds, 0 by default. */
+    offset?: number;
+    /** The gain of the file, 1 by default. */
+    gain?: number;
+}
+/**
+ *  Optional parameters for media.mixdown
+ */
+interface MixdownOptions {
+    /** "wav" or "aac"; "wav" by default for a .wav file, otherwise "aac". */
+    format?: string;
+    /** The sample rate in Hz, 44100 by default. */
+    sampleRate?: number;
+    /** 1 or 2, 2 by default. */
+    channels?: number;
+    /** The bit rate of aac output, 128000 by default. */
+    bitRate?: number;
+}
+/**
+ *  Optional parameters for media.transcode
+ */
+interface TranscodeOptions {
+    /** The bit rate in bits per second, 64000 by default. */
+    bitRate?: number;
+}
+/**
+ *  Passed to the success callback of media.transcode
+ */
+interface TranscodeResult {
+    /** The absolute path of the output file. */
+    path: string;
+    /** The duration of the output in seconds. */
+    duration: number;
+}
+/**
+ *  Android optional parameters for media.preload
+ */
+interface PreloadOptions {
+    /** Players with a higher priority are loaded first, 0 by default. */
+    priority?: number;
+}
+/**
+ *  Android optional parameters for media.startRecord
+ */
+interface RecordOptions {
+    /** "wav" or "aac" record PCM from the microphone; AMR is recorded otherwise. */
+    format?: string;
+    /** Sample rate in Hz, 44100 by default. */
+    sampleRate?: number;
+    /** 1 for mono (default) or 2 for stereo. */
+    channels?: number;
+    /** AAC bit rate in bits per second, 64000 by default. */
+    bitRate?: number;
+    /** Detect speech in "wav" and "aac" recordings, and optionally leave silence out. */
+    vad?: boolean | VadOptions;
+    /** Split "wav" and "aac" recordings into chunks that can be uploaded while recording. */
+    segment?: SegmentOptions;
+}
+/**
+ *  Android chunking options of media.startRecord; a chunk ends at whichever limit it reaches first
+ */
+interface SegmentOptions {
+    /** The duration of a chunk in seconds. */
+    duration?: number;
+    /** The size of a chunk in bytes, approximately. */
+    bytes?: number;
+}
+/**
+ *  Chunk event passed to the chunkCallback of media.startRecord
+ */
+interface MediaChunk {
+    /** The absolute path of the chunk. */
+    path: string;
+    /** The index of the chunk, from 0. */
+    index: number;
+    /** The duration of the chunk in seconds. */
+    duration: number;
+    /** true for the chunk that ends the recording. */
+    last: boolean;
+}
+/**
+ *  Android voice activity detection options of media.startRecord
+ */
+interface VadOptions {
+    /** RMS level of speech, from 0 to 1, 0.02 by default. */
+    threshold?: number;
+    /** Milliseconds the level must stay below the threshold to end speech, 500 by default. */
+    hangover?: number;
+    /** Milliseconds of silence kept before and after speech when silence is left out, 200 by default. */
+    padding?: number;
+    /** Leave out the silence between speech. */
+    autoPause?: boolean;
+    /** Leave out the silence before the first and after the last speech. */
+    trim?: boolean;
+}
+/**
+ *  Speech event passed to the speechCallback of media.startRecord
+ */
+interface MediaSpeech {
+    /** true when speech started, false when it ended. */
+    speaking: boolean;
+    /** The time in the recording in seconds, before silence is left out. */
+    position: number;
+}
 /**
  *  iOS optional parameters for media.play
  *  See https://github.com/apache/cordova-plugin-media#ios-quirks
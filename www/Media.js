@@ -36,9 +36,10 @@ var mediaObjects = {};
  *                                  errorCallback(int errorCode) - OPTIONAL
  * @param statusCallback        The callback to be called when media status has changed.
  *                                  statusCallback(int statusCode) - OPTIONAL
+ * @param options               Platform specific options, e.g. { type: "effect" } on Android - OPTIONAL
  */
-var Media = function(src, successCallback, errorCallback, statusCallback) {
-    argscheck.checkArgs('sFFF', 'Media', arguments);
+var Media = function(src, successCallback, errorCallback, statusCallback, options) {
+    argscheck.checkArgs('sFFFO', 'Media', arguments);
     this.id = utils.createUUID();
     mediaObjects[this.id] = this;
     this.src = src;
@@ -47,14 +48,20 @@ var Media = function(src, successCallback, errorCallback, statusCallback) {
     this.statusCallback = statusCallback;
     this._duration = -1;
     this._position = -1;
-    exec(null, this.errorCallback, "Media", "create", [this.id, this.src]);
+    exec(null, this.errorCallback, "Media", "create", [this.id, this.src, options]);
 };
 
 // Media messages
 Media.MEDIA_STATE = 1;
 Media.MEDIA_DURATION = 2;
 Media.MEDIA_POSITION = 3;
+Media.MEDIA_TRACK_CHANGE = 4;
+Media.MEDIA_PROGRESS = 5;
+Media.MEDIA_LEVEL = 6;
+Media.MEDIA_SPEECH = 7;
+Media.MEDIA_CHUNK = 8;
 Media.MEDIA_ERROR = 9;
+Media.MEDIA_FADE = 10;
 
 // Media states
 Media.MEDIA_NONE = 0;
@@ -76,6 +83,20 @@ Media.prototype.play = function(options) {
     exec(null, null, "Media", "startPlayingAudio", [this.id, this.src, options]);
 };
 
+/**
+ * Prepare the audio file without playing it, so that play() starts right away.
+ * Players are loaded a few at a time, highest priority first.
+ *
+ * @param options       { priority: number }, higher priorities load first - OPTIONAL
+ */
+Media.prototype.preload = function(options) {
+    if (cordova.platformId === 'android' || cordova.platformId === 'amazon-fireos') {
+        exec(null, this.errorCallback, "Media", "preload", [this.id, this.src, options]);
+    } else {
+        console.warn('media.preload method is currently not supported for', cordova.platformId, 'platform.');
+    }
+};
+
 /**
  * Stop playing audio file.
  */
@@ -124,11 +145,156 @@ Media.prototype.getCurrentPosition = function(success, fail) {
     }, fail, "Media", "getCurrentPositionAudio", [this.id]);
 };
 
+/**
+ * Receive the playback position from native code at a fixed interval while playing,
+ * instead of polling getCurrentPosition.
+ *
+ * @param interval      The update interval in milliseconds
+ * @param callback      Called with the position in seconds - OPTIONAL
+ */
+Media.prototype.startPositionUpdates = function(interval, callback) {
+    if (cordova.platformId === 'android' || cordova.platformId === 'amazon-fireos') {
+        this.positionCallback = callback;
+        exec(null, this.errorCallback, "Media", "startPositionUpdates", [this.id, interval]);
+    } else {
+        console.warn('media.startPositionUpdates method is currently not supported for', cordova.platformId, 'platform.');
+    }
+};
+
+/**
+ * Stop the position updates started by startPositionUpdates.
+ */
+Media.prototype.stopPositionUpdates = function() {
+    if (cordova.platformId === 'android' || cordova.platformId === 'amazon-fireos') {
+        this.positionCallback = null;
+        exec(null, this.errorCallback, "Media", "stopPositionUpdates", [this.id]);
+    } else {
+        console.warn('media.stopPositionUpdates method is currently not supported for', cordova.platformId, 'platform.');
+    }
+};
+
+/**
+ * Receive the level of the recording from native code at a fixed interval while recording,
+ * instead of polling getCurrentAmplitude.
+ *
+ * @param interval      The update interval in milliseconds
+ * @param callback      Called with { rms, peak }, each from 0 to 1
+ * @param options       { decay: msec for the levels to fall to 1/e } - OPTIONAL
+ */
+Media.prototype.startLevelUpdates = function(interval, callback, options) {
+    if (cordova.platformId === 'android' || cordova.platformId === 'amazon-fireos') {
+        this.levelCallback = callback;
+        exec(null, this.errorCallback, "Media", "startLevelUpdates", [this.id, interval, (options && options.decay) || 0]);
+    } else {
+        console.warn('media.startLevelUpdates method is currently not supported for', cordova.platformId, 'platform.');
+    }
+};
+
+/**
+ * Stop the level updates started by startLevelUpdates.
+ */
+Media.prototype.stopLevelUpdates = function() {
+    if (cordova.platformId === 'android' || cordova.platformId === 'amazon-fireos') {
+        this.levelCallback = null;
+        exec(null, this.errorCallback, "Media", "stopLevelUpdates", [this.id]);
+    } else {
+        console.warn('media.stopLevelUpdates method is currently not supported for', cordova.platformId, 'platform.');
+    }
+};
+
+/**
+ * Play another Media object without a gap when this one completes.
+ *
+ * @param next                  The Media to play next, or null to stop chaining
+ * @param trackChangeCallback   Called with the next Media when it takes over - OPTIONAL
+ */
+Media.prototype.setNext = function(next, trackChangeCallback) {
+    if (cordova.platformId === 'android' || cordova.platformId === 'amazon-fireos') {
+        this.trackChangeCallback = trackChangeCallback;
+        exec(null, this.errorCallback, "Media", "setNextAudio", [this.id, next ? next.id : null]);
+    } else {
+        console.warn('media.setNext method is currently not supported for', cordova.platformId, 'platform.');
+    }
+};
+
+/**
+ * Compute the waveform of the audio file: the minimum and maximum sample of each
+ * of a number of buckets, from -1 to 1. The result is cached on the device.
+ *
+ * @param buckets           The number of min/max pairs
+ * @param success           Called with { buckets, duration, peaks: [min0, max0, min1, max1, ...] }
+ * @param fail              Called with a MediaError - OPTIONAL
+ * @param progress          Called with the progress, from 0 to 1 - OPTIONAL
+ */
+Media.prototype.getPeaks = function(buckets, success, fail, progress) {
+    if (cordova.platformId === 'android' || cordova.platformId === 'amazon-fireos') {
+        this.progressCallback = progress;
+        exec(success, fail, "Media", "getPeaks", [this.id, this.src, buckets]);
+    } else {
+        console.warn('media.getPeaks method is currently not supported for', cordova.platformId, 'platform.');
+    }
+};
+
+/**
+ * Mix audio files into the file of this Media, like a recording.
+ *
+ * @param sources           Array of { src, offset, gain }: the file, where it starts in msec and its gain
+ * @param options           { format, sampleRate, channels, bitRate } - OPTIONAL
+ * @param success           Called with the duration of the mix in seconds
+ * @param fail              Called with a MediaError - OPTIONAL
+ * @param progress          Called with the progress, from 0 to 1 - OPTIONAL
+ */
+Media.prototype.mixdown = function(sources, options, success, fail, progress) {
+    if (cordova.platformId === 'android' || cordova.platformId === 'amazon-fireos') {
+        this.progressCallback = progress;
+        exec(success, fail, "Media", "mixdown", [this.id, this.src, sources, options]);
+    } else {
+        console.warn('media.mixdown method is currently not supported for', cordova.platformId, 'platform.');
+    }
+};
+
+/**
+ * Convert the file of this Media, e.g. an AMR recording, to AAC.
+ *
+ * @param output            The output file, resolved like a recording
+ * @param options           { bitRate } - OPTIONAL
+ * @param success           Called with { path, duration }: the absolute path of the output and its duration in seconds
+ * @param fail              Called with a MediaError - OPTIONAL
+ * @param progress          Called with the progress, from 0 to 1 - OPTIONAL
+ */
+Media.prototype.transcode = function(output, options, success, fail, progress) {
+    if (cordova.platformId === 'android' || cordova.platformId === 'amazon-fireos') {
+        this.progressCallback = progress;
+        exec(success, fail, "Media", "transcode", [this.id, this.src, output, options]);
+    } else {
+        console.warn('media.transcode method is currently not supported for', cordova.platformId, 'platform.');
+    }
+};
+
+/**
+ * Cancel the running getPeaks, mixdown or transcode of this Media.
+ */
+Media.prototype.cancelJob = function() {
+    if (cordova.platformId === 'android' || cordova.platformId === 'amazon-fireos') {
+        exec(null, null, "Media", "cancelJob", [this.id]);
+    } else {
+        console.warn('media.cancelJob method is currently not supported for', cordova.platformId, 'platform.');
+    }
+};
+
 /**
  * Start recording audio file.
+ *
+ * @param options           Platform specific options, e.g. { format: "aac" } on Android - OPTIONAL
+ * @param speechCallback    Called with { speaking, position } when speech starts or ends,
+ *                          if options.vad is set on Android - OPTIONAL
+ * @param chunkCallback     Called with { path, index, duration, last } when a chunk is complete,
+ *                          if options.segment is set on Android - OPTIONAL
  */
-Media.prototype.startRecord = function() {
-    exec(null, this.errorCallback, "Media", "startRecordingAudio", [this.id, this.src]);
+Media.prototype.startRecord = function(options, speechCallback, chunkCallback) {
+    this.speechCallback = speechCallback;
+    this.chunkCallback = chunkCallback;
+    exec(null, this.errorCallback, "Media", "startRecordingAudio", [this.id, this.src, options]);
 };
 
 /**
@@ -166,12 +332,47 @@ Media.prototype.setVolume = function(volume) {
     exec(null, null, "Media", "setVolume", [this.id, volume]);
 };
 
+/**
+ * Fade the volume natively, instead of calling setVolume on a timer.
+ *
+ * @param volume        The target volume, 0.0 to 1.0
+ * @param duration      The duration of the fade in milliseconds
+ * @param curve         "linear" (default), "exponential" or "equal-power" - OPTIONAL
+ * @param callback      Called with the volume when the fade is complete - OPTIONAL
+ */
+Media.prototype.fadeTo = function(volume, duration, curve, callback) {
+    if (cordova.platformId === 'android' || cordova.platformId === 'amazon-fireos') {
+        this.fadeCallback = callback;
+        exec(null, this.errorCallback, "Media", "fadeTo", [this.id, volume, duration, curve || "linear"]);
+    } else {
+        console.warn('media.fadeTo method is currently not supported for', cordova.platformId, 'platform.');
+    }
+};
+
+/**
+ * Set the position between the left and right speakers.
+ *
+ * @param pan           -1.0 (left) to 1.0 (right), 0.0 is the center
+ */
+Media.prototype.setPan = function(pan) {
+    if (cordova.platformId === 'android' || cordova.platformId === 'amazon-fireos') {
+        exec(null, this.errorCallback, "Media", "setPan", [this.id, pan]);
+    } else {
+        console.warn('media.setPan method is currently not supported for', cordova.platformId, 'platform.');
+    }
+};
+
 /**
  * Adjust the playback rate.
+ *
+ * @param rate          The playback speed, 1.0 is normal speed
+ * @param pitch         Android only: the pitch, 1.0 (default) keeps the original pitch - OPTIONAL
  */
-Media.prototype.setRate = function(rate) {
-    if (cordova.platformId === 'ios'){
+Media.prototype.setRate = function(rate, pitch) {
+    if (cordova.platformId === 'ios') {
         exec(null, null, "Media", "setRate", [this.id, rate]);
+    } else if (cordova.platformId === 'android' || cordova.platformId === 'amazon-fireos') {
+        exec(null, this.errorCallback, "Media", "setRate", [this.id, rate, pitch]);
     } else {
         console.warn('media.setRate method is currently not supported for', cordova.platformId, 'platform.');
     }
@@ -220,6 +421,39 @@ Media.onStatus = function(id, msgType, value) {
                 break;
             case Media.MEDIA_POSITION :
                 media._position = Number(value);
+                if (media.positionCallback) {
+                    media.positionCallback(media._position);
+                }
+                break;
+            case Media.MEDIA_TRACK_CHANGE :
+                if (media.trackChangeCallback) {
+                    media.trackChangeCallback(mediaObjects[value]);
+                }
+                break;
+            case Media.MEDIA_PROGRESS :
+                if (media.progressCallback) {
+                    media.progressCallback(Number(value));
+                }
+                break;
+            case Media.MEDIA_LEVEL :
+                if (media.levelCallback) {
+                    media.levelCallback(value);
+                }
+                break;
+            case Media.MEDIA_SPEECH :
+                if (media.speechCallback) {
+                    media.speechCallback(value);
+                }
+                break;
+            case Media.MEDIA_CHUNK :
+                if (media.chunkCallback) {
+                    media.chunkCallback(value);
+                }
+                break;
+            case Media.MEDIA_FADE :
+                if (media.fadeCallback) {
+                    media.fadeCallback(value);
+                }
                 break;
             default :
                 if (console.error) {
@@ -236,7 +470,12 @@ Media.onStatus = function(id, msgType, value) {
 module.exports = Media;
 
 function onMessageFromNative(msg) {
-    if (msg.action == 'status') {
+    if (Array.isArray(msg)) {
+        // batch of messages, in the order they were sent
+        for (var i = 0; i < msg.length; i++) {
+            onMessageFromNative(msg[i]);
+        }
+    } else if (msg.action == 'status') {
         Media.onStatus(msg.status.id, msg.status.msgType, msg.status.value);
     } else {
         throw new Error('Unknown media action' + msg.action);